@@ -0,0 +1,111 @@
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A class to remember the rooms available in a single hotel over the periods most recently asked about, so that the
+ * same dates looked up again, e.g. a popular weekend, are answered without reading the room inventory. The least
+ * recently used period is dropped once the cache is full, and a change to the bookings of some nights drops only the
+ * periods which include one of those nights
+ */
+public class AvailabilityCache {
+	/*
+	 * The first night and the end of a period, as epoch days
+	 */
+	private static class Period {
+		private long from;
+		private long to;
+
+		/*
+		 * @param from the epoch day of the first night
+		 *
+		 * @param to the epoch day the period ends at (not included)
+		 */
+		private Period(long from, long to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Period)) {
+				return false;
+			}
+			Period other = (Period) obj;
+			return this.from == other.from && this.to == other.to;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(this.from * 31 + this.to);
+		}
+	}
+
+	private LinkedHashMap<Period, TreeMap<Room, Integer>> available; //The rooms free over each period, least recently used first
+
+	/**
+	 * Creates an empty AvailabilityCache
+	 * @param capacity the most periods to remember
+	 */
+	public AvailabilityCache(int capacity) {
+		this.available = new LinkedHashMap<Period, TreeMap<Room, Integer>>(capacity * 4 / 3 + 1, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Period, TreeMap<Room, Integer>> eldest) {
+				return this.size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns the rooms available over a period if they are remembered
+	 * @param from the first night of the period
+	 * @param to the date the period ends at (not included)
+	 * @return the rooms and how many of each are free, which must not be changed, or null if the period isn't cached
+	 */
+	public synchronized TreeMap<Room, Integer> get(LocalDate from, LocalDate to) {
+		return this.available.get(new Period(from.toEpochDay(), to.toEpochDay()));
+	}
+
+	/**
+	 * Remembers the rooms available over a period. Must only be called while no bookings of the hotel can change,
+	 * i.e. under the hotel's read or write lock, so that the rooms are not already out of date
+	 * @param from the first night of the period
+	 * @param to the date the period ends at (not included)
+	 * @param rooms the rooms and how many of each are free, which must not be changed afterwards
+	 */
+	public synchronized void put(LocalDate from, LocalDate to, TreeMap<Room, Integer> rooms) {
+		this.available.put(new Period(from.toEpochDay(), to.toEpochDay()), rooms);
+	}
+
+	/**
+	 * Forgets every period which includes one of the nights of a reservation, as the rooms booked on those nights
+	 * are changing
+	 * @param reservation the reservation being booked or released
+	 */
+	public synchronized void invalidate(Reservation reservation) {
+		if (this.available.isEmpty()) {
+			return;
+		}
+		long start = reservation.getCheckinDate().toEpochDay();
+		long end = start + reservation.getNumberOfNights();
+		Iterator<Period> periods = this.available.keySet().iterator();
+		while (periods.hasNext()) {
+			Period p = periods.next();
+			if (p.from < end && p.to > start) {
+				periods.remove();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of periods remembered
+	 * @return the number of periods
+	 */
+	public synchronized int size() {
+		return this.available.size();
+	}
+}
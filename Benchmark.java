@@ -0,0 +1,290 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * A class to benchmark the hot paths of the booking system against synthetic hotel chains. Each chain is given as
+ * hotelsxroomTypesxreservations, e.g. "java Benchmark 10x10x10000", and is generated into a temporary data folder in the
+ * same format as l4Hotels.csv, reservations.csv and stays.csv before the benchmarks are run against it. Every benchmark
+ * is warmed up before it is measured and the mean time per operation is printed with its standard deviation
+ */
+public class Benchmark {
+	private static final String[] DEFAULT_SIZES = { "3x5x1000", "10x10x10000", "20x20x50000" };
+	private static final int WARMUP_ITERATIONS = 3;
+	private static final int MEASURED_ITERATIONS = 5;
+	private static final int LOOKUPS_PER_ITERATION = 10000;
+	private static final int BOOKINGS_PER_ITERATION = 1000;
+	private static final int BATCH_SIZE = 10; //Reservations per batch when booking in batches
+	private static final LocalDate FIRST_CHECKIN = LocalDate.of(2030, 1, 1);
+	private static final int CHECKIN_DAYS = 365; //Check-in dates are spread over this many days from FIRST_CHECKIN
+	private static final int MAX_NIGHTS = 14;
+	private static final int MAX_ROOMS = 3; //The most rooms in a single reservation
+
+	private static Random random = new Random(42);
+	private static volatile Object sink; //Results are stored here so that the JIT can't remove the work
+
+	public static void main(String[] args) {
+		String[] sizes = args.length == 0 ? DEFAULT_SIZES : args;
+		System.out.println(String.format("%-26s %-14s %14s %14s %14s", "Benchmark", "Chain", "us/op", "+/-", "ops/s"));
+		for (String size : sizes) {
+			String[] dimensions = size.split("x");
+			if (dimensions.length != 3) {
+				System.out.println("Chain size " + size + " not recognised, expected hotelsxroomTypesxreservations");
+				continue;
+			}
+			int hotels = Integer.parseInt(dimensions[0]);
+			int roomTypes = Integer.parseInt(dimensions[1]);
+			int reservations = Integer.parseInt(dimensions[2]);
+			String userDir = System.getProperty("user.dir");
+			File dataDir = null;
+			try {
+				dataDir = Files.createTempDirectory("l4-benchmark").toFile();
+				generateChain(dataDir, hotels, roomTypes, reservations);
+				System.setProperty("user.dir", dataDir.getPath());
+				runBenchmarks(size);
+			} catch (IOException e) {
+				e.printStackTrace();
+			} finally {
+				System.setProperty("user.dir", userDir);
+				if (dataDir != null) {
+					delete(dataDir);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Runs each of the benchmarks against the chain in the current user.dir
+	 *
+	 * @param size the size of the chain, for printing
+	 */
+	private static void runBenchmarks(String size) {
+		measure("startup load", size, 1, () -> sink = new BookingSystem(), () -> ((BookingSystem) sink).close());
+
+		BookingSystem system = new BookingSystem();
+		String[] hotelNames = system.getAllRooms().keySet().toArray(new String[0]);
+		measure("getCurrentRooms", size, LOOKUPS_PER_ITERATION, () -> {
+			for (int i = 0; i < LOOKUPS_PER_ITERATION; i++) {
+				String hotelName = hotelNames[random.nextInt(hotelNames.length)];
+				LocalDate from = FIRST_CHECKIN.plusDays(random.nextInt(CHECKIN_DAYS));
+				sink = system.getCurrentRooms(hotelName, from, from.plusDays(1 + random.nextInt(MAX_NIGHTS)));
+			}
+		});
+
+		ArrayList<Reservation> allReservations = new ArrayList<Reservation>();
+		for (LinkedHashMap<Integer, Reservation> hotelReservations : system.getReservations().values()) {
+			allReservations.addAll(hotelReservations.values());
+		}
+		measure("getTotalCostCalculated", size, allReservations.size(), () -> {
+			for (Reservation r : allReservations) {
+				sink = r.getTotalCostCalculated();
+			}
+		});
+
+		measure("addReservation", size, BOOKINGS_PER_ITERATION, () -> {
+			for (int i = 0; i < BOOKINGS_PER_ITERATION; i++) {
+				String hotelName = hotelNames[random.nextInt(hotelNames.length)];
+				sink = system.addReservation(hotelName, randomReservation(system, hotelName));
+			}
+		});
+
+		measure("addReservations", size, BOOKINGS_PER_ITERATION, () -> {
+			for (int i = 0; i < BOOKINGS_PER_ITERATION / BATCH_SIZE; i++) {
+				String hotelName = hotelNames[random.nextInt(hotelNames.length)];
+				ArrayList<Reservation> batch = new ArrayList<Reservation>(BATCH_SIZE);
+				for (int j = 0; j < BATCH_SIZE; j++) {
+					batch.add(randomReservation(system, hotelName));
+				}
+				sink = system.addReservations(hotelName, batch);
+			}
+		});
+
+		LocalDate monthEnd = FIRST_CHECKIN.plusMonths(1);
+		DataAnalysis analyzer = new DataAnalysis(hotelNames[0], system);
+		measure("requestIncomeInformation", size, 1, () -> sink = analyzer.requestIncomeInformation(FIRST_CHECKIN, monthEnd));
+		ChainAnalysis chainAnalyzer = new ChainAnalysis(system);
+		measure("chain income report", size, 1, () -> sink = chainAnalyzer.requestIncomeInformation(FIRST_CHECKIN, monthEnd));
+		system.close();
+	}
+
+	/*
+	 * Runs the iteration WARMUP_ITERATIONS times without measuring it and then MEASURED_ITERATIONS times, printing the
+	 * mean time per operation
+	 *
+	 * @param benchmark the name of the benchmark
+	 *
+	 * @param size the size of the chain
+	 *
+	 * @param operations the number of operations carried out by one run of iteration
+	 *
+	 * @param iteration the work to measure
+	 */
+	private static void measure(String benchmark, String size, int operations, Runnable iteration) {
+		measure(benchmark, size, operations, iteration, () -> {
+		});
+	}
+
+	/*
+	 * Runs the iteration WARMUP_ITERATIONS times without measuring it and then MEASURED_ITERATIONS times, printing the
+	 * mean time per operation. The clean up is run after every iteration without being measured
+	 *
+	 * @param benchmark the name of the benchmark
+	 *
+	 * @param size the size of the chain
+	 *
+	 * @param operations the number of operations carried out by one run of iteration
+	 *
+	 * @param iteration the work to measure
+	 *
+	 * @param cleanUp the work to undo the iteration, such as closing what it opened
+	 */
+	private static void measure(String benchmark, String size, int operations, Runnable iteration, Runnable cleanUp) {
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			iteration.run();
+			cleanUp.run();
+		}
+		double[] timesPerOperation = new double[MEASURED_ITERATIONS];
+		for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+			long start = System.nanoTime();
+			iteration.run();
+			timesPerOperation[i] = (System.nanoTime() - start) / 1000.0 / Math.max(operations, 1);
+			cleanUp.run();
+		}
+		double mean = 0;
+		for (double time : timesPerOperation) {
+			mean += time;
+		}
+		mean /= MEASURED_ITERATIONS;
+		double variance = 0;
+		for (double time : timesPerOperation) {
+			variance += (time - mean) * (time - mean);
+		}
+		double deviation = Math.sqrt(variance / MEASURED_ITERATIONS);
+		System.out.println(String.format("%-26s %-14s %14.3f %14.3f %14.0f", benchmark, size, mean, deviation, 1000000.0 / mean));
+	}
+
+	/*
+	 * Creates a reservation for random rooms of the hotel
+	 *
+	 * @param system the system to get the rooms from
+	 *
+	 * @param hotelName the hotel of the reservation
+	 *
+	 * @return the new reservation, not yet added to the system
+	 */
+	private static Reservation randomReservation(BookingSystem system, String hotelName) {
+		Room[] rooms = system.getAllRooms().get(hotelName).keySet().toArray(new Room[0]);
+		int numberOfRooms = 1 + random.nextInt(MAX_ROOMS);
+		ArrayList<RoomBooking> bookings = new ArrayList<RoomBooking>(numberOfRooms);
+		int people = 0;
+		for (int i = 0; i < numberOfRooms; i++) {
+			RoomBooking rb = new RoomBooking(rooms[random.nextInt(rooms.length)], 1, random.nextInt(2));
+			rb.setBreakfastIncluded(random.nextBoolean());
+			people += rb.getOccupancy()[0] + rb.getOccupancy()[1];
+			bookings.add(rb);
+		}
+		LocalDate checkin = FIRST_CHECKIN.plusDays(random.nextInt(CHECKIN_DAYS));
+		return new Reservation("Guest " + random.nextInt(1000), random.nextBoolean() ? "S" : "AP", checkin,
+				1 + random.nextInt(MAX_NIGHTS), people, numberOfRooms, bookings);
+	}
+
+	/*
+	 * Writes a chain of hotels with random rooms and reservations into the data folder of dataDir. Every fourth
+	 * reservation is also written as a hotel stay so that there is something to analyse
+	 *
+	 * @param dataDir the folder to create the data folder in
+	 *
+	 * @param hotels the number of hotels in the chain
+	 *
+	 * @param roomTypes the number of room types in each hotel
+	 *
+	 * @param reservations the number of reservations across the chain
+	 */
+	private static void generateChain(File dataDir, int hotels, int roomTypes, int reservations) throws FileNotFoundException {
+		new File(dataDir, "data/hotels").mkdirs();
+		new File(dataDir, "data/bookingInfo").mkdirs();
+		new File(dataDir, "data/dataAnalysis").mkdirs();
+		// Enough rooms of each type that about half of them are booked on an average night
+		int roomsPerType = 10 + 2 * reservations * MAX_ROOMS * MAX_NIGHTS / (CHECKIN_DAYS * hotels * roomTypes);
+		TreeMap<String, String[]> hotelRooms = new TreeMap<String, String[]>();
+		try (PrintWriter out = new PrintWriter(new File(dataDir, "data/hotels/l4Hotels.csv"))) {
+			out.println("Hotel type ,Room type,Number of Rooms,Occupancy-min,Occupancy-max,Rates,,,,,,");
+			out.println(",,,Adult+child,Adult+child,Mon,Tues,Wed,Thurs,Fri,Sat,Sun");
+			for (int h = 0; h < hotels; h++) {
+				String hotelName = "hotel-" + h;
+				String[] types = new String[roomTypes];
+				for (int t = 0; t < roomTypes; t++) {
+					types[t] = "Room type " + t;
+					StringBuilder row = new StringBuilder(t == 0 ? hotelName : "");
+					row.append(",").append(types[t]).append(",").append(roomsPerType).append(",1+0,2+1");
+					int rate = 50 + random.nextInt(150);
+					for (int day = 0; day < 7; day++) {
+						row.append(",").append(day >= 4 ? rate + 15 : rate);
+					}
+					out.println(row);
+				}
+				hotelRooms.put(hotelName, types);
+			}
+		}
+		String header = "Hotel,Number,Name,Type,Check-in Date,Number of Nights,Number of People,Number Of Rooms,Rooms(Breakfast Included_Adult Occupancy_Child Occupancy),Total Cost,Deposit";
+		try (PrintWriter reservationsOut = new PrintWriter(new File(dataDir, "data/bookingInfo/reservations.csv"));
+				PrintWriter staysOut = new PrintWriter(new File(dataDir, "data/bookingInfo/stays.csv"));
+				PrintWriter cancellationsOut = new PrintWriter(new File(dataDir, "data/bookingInfo/cancellations.csv"))) {
+			reservationsOut.println(header);
+			staysOut.println(header + ",Checked In,Stay Start,Stay End");
+			cancellationsOut.println(header);
+			int number = 1000;
+			int hotel = 0;
+			String lastHotel = null;
+			for (Map.Entry<String, String[]> e : hotelRooms.entrySet()) {
+				int hotelReservations = reservations / hotels + (hotel++ < reservations % hotels ? 1 : 0);
+				for (int i = 0; i < hotelReservations; i++) {
+					int numberOfRooms = 1 + random.nextInt(MAX_ROOMS);
+					StringBuilder rooms = new StringBuilder();
+					int people = 0;
+					for (int r = 0; r < numberOfRooms; r++) {
+						int children = random.nextInt(2);
+						people += 1 + children;
+						rooms.append(",").append(e.getValue()[random.nextInt(e.getValue().length)]).append("(")
+								.append(random.nextBoolean()).append("_1_").append(children).append(")");
+					}
+					LocalDate checkin = FIRST_CHECKIN.plusDays(random.nextInt(CHECKIN_DAYS));
+					int nights = 1 + random.nextInt(MAX_NIGHTS);
+					String row = String.format("%s,%d,Guest %d,%s,%s,%d,%d,%d%s,$%.02f,$%.02f",
+							e.getKey().equals(lastHotel) ? "" : e.getKey(), number, random.nextInt(1000),
+							random.nextBoolean() ? "S" : "AP", checkin, nights, people, numberOfRooms, rooms, 0.0, 75.0);
+					reservationsOut.println(row);
+					if (number % 4 == 0) {
+						staysOut.println(String.format("%s,%s,%s,%s", e.getKey() + row.substring(row.indexOf(',')), false,
+								checkin, checkin.plusDays(nights)));
+					}
+					lastHotel = e.getKey();
+					number++;
+				}
+			}
+		}
+	}
+
+	/*
+	 * Deletes the file, or the folder and everything in it
+	 *
+	 * @param file the file or folder to delete
+	 */
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -7,7 +7,7 @@ import java.time.LocalDate;
 public class Bill {
 	private String billName;
 	private LocalDate billedDate;
-	private double amountDue;
+	private long amountDue; //in cents so that amounts add up exactly
 	
 	/**
 	 * Creates a default Bill object with name as null, the current date and 0.00 amountDue
@@ -23,6 +23,16 @@ public class Bill {
 	 * @param amountDue the amount due
 	 */
 	public Bill(String billName, LocalDate billedDate, double amountDue) {
+		this(billName, billedDate, Money.cents(amountDue));
+	}
+	
+	/**
+	 * Creates a Bill object with the amount due given in cents
+	 * @param billName the name of the bill
+	 * @param billedDate the date of the bill
+	 * @param amountDue the amount due in cents
+	 */
+	public Bill(String billName, LocalDate billedDate, long amountDue) {
 		this.billName = billName;
 		this.billedDate = billedDate;
 		this.amountDue = amountDue;
@@ -34,7 +44,7 @@ public class Bill {
 	 * @param billedDate the date of the bill
 	 */
 	public Bill(String billName, LocalDate billedDate) {
-		this(billName, billedDate, 0.00);
+		this(billName, billedDate, 0L);
 	}
 	
 	/**
@@ -66,14 +76,30 @@ public class Bill {
 	 * @return the amount due of this bill
 	 */
 	public double getAmountDue() {
+		return Money.dollars(this.amountDue);
+	}
+	
+	/**
+	 * Gets the amount that this bill is billed for in cents
+	 * @return the amount due of this bill in cents
+	 */
+	public long getAmountDueCents() {
 		return this.amountDue;
 	}
 	
 	/**
-	 * Sets the amount due of the bill with the new value
+	 * Sets the amount due of the bill with the new value, rounded to the nearest cent
 	 * @param amountDue the amount that this bill is charging
 	 */
 	public void setAmountDue(double amountDue) {
+		this.amountDue = Money.cents(amountDue);
+	}
+	
+	/**
+	 * Sets the amount due of the bill with the new value in cents
+	 * @param amountDue the amount in cents that this bill is charging
+	 */
+	public void setAmountDueCents(long amountDue) {
 		this.amountDue = amountDue;
 	}
 	
@@ -83,7 +109,7 @@ public class Bill {
 	 */
 	@Override
 	public String toString() {
-		return "Name: " + billName + "\n" + "Date: " + billedDate + "\n" + "Total amount due: "  + String.format("$%.02f", amountDue);
+		return "Name: " + billName + "\n" + "Date: " + billedDate + "\n" + "Total amount due: "  + Money.format(amountDue);
 	}
 
 }
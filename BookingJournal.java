@@ -0,0 +1,238 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A class to represent an append-only journal of the changes made to the booking system. Each change is one line
+ * in the form table,+,csv row if the row was added or updated, or table,-,hotel,number if it was removed. The journal
+ * is folded back into the csv files when it is compacted
+ */
+public class BookingJournal {
+	private File file;
+	private FileChannel channel;
+	private int syncEvery; //The number of records that can be written before they are forced to disk
+	private long syncInterval; //The number of milliseconds records can be left unforced on disk
+	private int compactEvery; //The number of records after which the journal should be compacted
+	private int unsynced; //Records written since the last force
+	private long lastSync;
+	private int records; //Records written since the last compaction
+
+	/**
+	 * Creates a BookingJournal object which appends to the journal file at filePath
+	 * @param filePath the path to the journal file
+	 * @param syncEvery the number of records to write before forcing them to disk
+	 * @param syncInterval the longest time in milliseconds a record can be left unforced
+	 * @param compactEvery the number of records after which the journal needs compacting
+	 */
+	public BookingJournal(String filePath, int syncEvery, long syncInterval, int compactEvery) {
+		this.file = new File(filePath);
+		this.syncEvery = syncEvery;
+		this.syncInterval = syncInterval;
+		this.compactEvery = compactEvery;
+		this.lastSync = System.currentTimeMillis();
+	}
+
+	/*
+	 * Opens the channel to the journal file if it is not open already
+	 */
+	private void open() throws IOException {
+		if (this.channel == null) {
+			this.channel = FileChannel.open(this.file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.APPEND);
+		}
+	}
+
+	/**
+	 * Reads every record in the journal in the order they were written and passes them on. Only the last record can
+	 * be cut short, if the system stopped while writing it, so a last line with no line break is dropped from the
+	 * journal. Any other record that can't be applied stops the replay, so that no change is lost without notice
+	 * @param recordHandler called with the comma separated values of each record
+	 * @return the number of records read
+	 * @throws IOException if the journal could not be read or a record could not be applied
+	 */
+	public synchronized int replay(Consumer<String[]> recordHandler) throws IOException {
+		int count = 0;
+		if (this.file.exists()) {
+			byte[] bytes = Files.readAllBytes(this.file.toPath());
+			int end = bytes.length;
+			while (end > 0 && bytes[end - 1] != '\n') {
+				end--;
+			}
+			if (end < bytes.length) {
+				System.err.println("Dropping the unfinished last record of " + this.file + ": "
+						+ new String(bytes, end, bytes.length - end, StandardCharsets.UTF_8));
+				this.open();
+				this.channel.truncate(end); // so that the next record doesn't run on from it
+				this.channel.force(true);
+			}
+			String[] lines = new String(bytes, 0, end, StandardCharsets.UTF_8).split("\n");
+			for (int i = 0; i < lines.length; i++) {
+				if (!lines[i].equals("")) {
+					try {
+						recordHandler.accept(CsvReader.split(lines[i]));
+					} catch (RuntimeException e) {
+						throw new IOException("Record " + (i + 1) + " of " + this.file + " could not be applied: " + lines[i], e);
+					}
+					count++;
+				}
+			}
+		}
+		this.records = count;
+		return count;
+	}
+
+	/**
+	 * Appends a record to the journal that the row was added to or updated in the table
+	 * @param table the table that changed, Reservations, Cancellations or Stays
+	 * @param row the values of the row as they would be written to the csv file
+	 */
+	public void recordUpdate(String table, String[] row) {
+		this.append(updateRecord(table, row));
+	}
+
+	/**
+	 * Appends a record to the journal that a row was removed from the table
+	 * @param table the table that changed, Reservations, Cancellations or Stays
+	 * @param hotelName the hotel of the row removed
+	 * @param number the reservation number of the row removed
+	 */
+	public void recordRemoval(String table, String hotelName, int number) {
+		this.append(removalRecord(table, hotelName, number));
+	}
+
+	/**
+	 * Appends a batch of records to the journal in a single write, to be forced to disk together by the next sync
+	 * @param records the records to append, made by updateRecord and removalRecord
+	 */
+	public synchronized void recordAll(List<String> records) {
+		if (records.isEmpty()) {
+			return;
+		}
+		StringBuilder batch = new StringBuilder();
+		for (String record : records) {
+			batch.append(record).append("\n");
+		}
+		this.write(batch.toString(), records.size());
+	}
+
+	/**
+	 * Makes the record that a row was added to or updated in the table
+	 * @param table the table that changed, Reservations, Cancellations or Stays
+	 * @param row the values of the row as they would be written to the csv file
+	 * @return the record
+	 */
+	public static String updateRecord(String table, String[] row) {
+		return table + ",+," + String.join(",", row);
+	}
+
+	/**
+	 * Makes the record that a row was removed from the table
+	 * @param table the table that changed, Reservations, Cancellations or Stays
+	 * @param hotelName the hotel of the row removed
+	 * @param number the reservation number of the row removed
+	 * @return the record
+	 */
+	public static String removalRecord(String table, String hotelName, int number) {
+		return table + ",-," + hotelName + "," + number;
+	}
+
+	/*
+	 * Writes the record to the end of the journal, to be forced to disk by the next sync
+	 *
+	 * @param record the record to write
+	 */
+	private synchronized void append(String record) {
+		this.write(record + "\n", 1);
+	}
+
+	/*
+	 * Writes the lines to the end of the journal without forcing them to disk
+	 *
+	 * @param lines the records to write, each ending in a new line
+	 *
+	 * @param count the number of records in lines
+	 */
+	private synchronized void write(String lines, int count) {
+		try {
+			this.open();
+			ByteBuffer buffer = ByteBuffer.wrap(lines.getBytes(StandardCharsets.UTF_8));
+			while (buffer.hasRemaining()) {
+				this.channel.write(buffer);
+			}
+			this.records += count;
+			this.unsynced += count;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Forces any records written to the journal to disk
+	 */
+	public synchronized void sync() {
+		if (this.channel != null && this.unsynced > 0) {
+			try {
+				this.channel.force(false);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		this.unsynced = 0;
+		this.lastSync = System.currentTimeMillis();
+	}
+
+	/**
+	 * Checks if enough records or time have built up since the journal was last forced to disk that it should be
+	 * synced
+	 * @return true if the journal should be synced
+	 */
+	public synchronized boolean needsSync() {
+		return this.unsynced >= this.syncEvery
+				|| (this.unsynced > 0 && System.currentTimeMillis() - this.lastSync >= this.syncInterval);
+	}
+
+	/**
+	 * Checks if enough records have been written that the journal should be compacted into the csv files
+	 * @return true if the journal should be compacted
+	 */
+	public synchronized boolean needsCompaction() {
+		return this.records >= this.compactEvery;
+	}
+
+	/**
+	 * Empties the journal, only to be called once all the records in it have been written to the csv files
+	 */
+	public synchronized void truncate() {
+		try {
+			this.open();
+			this.channel.truncate(0);
+			this.channel.force(true);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		this.records = 0;
+		this.unsynced = 0;
+		this.lastSync = System.currentTimeMillis();
+	}
+
+	/**
+	 * Forces any remaining records to disk and closes the journal file
+	 */
+	public synchronized void close() {
+		this.sync();
+		if (this.channel != null) {
+			try {
+				this.channel.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			this.channel = null;
+		}
+	}
+}
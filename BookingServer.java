@@ -0,0 +1,825 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A class to serve the booking system over HTTP so that web and kiosk clients can share one BookingSystem. Requests are
+ * sent as query strings or form bodies and every response is JSON. The paths served are:
+ * <ul>
+ * <li>GET /hotels - the names of the hotels served</li>
+ * <li>GET /hotels/{hotel}/availability?from=yyyy-mm-dd&amp;to=yyyy-mm-dd - the rooms free for the whole period</li>
+ * <li>GET /hotels/{hotel}/reservations?from=yyyy-mm-dd&amp;to=yyyy-mm-dd - the reservations with a night in the
+ * period</li>
+ * <li>GET /hotels/{hotel}/reservations?name=prefix - the reservations made under a name starting with the prefix,
+ * ignoring case</li>
+ * <li>POST /hotels/{hotel}/reservations - creates a reservation from the form fields name, type (S/AP), checkin
+ * (yyyy-mm-dd), nights and one room field per room as type:adults:children[:breakfast]</li>
+ * <li>POST /hotels/{hotel}/reservations/batch - creates every reservation of a manifest, such as a tour operator's, or
+ * none of them if there aren't enough rooms free for all of them. The body has one reservation per line as
+ * name,type,checkin,nights,room,room... with each room as type:adults:children[:breakfast]</li>
+ * <li>GET /hotels/{hotel}/reservations/{number} - views a reservation</li>
+ * <li>DELETE /hotels/{hotel}/reservations/{number} - cancels a reservation</li>
+ * <li>POST /hotels/{hotel}/reservations/{number}/check-in and /check-out - checks the reservation in or out</li>
+ * <li>POST /hotels/{hotel}/reservations/{number}/discount - takes the form field discount, as a percentage 0 - 100,
+ * off the bill of a checked in reservation, as a Supervisor</li>
+ * <li>GET /hotels/{hotel}/occupancy?from=yyyy-mm-dd&amp;to=yyyy-mm-dd - the room nights, guest nights and income of
+ * each room type over the period</li>
+ * <li>GET /occupancy?from=yyyy-mm-dd&amp;to=yyyy-mm-dd - the occupancy of every hotel served</li>
+ * <li>GET /hotels/{hotel}/reports/{report}?from=yyyy-mm-dd&amp;to=yyyy-mm-dd - writes a Supervisor's report of the
+ * period, income, occupants or rooms, to data/dataAnalysis and responds with its name and contents</li>
+ * <li>GET /reports/{report}?from=yyyy-mm-dd&amp;to=yyyy-mm-dd - the report of every hotel served, written in
+ * parallel</li>
+ * </ul>
+ * Each request is handled on its own virtual thread where the JVM supports them, so thousands of slow clients don't
+ * tie up platform threads
+ */
+public class BookingServer {
+	private static final int BACKLOG = 1024; //Connections queued by the OS while waiting to be accepted
+	private static final int MAX_NIGHTS = 365; //The longest stay that can be booked
+	private static final int MAX_DAYS_AHEAD = 730; //How far from today a stay can be booked to check in
+	private static final int MAX_REPORT_DAYS = 3660; //The longest period a report can be asked for
+	private static final String[] REPORTS = { "income", "occupants", "rooms" }; //The reports by their ChainAnalysis type
+
+	private BookingSystem system;
+	private HttpServer server;
+	private ExecutorService executor;
+
+	/**
+	 * Creates a BookingServer object for the system which will listen on the given port once started
+	 * @param system the system to serve
+	 * @param port the port to listen on
+	 * @throws IOException if the port could not be bound
+	 */
+	public BookingServer(BookingSystem system, int port) throws IOException {
+		this.system = system;
+		this.server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+		this.executor = newExecutor();
+		this.server.setExecutor(this.executor);
+		this.server.createContext("/hotels", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				BookingServer.this.handle(exchange);
+			}
+		});
+		this.server.createContext("/occupancy", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				BookingServer.this.handleOccupancy(exchange);
+			}
+		});
+		this.server.createContext("/reports", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				BookingServer.this.handleReports(exchange);
+			}
+		});
+	}
+
+	/**
+	 * Creates an executor which runs each task on a new virtual thread. Virtual threads only exist from Java 21, so on
+	 * older JVMs a pool of platform threads which grows with the load is used instead
+	 * @return the executor to handle requests with
+	 */
+	public static ExecutorService newExecutor() {
+		try {
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	/**
+	 * Starts accepting requests
+	 */
+	public void start() {
+		this.server.start();
+	}
+
+	/**
+	 * Stops accepting requests, waiting up to the given number of seconds for requests being handled to finish
+	 * @param delay the most seconds to wait
+	 */
+	public void stop(int delay) {
+		this.server.stop(delay);
+		this.executor.shutdown();
+	}
+
+	/**
+	 * Returns the port the server is listening on
+	 * @return the port
+	 */
+	public int getPort() {
+		return this.server.getAddress().getPort();
+	}
+
+	/*
+	 * Routes the request to the method handling its path, turning bad input into a 400 response
+	 *
+	 * @param exchange the request and response
+	 */
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			String method = exchange.getRequestMethod();
+			if (exchange.getRequestURI().getPath().matches("/hotels/?")) {
+				if (method.equals("GET")) {
+					this.hotels(exchange);
+				} else {
+					this.respond(exchange, 405, error(method + " is not supported on /hotels"));
+				}
+				return;
+			}
+			if (!exchange.getRequestURI().getPath().startsWith("/hotels/")) {
+				this.respond(exchange, 404, error("Nothing at " + exchange.getRequestURI().getPath()));
+				return;
+			}
+			String[] path = exchange.getRequestURI().getPath().substring("/hotels/".length()).split("/");
+			String hotelName = decode(path[0]);
+			if (!this.system.getAllRooms().containsKey(hotelName)) {
+				this.respond(exchange, 404, error("No hotel called " + hotelName));
+			} else if (path.length == 2 && path[1].equals("availability") && method.equals("GET")) {
+				this.availability(exchange, hotelName, parseForm(exchange.getRequestURI().getRawQuery()));
+			} else if (path.length == 2 && path[1].equals("occupancy") && method.equals("GET")) {
+				TreeMap<String, ArrayList<String>> form = parseForm(exchange.getRequestURI().getRawQuery());
+				this.respond(exchange, 200, this.occupancyJson(hotelName, LocalDate.parse(required(form, "from")),
+						LocalDate.parse(required(form, "to"))));
+			} else if (path.length == 3 && path[1].equals("reports") && method.equals("GET")) {
+				int report = reportOf(path[2]);
+				TreeMap<String, ArrayList<String>> form = parseForm(exchange.getRequestURI().getRawQuery());
+				LocalDate from = LocalDate.parse(required(form, "from"));
+				LocalDate to = LocalDate.parse(required(form, "to"));
+				checkPeriod(from, to);
+				Supervisor supervisor = new Supervisor(hotelName, this.system);
+				String fileName = report == 0 ? supervisor.requestRoomIncomeInformation(from, to)
+						: supervisor.requestRoomOccupantsInformation(from, to, this.system.getAllRooms().get(hotelName), report == 1);
+				this.respond(exchange, 200, this.reportJson(hotelName, path[2], from, to, fileName));
+			} else if (path.length == 2 && path[1].equals("reservations") && method.equals("GET")) {
+				TreeMap<String, ArrayList<String>> form = parseForm(exchange.getRequestURI().getRawQuery());
+				if (form.containsKey("name")) {
+					this.reservationsByName(exchange, hotelName, required(form, "name"));
+				} else {
+					this.reservationsInPeriod(exchange, hotelName, form);
+				}
+			} else if (path.length == 2 && path[1].equals("reservations") && method.equals("POST")) {
+				this.createReservation(exchange, hotelName, parseForm(readBody(exchange)));
+			} else if (path.length == 3 && path[1].equals("reservations") && path[2].equals("batch") && method.equals("POST")) {
+				this.createReservations(exchange, hotelName, readBody(exchange));
+			} else if (path.length >= 3 && path[1].equals("reservations")) {
+				Reservation reservation = this.system.getReservation(hotelName, Integer.parseInt(path[2]));
+				if (reservation == null) {
+					this.respond(exchange, 404, error("No reservation numbered " + path[2] + " in " + hotelName));
+				} else if (path.length == 3 && method.equals("GET")) {
+					this.respond(exchange, 200, this.reservationJson(hotelName, reservation));
+				} else if (path.length == 3 && method.equals("DELETE")) {
+					Boolean refunded = this.system.cancelReservation(hotelName, reservation);
+					if (refunded == null) {
+						this.respond(exchange, 404, error("Reservation " + reservation.getNumber() + " has already been cancelled"));
+					} else {
+						this.respond(exchange, 200, "{\"number\":" + reservation.getNumber() + ",\"cancelled\":true,\"refunded\":" + refunded + "}");
+					}
+				} else if (path.length == 4 && path[3].equals("check-in") && method.equals("POST")) {
+					if (new DeskClerk(hotelName, this.system).checkIn(reservation)) {
+						this.respond(exchange, 200, this.reservationJson(hotelName, reservation));
+					} else {
+						this.respond(exchange, 409, error("The reservation is already checked in"));
+					}
+				} else if (path.length == 4 && path[3].equals("check-out") && method.equals("POST")) {
+					if (new DeskClerk(hotelName, this.system).checkOut(reservation)) {
+						this.respond(exchange, 200, this.reservationJson(hotelName, reservation));
+					} else {
+						this.respond(exchange, 409, error("The reservation is not checked in"));
+					}
+				} else if (path.length == 4 && path[3].equals("discount") && method.equals("POST")) {
+					double discount = Double.parseDouble(required(parseForm(readBody(exchange)), "discount"));
+					if (!(discount >= 0 && discount <= 100)) {
+						throw new IllegalArgumentException("discount must be a percentage from 0 to 100");
+					}
+					if (new Supervisor(hotelName, this.system).applyDiscount(discount, reservation.getNumber())) {
+						this.respond(exchange, 200, this.reservationJson(hotelName, reservation));
+					} else {
+						this.respond(exchange, 409, error("The reservation has not been billed, so it can't be discounted until it is checked in"));
+					}
+				} else {
+					this.respond(exchange, 405, error(method + " is not supported on " + exchange.getRequestURI().getPath()));
+				}
+			} else {
+				this.respond(exchange, 404, error("Nothing at " + exchange.getRequestURI().getPath()));
+			}
+		} catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException e) {
+			this.respond(exchange, 400, error("Bad request: " + e.getMessage()));
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			this.respond(exchange, 500, error("The request could not be completed"));
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/*
+	 * Responds with the occupancy of every hotel served between from and to, turning bad input into a 400 response
+	 *
+	 * @param exchange the request and response
+	 */
+	private void handleOccupancy(HttpExchange exchange) throws IOException {
+		try {
+			if (!exchange.getRequestMethod().equals("GET")) {
+				this.respond(exchange, 405, error(exchange.getRequestMethod() + " is not supported on /occupancy"));
+				return;
+			}
+			TreeMap<String, ArrayList<String>> form = parseForm(exchange.getRequestURI().getRawQuery());
+			LocalDate from = LocalDate.parse(required(form, "from"));
+			LocalDate to = LocalDate.parse(required(form, "to"));
+			StringBuilder json = new StringBuilder("[");
+			boolean first = true;
+			for (String hotelName : this.system.getAllRooms().keySet()) {
+				json.append(first ? "" : ",").append(this.occupancyJson(hotelName, from, to));
+				first = false;
+			}
+			this.respond(exchange, 200, json.append("]").toString());
+		} catch (IllegalArgumentException | DateTimeParseException e) {
+			this.respond(exchange, 400, error("Bad request: " + e.getMessage()));
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			this.respond(exchange, 500, error("The request could not be completed"));
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/*
+	 * Writes the report named in the path for every hotel served, in parallel, and responds with all of them in order
+	 * of hotel name, turning bad input into a 400 response
+	 *
+	 * @param exchange the request and response
+	 */
+	private void handleReports(HttpExchange exchange) throws IOException {
+		try {
+			String[] path = exchange.getRequestURI().getPath().substring(1).split("/");
+			if (path.length != 2) {
+				this.respond(exchange, 404, error("Nothing at " + exchange.getRequestURI().getPath()));
+				return;
+			}
+			if (!exchange.getRequestMethod().equals("GET")) {
+				this.respond(exchange, 405, error(exchange.getRequestMethod() + " is not supported on " + exchange.getRequestURI().getPath()));
+				return;
+			}
+			int report = reportOf(path[1]);
+			TreeMap<String, ArrayList<String>> form = parseForm(exchange.getRequestURI().getRawQuery());
+			LocalDate from = LocalDate.parse(required(form, "from"));
+			LocalDate to = LocalDate.parse(required(form, "to"));
+			checkPeriod(from, to);
+			ChainAnalysis analysis = new ChainAnalysis(this.system);
+			ArrayList<String> fileNames = report == 0 ? analysis.requestIncomeInformation(from, to)
+					: analysis.requestOccupantInformation(from, to, report == 1);
+			StringBuilder json = new StringBuilder("[");
+			int i = 0;
+			for (String hotelName : this.system.getAllRooms().keySet()) { // the order ChainAnalysis writes them in
+				json.append(i == 0 ? "" : ",").append(this.reportJson(hotelName, path[1], from, to, fileNames.get(i)));
+				i++;
+			}
+			this.respond(exchange, 200, json.append("]").toString());
+		} catch (IllegalArgumentException | DateTimeParseException e) {
+			this.respond(exchange, 400, error("Bad request: " + e.getMessage()));
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			this.respond(exchange, 500, error("The request could not be completed"));
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/*
+	 * Finds the type of a report from its name
+	 *
+	 * @param name the name of the report, income, occupants or rooms
+	 *
+	 * @return 0 for income, 1 for occupant numbers, 2 for room numbers
+	 *
+	 * @throws IllegalArgumentException if there is no report with the name
+	 */
+	private static int reportOf(String name) {
+		for (int report = 0; report < REPORTS.length; report++) {
+			if (REPORTS[report].equals(name)) {
+				return report;
+			}
+		}
+		throw new IllegalArgumentException("No report called " + name + ", expected income, occupants or rooms");
+	}
+
+	/*
+	 * Checks the period of a report
+	 *
+	 * @param from the start date of the period
+	 *
+	 * @param to the end date of the period
+	 *
+	 * @throws IllegalArgumentException if the period ends before it starts or is too long
+	 */
+	private static void checkPeriod(LocalDate from, LocalDate to) {
+		if (to.isBefore(from) || to.toEpochDay() - from.toEpochDay() > MAX_REPORT_DAYS) {
+			throw new IllegalArgumentException("to must be from 0 to " + MAX_REPORT_DAYS + " days after from");
+		}
+	}
+
+	/*
+	 * Converts a report written to data/dataAnalysis to JSON, holding the name of its file and its contents
+	 *
+	 * @param hotelName the name of the hotel
+	 *
+	 * @param report the name of the report
+	 *
+	 * @param from the start date of the period
+	 *
+	 * @param to the end date of the period
+	 *
+	 * @param fileName the name of the file the report was written to
+	 *
+	 * @return the JSON object
+	 */
+	private String reportJson(String hotelName, String report, LocalDate from, LocalDate to, String fileName) throws IOException {
+		byte[] csv = Files.readAllBytes(Paths.get(this.system.getDirectory(), "data", "dataAnalysis", fileName));
+		return "{\"hotel\":" + quote(hotelName) + ",\"report\":" + quote(report) + ",\"from\":\"" + from + "\",\"to\":\"" + to
+				+ "\",\"file\":" + quote(fileName) + ",\"csv\":" + quote(new String(csv, StandardCharsets.UTF_8)) + "}";
+	}
+
+	/*
+	 * Responds with the names of the hotels served
+	 *
+	 * @param exchange the request and response
+	 */
+	private void hotels(HttpExchange exchange) throws IOException {
+		StringBuilder json = new StringBuilder("[");
+		boolean first = true;
+		for (String hotelName : this.system.getAllRooms().keySet()) {
+			json.append(first ? "" : ",").append(quote(hotelName));
+			first = false;
+		}
+		this.respond(exchange, 200, json.append("]").toString());
+	}
+
+	/*
+	 * Converts the room nights, guest nights and income of each room type of the hotel between from and to to JSON
+	 *
+	 * @param hotelName the name of the hotel
+	 *
+	 * @param from the first night of the period
+	 *
+	 * @param to the date the period ends at (not included)
+	 *
+	 * @return the JSON object
+	 */
+	private String occupancyJson(String hotelName, LocalDate from, LocalDate to) {
+		if (!to.isAfter(from)) {
+			throw new IllegalArgumentException("to must be after from");
+		}
+		OccupancyMatrix matrix = this.system.getOccupancy(hotelName, from, to);
+		StringBuilder json = new StringBuilder();
+		json.append("{\"hotel\":").append(quote(hotelName)).append(",\"from\":\"").append(from).append("\",\"to\":\"")
+				.append(to).append("\",\"rooms\":[");
+		boolean first = true;
+		for (Map.Entry<Room, Integer> e : matrix.getRooms().entrySet()) {
+			int row = e.getValue();
+			long roomNights = 0;
+			long guestNights = 0;
+			long income = 0;
+			for (int day = 0; day < matrix.getNumberOfDays(); day++) {
+				roomNights += matrix.getRoomsBooked(row, day);
+				guestNights += matrix.getOccupants(row, day);
+				income += matrix.getIncome(row, day);
+			}
+			json.append(first ? "" : ",").append("{\"type\":").append(quote(e.getKey().getType()))
+					.append(",\"bookings\":").append(matrix.getBookings(row)).append(",\"roomNights\":").append(roomNights)
+					.append(",\"guestNights\":").append(guestNights).append(",\"income\":").append(Money.toDecimal(income))
+					.append("}");
+			first = false;
+		}
+		json.append("]}");
+		return json.toString();
+	}
+
+	/*
+	 * Responds with the number of each room free on every night between from and to
+	 *
+	 * @param exchange the request and response
+	 *
+	 * @param hotelName the name of the hotel
+	 *
+	 * @param form the query parameters
+	 */
+	private void availability(HttpExchange exchange, String hotelName, TreeMap<String, ArrayList<String>> form) throws IOException {
+		LocalDate from = LocalDate.parse(required(form, "from"));
+		LocalDate to = LocalDate.parse(required(form, "to"));
+		StringBuilder json = new StringBuilder();
+		json.append("{\"hotel\":").append(quote(hotelName)).append(",\"from\":\"").append(from).append("\",\"to\":\"")
+				.append(to).append("\",\"rooms\":[");
+		boolean first = true;
+		for (Map.Entry<Room, Integer> e : this.system.getCurrentRooms(hotelName, from, to).entrySet()) {
+			json.append(first ? "" : ",").append("{\"type\":").append(quote(e.getKey().getType())).append(",\"available\":")
+					.append(e.getValue()).append("}");
+			first = false;
+		}
+		json.append("]}");
+		this.respond(exchange, 200, json.toString());
+	}
+
+	/*
+	 * Responds with every reservation with a night between from and to
+	 *
+	 * @param exchange the request and response
+	 *
+	 * @param hotelName the name of the hotel
+	 *
+	 * @param form the query parameters
+	 */
+	private void reservationsInPeriod(HttpExchange exchange, String hotelName, TreeMap<String, ArrayList<String>> form) throws IOException {
+		LocalDate from = LocalDate.parse(required(form, "from"));
+		LocalDate to = LocalDate.parse(required(form, "to"));
+		StringBuilder json = new StringBuilder("[");
+		boolean first = true;
+		for (Reservation r : this.system.getReservations(hotelName, from, to)) {
+			json.append(first ? "" : ",").append(this.reservationJson(hotelName, r));
+			first = false;
+		}
+		this.respond(exchange, 200, json.append("]").toString());
+	}
+
+	/*
+	 * Responds with every reservation made under a name starting with the prefix
+	 *
+	 * @param exchange the request and response
+	 *
+	 * @param hotelName the name of the hotel
+	 *
+	 * @param namePrefix the start of the guest's name
+	 */
+	private void reservationsByName(HttpExchange exchange, String hotelName, String namePrefix) throws IOException {
+		StringBuilder json = new StringBuilder("[");
+		boolean first = true;
+		for (Reservation r : this.system.findReservations(hotelName, namePrefix)) {
+			json.append(first ? "" : ",").append(this.reservationJson(hotelName, r));
+			first = false;
+		}
+		this.respond(exchange, 200, json.append("]").toString());
+	}
+
+	/*
+	 * Creates a reservation from the form fields, responding with 201 and the reservation if it was booked or 409 if
+	 * there weren't enough rooms free
+	 *
+	 * @param exchange the request and response
+	 *
+	 * @param hotelName the name of the hotel
+	 *
+	 * @param form the form fields
+	 */
+	private void createReservation(HttpExchange exchange, String hotelName, TreeMap<String, ArrayList<String>> form) throws IOException {
+		String name = required(form, "name");
+		String type = required(form, "type").toUpperCase();
+		LocalDate checkin = LocalDate.parse(required(form, "checkin"));
+		int nights = Integer.parseInt(required(form, "nights"));
+		ArrayList<RoomBooking> rooms;
+		try {
+			checkName(name);
+			checkStay(type, checkin, nights);
+			rooms = this.parseRooms(hotelName, form.get("room"));
+		} catch (IllegalArgumentException e) {
+			this.respond(exchange, 400, error(e.getMessage()));
+			return;
+		}
+		int people = 0;
+		for (RoomBooking rb : rooms) {
+			people += rb.getOccupancy()[0] + rb.getOccupancy()[1];
+		}
+		if (!this.system.onlyBookingOnCheckInDate(hotelName, name, checkin)) {
+			this.respond(exchange, 409, error(name + " already has a reservation checking in on " + checkin));
+			return;
+		}
+		Reservation created = new Customer(name, hotelName, this.system).createReservation(hotelName, name, type, checkin,
+				nights, people, rooms.size(), rooms);
+		if (created == null && !this.system.onlyBookingOnCheckInDate(hotelName, name, checkin)) {
+			this.respond(exchange, 409, error(name + " already has a reservation checking in on " + checkin)); // booked since the check above
+		} else if (created == null) {
+			this.respond(exchange, 409, error("There are not enough rooms free for the reservation"));
+		} else {
+			this.respond(exchange, 201, this.reservationJson(hotelName, created));
+		}
+	}
+
+	/*
+	 * Creates every reservation of the manifest in the body, responding with 201
+	 * and the reservations if they were all booked, 400 if a line is bad or 409 if
+	 * any guest already has a reservation on their check-in date or there weren't
+	 * enough rooms free for the whole manifest, in which case none are booked
+	 *
+	 * @param exchange the request and response
+	 *
+	 * @param hotelName the name of the hotel
+	 *
+	 * @param body the manifest, one reservation per line
+	 */
+	private void createReservations(HttpExchange exchange, String hotelName, String body) throws IOException {
+		ArrayList<Reservation> reservations = new ArrayList<Reservation>();
+		HashSet<String> arrivals = new HashSet<String>(); // the name and check-in date of each line so far
+		String[] lines = body.split("\r?\n");
+		for (int line = 0; line < lines.length; line++) {
+			if (lines[line].trim().equals("")) {
+				continue;
+			}
+			String[] values = CsvReader.split(lines[line]);
+			String name;
+			LocalDate checkin;
+			Reservation reservation;
+			try {
+				if (values.length < 5) {
+					throw new IllegalArgumentException("Expected name,type,checkin,nights,room...");
+				}
+				name = values[0];
+				checkName(name);
+				String type = values[1].toUpperCase();
+				checkin = LocalDate.parse(values[2]);
+				int nights = Integer.parseInt(values[3]);
+				checkStay(type, checkin, nights);
+				ArrayList<RoomBooking> rooms = this.parseRooms(hotelName, Arrays.asList(values).subList(4, values.length));
+				int people = 0;
+				for (RoomBooking rb : rooms) {
+					people += rb.getOccupancy()[0] + rb.getOccupancy()[1];
+				}
+				reservation = new Reservation(name, type, checkin, nights, people, rooms.size(), rooms);
+			} catch (IllegalArgumentException | DateTimeParseException e) {
+				this.respond(exchange, 400, error("Line " + (line + 1) + ": " + e.getMessage()));
+				return;
+			}
+			if (!arrivals.add(name + "," + checkin) || !this.system.onlyBookingOnCheckInDate(hotelName, name, checkin)) {
+				this.respond(exchange, 409, error("Line " + (line + 1) + ": " + name + " already has a reservation checking in on " + checkin));
+				return;
+			}
+			reservations.add(reservation);
+		}
+		if (reservations.isEmpty()) {
+			this.respond(exchange, 400, error("The manifest has no reservations"));
+			return;
+		}
+		ArrayList<Reservation> created = new User(hotelName, this.system).createReservations(hotelName, reservations);
+		if (created == null) {
+			for (int i = 0; i < reservations.size(); i++) {
+				Reservation r = reservations.get(i);
+				if (!this.system.onlyBookingOnCheckInDate(hotelName, r.getName(), r.getCheckinDate())) {
+					this.respond(exchange, 409, error(r.getName() + " already has a reservation checking in on " + r.getCheckinDate()));
+					return; // booked since the check above
+				}
+			}
+			this.respond(exchange, 409, error("There are not enough rooms free for the whole manifest"));
+		} else {
+			StringBuilder json = new StringBuilder("[");
+			for (int i = 0; i < created.size(); i++) {
+				json.append(i == 0 ? "" : ",").append(this.reservationJson(hotelName, created.get(i)));
+			}
+			this.respond(exchange, 201, json.append("]").toString());
+		}
+	}
+
+	/*
+	 * Checks the guest's name of a new reservation can be written to the csv files and the journal, which separate
+	 * values by commas and records by line breaks without quoting them
+	 *
+	 * @param name the name of the guest
+	 *
+	 * @throws IllegalArgumentException if the name holds a comma or a line break
+	 */
+	private static void checkName(String name) {
+		if (name.indexOf(',') != -1 || name.indexOf('\r') != -1 || name.indexOf('\n') != -1) {
+			throw new IllegalArgumentException("name must not contain commas or line breaks");
+		}
+	}
+
+	/*
+	 * Checks the type and dates of a new reservation
+	 *
+	 * @param type the type of the reservation, S or AP
+	 *
+	 * @param checkin the check-in date
+	 *
+	 * @param nights the number of nights
+	 *
+	 * @throws IllegalArgumentException with the reason if they can't be booked
+	 */
+	private static void checkStay(String type, LocalDate checkin, int nights) {
+		if (!type.equals("S") && !type.equals("AP")) {
+			throw new IllegalArgumentException("type must be S or AP");
+		}
+		if (nights < 1 || checkin.isBefore(LocalDate.now())) {
+			throw new IllegalArgumentException("The stay must be at least one night from today on");
+		}
+		if (nights > MAX_NIGHTS || checkin.isAfter(LocalDate.now().plusDays(MAX_DAYS_AHEAD))) {
+			throw new IllegalArgumentException("The stay must be at most " + MAX_NIGHTS + " nights, checking in within "
+					+ MAX_DAYS_AHEAD + " days of today");
+		}
+	}
+
+	/*
+	 * Parses the rooms of a new reservation, each as type:adults:children[:breakfast]
+	 *
+	 * @param hotelName the name of the hotel
+	 *
+	 * @param roomFields the rooms, can be null
+	 *
+	 * @return the room bookings
+	 *
+	 * @throws IllegalArgumentException with the reason if a room is missing, unknown or over its occupancy
+	 */
+	private ArrayList<RoomBooking> parseRooms(String hotelName, List<String> roomFields) {
+		if (roomFields == null || roomFields.isEmpty()) {
+			throw new IllegalArgumentException("At least one room is needed");
+		}
+		ArrayList<RoomBooking> rooms = new ArrayList<RoomBooking>();
+		for (String roomField : roomFields) {
+			String[] values = roomField.split(":");
+			Room room = this.system.getRoom(hotelName, values[0]);
+			if (room == null) {
+				throw new IllegalArgumentException("No room type called " + values[0]);
+			}
+			if (values.length < 3) {
+				throw new IllegalArgumentException("Expected " + values[0] + ":adults:children");
+			}
+			int adults = Integer.parseInt(values[1]);
+			int children = Integer.parseInt(values[2]);
+			if (adults < room.occupancy(true, true) || adults > room.occupancy(true, false)
+					|| children < room.occupancy(false, true) || children > room.occupancy(false, false)) {
+				throw new IllegalArgumentException("The occupancy of " + values[0] + " is outside its limits");
+			}
+			RoomBooking rb = new RoomBooking(room, adults, children);
+			rb.setBreakfastIncluded(values.length > 3 && Boolean.parseBoolean(values[3]));
+			rooms.add(rb);
+		}
+		return rooms;
+	}
+
+	/*
+	 * Converts the reservation and its stay, if any, to JSON
+	 *
+	 * @param hotelName the name of the hotel
+	 *
+	 * @param reservation the reservation
+	 *
+	 * @return the JSON object
+	 */
+	private String reservationJson(String hotelName, Reservation reservation) {
+		StringBuilder json = new StringBuilder();
+		json.append("{\"hotel\":").append(quote(hotelName)).append(",\"number\":").append(reservation.getNumber())
+				.append(",\"name\":").append(quote(reservation.getName())).append(",\"type\":")
+				.append(quote(reservation.getType())).append(",\"checkin\":\"").append(reservation.getCheckinDate())
+				.append("\",\"nights\":").append(reservation.getNumberOfNights()).append(",\"people\":")
+				.append(reservation.getNumberOfPeople()).append(",\"rooms\":[");
+		boolean first = true;
+		for (RoomBooking rb : reservation.getRooms()) {
+			json.append(first ? "" : ",").append("{\"type\":").append(quote(rb.getRoom().getType())).append(",\"adults\":")
+					.append(rb.getOccupancy()[0]).append(",\"children\":").append(rb.getOccupancy()[1])
+					.append(",\"breakfast\":").append(rb.isBreakfastIncluded()).append("}");
+			first = false;
+		}
+		json.append("],\"totalCost\":").append(Money.toDecimal(reservation.getTotalCost().getAmountDueCents()))
+				.append(",\"deposit\":").append(Money.toDecimal(reservation.getDeposit().getAmountDueCents()));
+		HotelStay stay = this.system.getHotelStay(hotelName, reservation);
+		json.append(",\"stay\":").append(stay == null ? "null" : stay.isCheckedIn() ? "\"checked in\"" : "\"checked out\"");
+		return json.append("}").toString();
+	}
+
+	/*
+	 * Writes the JSON response with the status code
+	 *
+	 * @param exchange the request and response
+	 *
+	 * @param status the HTTP status code
+	 *
+	 * @param json the body of the response
+	 */
+	private void respond(HttpExchange exchange, int status, String json) throws IOException {
+		byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	/*
+	 * Reads the whole body of the request
+	 *
+	 * @param exchange the request
+	 *
+	 * @return the body as a string
+	 */
+	private static String readBody(HttpExchange exchange) throws IOException {
+		try (InputStream in = exchange.getRequestBody()) {
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				body.write(buffer, 0, read);
+			}
+			return body.toString(StandardCharsets.UTF_8.name());
+		}
+	}
+
+	/*
+	 * Parses a query string or form body of the form key=value&key=value, keeping every value of repeated keys
+	 *
+	 * @param form the encoded form, can be null
+	 *
+	 * @return the keys mapped to their values in order
+	 */
+	private static TreeMap<String, ArrayList<String>> parseForm(String form) {
+		TreeMap<String, ArrayList<String>> fields = new TreeMap<String, ArrayList<String>>();
+		if (form != null && !form.equals("")) {
+			for (String pair : form.split("&")) {
+				int equals = pair.indexOf('=');
+				String key = decode(equals == -1 ? pair : pair.substring(0, equals));
+				String value = equals == -1 ? "" : decode(pair.substring(equals + 1));
+				if (!fields.containsKey(key)) {
+					fields.put(key, new ArrayList<String>());
+				}
+				fields.get(key).add(value);
+			}
+		}
+		return fields;
+	}
+
+	/*
+	 * Returns the first value of a field that must be given
+	 *
+	 * @param form the fields
+	 *
+	 * @param key the name of the field
+	 *
+	 * @return the value of the field
+	 */
+	private static String required(TreeMap<String, ArrayList<String>> form, String key) {
+		ArrayList<String> values = form.get(key);
+		if (values == null || values.get(0).equals("")) {
+			throw new IllegalArgumentException("missing field " + key);
+		}
+		return values.get(0);
+	}
+
+	/*
+	 * Decodes a URL encoded value
+	 *
+	 * @param value the encoded value
+	 *
+	 * @return the decoded value
+	 */
+	private static String decode(String value) {
+		try {
+			return URLDecoder.decode(value, StandardCharsets.UTF_8.name());
+		} catch (java.io.UnsupportedEncodingException e) {
+			return value; //UTF-8 is always supported
+		}
+	}
+
+	/**
+	 * Quotes and escapes a string for JSON
+	 * @param value the string
+	 * @return the JSON string
+	 */
+	public static String quote(String value) {
+		StringBuilder quoted = new StringBuilder("\"");
+		for (char c : value.toCharArray()) {
+			if (c == '"' || c == '\\') {
+				quoted.append('\\').append(c);
+			} else if (c < ' ') {
+				quoted.append(String.format("\\u%04x", (int)c));
+			} else {
+				quoted.append(c);
+			}
+		}
+		return quoted.append("\"").toString();
+	}
+
+	/**
+	 * Creates a JSON error response body
+	 * @param message the error message
+	 * @return the JSON object
+	 */
+	public static String error(String message) {
+		return "{\"error\":" + quote(message) + "}";
+	}
+}
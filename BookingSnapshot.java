@@ -0,0 +1,521 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A class to save the reservations, cancellations and stays of the booking system in a compact binary file, so that
+ * the system can be started again without parsing the csv files. Every table is stored column by column as arrays of
+ * primitives, with strings such as hotel names, guest names and room types stored once in a string table and referred
+ * to by index, dates stored as epoch days and money stored in cents. The snapshot records the size and last modified time of the csv files
+ * it was written alongside, and is only loaded if none of them have changed since, so the csv files always stay the
+ * authority on the state of the system. A checksum of the whole file is written at its end, so a snapshot damaged on
+ * disk is read from the csv files instead of being loaded
+ */
+public class BookingSnapshot {
+	private static final int MAGIC = 0x4C34534E; //"L4SN"
+	private static final int VERSION = 2; //1 had no checksum
+
+	/*
+	 * The columns of a table read from the snapshot. Reservations and cancellations use every column but those of
+	 * stays, stays only use hotels, numbers, checkedIn, stayStarts and stayEnds
+	 */
+	private static class Table {
+		private int[] hotels;
+		private int[] numbers;
+		private int[] names;
+		private int[] types;
+		private int[] checkins;
+		private int[] nights;
+		private int[] people;
+		private int[] numberOfRooms;
+		private int[] roomEnds;
+		private long[] totalCosts;
+		private long[] deposits;
+		private int[] roomTypes;
+		private int[] adults;
+		private int[] children;
+		private byte[] breakfasts;
+		private byte[] checkedIn;
+		private int[] stayStarts;
+		private int[] stayEnds;
+	}
+
+	/**
+	 * An interface for the system the snapshot is loaded into
+	 */
+	public interface Loader {
+		/**
+		 * Finds the room of the hotel with the given type
+		 * @param hotelName the name of the hotel
+		 * @param roomType the type of the room
+		 * @return the room, or null if the hotel has no such room
+		 */
+		public abstract Room getRoom(String hotelName, String roomType);
+
+		/**
+		 * Adds a reservation read from the snapshot to the hotel
+		 * @param reservationOrCancellation true if it is a reservation, false if a cancellation
+		 * @param hotelName the name of the hotel
+		 * @param reservation the reservation with its bills set
+		 */
+		public abstract void addReservation(boolean reservationOrCancellation, String hotelName, Reservation reservation);
+
+		/**
+		 * Adds a hotel stay read from the snapshot to the hotel
+		 * @param hotelName the name of the hotel
+		 * @param number the number of the reservation that was stayed
+		 * @param checkedIn true if the guests are still checked in
+		 * @param stayStart the start date of the stay
+		 * @param stayEnd the end date of the stay
+		 */
+		public abstract void addStay(String hotelName, int number, boolean checkedIn, LocalDate stayStart, LocalDate stayEnd);
+	}
+
+	/**
+	 * Writes a snapshot of the tables to the file at filePath. It is written to a temporary file first and moved into
+	 * place so that a crash never leaves a half written snapshot behind
+	 * @param filePath the path to the snapshot file
+	 * @param sources the csv files the tables were last written to, which must not change for the snapshot to be loaded
+	 * @param reservations the reservations of each hotel
+	 * @param cancellations the cancellations of each hotel
+	 * @param stays the hotel stays of each hotel
+	 * @return true if the snapshot was written
+	 */
+	public static boolean write(String filePath, File[] sources, TreeMap<String, LinkedHashMap<Integer, Reservation>> reservations,
+			TreeMap<String, LinkedHashMap<Integer, Reservation>> cancellations, TreeMap<String, ArrayList<HotelStay>> stays) {
+		HashMap<String, Integer> strings = new HashMap<String, Integer>();
+		ArrayList<String> stringTable = new ArrayList<String>();
+		File file = new File(filePath);
+		File temp = new File(filePath + ".tmp");
+		CRC32 checksum = new CRC32();
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new CheckedOutputStream(new FileOutputStream(temp), checksum), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(sources.length);
+			for (File source : sources) {
+				out.writeLong(source.length());
+				out.writeLong(source.lastModified());
+			}
+			// the columns are built first so the string table, which must be read first, is complete
+			ByteBuffer reservationColumns = reservationColumns(reservations, strings, stringTable);
+			ByteBuffer cancellationColumns = reservationColumns(cancellations, strings, stringTable);
+			ByteBuffer stayColumns = stayColumns(stays, strings, stringTable);
+			out.writeInt(stringTable.size());
+			for (String s : stringTable) {
+				byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+			out.write(reservationColumns.array(), 0, reservationColumns.position());
+			out.write(cancellationColumns.array(), 0, cancellationColumns.position());
+			out.write(stayColumns.array(), 0, stayColumns.position());
+			out.flush();
+			out.writeLong(checksum.getValue()); // of everything before it
+		} catch (IOException e) {
+			e.printStackTrace();
+			temp.delete();
+			return false;
+		}
+		try {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Loads the snapshot at filePath into the loader, reservations first, then cancellations, then stays. Nothing is
+	 * loaded if the snapshot is missing, damaged, was written by another version or any of the csv files have changed since it
+	 * was written
+	 * @param filePath the path to the snapshot file
+	 * @param sources the csv files the snapshot must have been written alongside, in the order they were written
+	 * @param loader the system to load into
+	 * @return true if the snapshot was loaded, false if the csv files should be read instead
+	 */
+	public static boolean load(String filePath, File[] sources, Loader loader) {
+		File file = new File(filePath);
+		if (!file.exists()) {
+			return false;
+		}
+		String[] strings;
+		Table reservations, cancellations, stays;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (in.remaining() < 20 || !checksumMatches(in)) {
+				return false; // cut short or damaged on disk
+			}
+			if (in.getInt() != MAGIC || in.getInt() != VERSION || in.getInt() != sources.length) {
+				return false;
+			}
+			for (File source : sources) {
+				if (in.getLong() != source.length() || in.getLong() != source.lastModified()) {
+					return false; // the csv files were changed without the snapshot
+				}
+			}
+			strings = new String[in.getInt()];
+			for (int i = 0; i < strings.length; i++) {
+				byte[] bytes = new byte[in.getInt()];
+				in.get(bytes);
+				strings[i] = new String(bytes, StandardCharsets.UTF_8);
+			}
+			reservations = readReservations(in);
+			cancellations = readReservations(in);
+			stays = readStays(in);
+		} catch (IOException | RuntimeException e) {
+			e.printStackTrace(); // nothing has been loaded yet so the csv files can still be read instead
+			return false;
+		}
+		HashMap<Long, Room> rooms = new HashMap<Long, Room>();
+		loadReservations(reservations, strings, rooms, true, loader);
+		loadReservations(cancellations, strings, rooms, false, loader);
+		loadStays(stays, strings, loader);
+		return true;
+	}
+
+	/*
+	 * Checks the checksum at the end of the snapshot against the bytes before it, and limits the buffer to those
+	 * bytes
+	 *
+	 * @param in the whole snapshot, from its start
+	 *
+	 * @return true if the checksum matches
+	 */
+	private static boolean checksumMatches(ByteBuffer in) {
+		int end = in.limit() - 8;
+		long expected = in.getLong(end);
+		in.limit(end);
+		CRC32 checksum = new CRC32();
+		checksum.update(in.duplicate());
+		return checksum.getValue() == expected;
+	}
+
+	/*
+	 * Finds the index of the string in the string table, adding it if it is new
+	 *
+	 * @param s the string
+	 *
+	 * @param strings the index of each string in the table
+	 *
+	 * @param stringTable the string table
+	 *
+	 * @return the index of s
+	 */
+	private static int intern(String s, HashMap<String, Integer> strings, ArrayList<String> stringTable) {
+		Integer index = strings.get(s);
+		if (index == null) {
+			index = stringTable.size();
+			strings.put(s, index);
+			stringTable.add(s);
+		}
+		return index;
+	}
+
+	/*
+	 * Writes the columns of a reservations or cancellations table. The table has one row per reservation, followed by
+	 * one row per room booked, where roomEnd of a reservation is the index after its last room row
+	 *
+	 * @param table the reservations of each hotel
+	 *
+	 * @param strings the index of each string in the string table
+	 *
+	 * @param stringTable the string table
+	 *
+	 * @return the buffer holding the columns, up to its position
+	 */
+	private static ByteBuffer reservationColumns(TreeMap<String, LinkedHashMap<Integer, Reservation>> table, HashMap<String, Integer> strings,
+			ArrayList<String> stringTable) {
+		int rows = 0;
+		int roomRows = 0;
+		for (LinkedHashMap<Integer, Reservation> hotelReservations : table.values()) {
+			rows += hotelReservations.size();
+			for (Reservation r : hotelReservations.values()) {
+				roomRows += r.getRooms().size();
+			}
+		}
+		ByteBuffer out = ByteBuffer.allocate(8 + rows * 52 + roomRows * 13);
+		out.putInt(rows);
+		out.putInt(roomRows);
+		int[] hotels = new int[rows];
+		ArrayList<Reservation> all = new ArrayList<Reservation>(rows);
+		for (Map.Entry<String, LinkedHashMap<Integer, Reservation>> e : table.entrySet()) {
+			int hotel = intern(e.getKey(), strings, stringTable);
+			for (Reservation r : e.getValue().values()) {
+				hotels[all.size()] = hotel;
+				all.add(r);
+			}
+		}
+		for (int hotel : hotels) {
+			out.putInt(hotel);
+		}
+		for (Reservation r : all) {
+			out.putInt(r.getNumber());
+		}
+		for (Reservation r : all) {
+			out.putInt(intern(r.getName(), strings, stringTable));
+		}
+		for (Reservation r : all) {
+			out.putInt(intern(r.getType(), strings, stringTable));
+		}
+		for (Reservation r : all) {
+			out.putInt((int) r.getCheckinDate().toEpochDay());
+		}
+		for (Reservation r : all) {
+			out.putInt(r.getNumberOfNights());
+		}
+		for (Reservation r : all) {
+			out.putInt(r.getNumberOfPeople());
+		}
+		for (Reservation r : all) {
+			out.putInt(r.getNumberOfRooms());
+		}
+		int roomEnd = 0;
+		for (Reservation r : all) {
+			roomEnd += r.getRooms().size();
+			out.putInt(roomEnd);
+		}
+		for (Reservation r : all) {
+			out.putLong(r.getTotalCost().getAmountDueCents());
+		}
+		for (Reservation r : all) {
+			out.putLong(r.getDeposit().getAmountDueCents());
+		}
+		for (Reservation r : all) {
+			for (RoomBooking rb : r.getRooms()) {
+				out.putInt(intern(rb.getRoom().getType(), strings, stringTable));
+			}
+		}
+		for (Reservation r : all) {
+			for (RoomBooking rb : r.getRooms()) {
+				out.putInt(rb.getOccupancy()[0]);
+			}
+		}
+		for (Reservation r : all) {
+			for (RoomBooking rb : r.getRooms()) {
+				out.putInt(rb.getOccupancy()[1]);
+			}
+		}
+		for (Reservation r : all) {
+			for (RoomBooking rb : r.getRooms()) {
+				out.put((byte) (rb.isBreakfastIncluded() ? 1 : 0));
+			}
+		}
+		return out;
+	}
+
+	/*
+	 * Writes the columns of the stays table, which holds the reservation number of each stay rather than the
+	 * reservation itself as the reservation is already in the reservations table
+	 *
+	 * @param table the hotel stays of each hotel
+	 *
+	 * @param strings the index of each string in the string table
+	 *
+	 * @param stringTable the string table
+	 *
+	 * @return the buffer holding the columns, up to its position
+	 */
+	private static ByteBuffer stayColumns(TreeMap<String, ArrayList<HotelStay>> table, HashMap<String, Integer> strings,
+			ArrayList<String> stringTable) {
+		int rows = 0;
+		for (ArrayList<HotelStay> hotelStays : table.values()) {
+			rows += hotelStays.size();
+		}
+		ByteBuffer out = ByteBuffer.allocate(4 + rows * 17);
+		out.putInt(rows);
+		int[] hotels = new int[rows];
+		ArrayList<HotelStay> all = new ArrayList<HotelStay>(rows);
+		for (Map.Entry<String, ArrayList<HotelStay>> e : table.entrySet()) {
+			int hotel = intern(e.getKey(), strings, stringTable);
+			for (HotelStay stay : e.getValue()) {
+				hotels[all.size()] = hotel;
+				all.add(stay);
+			}
+		}
+		for (int hotel : hotels) {
+			out.putInt(hotel);
+		}
+		for (HotelStay stay : all) {
+			out.putInt(stay.getReservation().getNumber());
+		}
+		for (HotelStay stay : all) {
+			out.put((byte) (stay.isCheckedIn() ? 1 : 0));
+		}
+		for (HotelStay stay : all) {
+			out.putInt((int) stay.getStayStart().toEpochDay());
+		}
+		for (HotelStay stay : all) {
+			out.putInt((int) stay.getStayEnd().toEpochDay());
+		}
+		return out;
+	}
+
+	/*
+	 * Reads a column of ints
+	 *
+	 * @param in the buffer positioned at the column
+	 *
+	 * @param length the number of values in the column
+	 *
+	 * @return the values
+	 */
+	private static int[] intColumn(ByteBuffer in, int length) {
+		int[] column = new int[length];
+		in.asIntBuffer().get(column);
+		in.position(in.position() + length * 4);
+		return column;
+	}
+
+	/*
+	 * Reads a column of longs
+	 *
+	 * @param in the buffer positioned at the column
+	 *
+	 * @param length the number of values in the column
+	 *
+	 * @return the values
+	 */
+	private static long[] longColumn(ByteBuffer in, int length) {
+		long[] column = new long[length];
+		in.asLongBuffer().get(column);
+		in.position(in.position() + length * 8);
+		return column;
+	}
+
+	/*
+	 * Reads a column of bytes
+	 *
+	 * @param in the buffer positioned at the column
+	 *
+	 * @param length the number of values in the column
+	 *
+	 * @return the values
+	 */
+	private static byte[] byteColumn(ByteBuffer in, int length) {
+		byte[] column = new byte[length];
+		in.get(column);
+		return column;
+	}
+
+	/*
+	 * Reads the columns of a reservations or cancellations table
+	 *
+	 * @param in the buffer positioned at the table
+	 *
+	 * @return the columns of the table
+	 */
+	private static Table readReservations(ByteBuffer in) {
+		Table table = new Table();
+		int rows = in.getInt();
+		int roomRows = in.getInt();
+		table.hotels = intColumn(in, rows);
+		table.numbers = intColumn(in, rows);
+		table.names = intColumn(in, rows);
+		table.types = intColumn(in, rows);
+		table.checkins = intColumn(in, rows);
+		table.nights = intColumn(in, rows);
+		table.people = intColumn(in, rows);
+		table.numberOfRooms = intColumn(in, rows);
+		table.roomEnds = intColumn(in, rows);
+		table.totalCosts = longColumn(in, rows);
+		table.deposits = longColumn(in, rows);
+		table.roomTypes = intColumn(in, roomRows);
+		table.adults = intColumn(in, roomRows);
+		table.children = intColumn(in, roomRows);
+		table.breakfasts = byteColumn(in, roomRows);
+		return table;
+	}
+
+	/*
+	 * Reads the columns of the stays table
+	 *
+	 * @param in the buffer positioned at the table
+	 *
+	 * @return the columns of the table
+	 */
+	private static Table readStays(ByteBuffer in) {
+		Table table = new Table();
+		int rows = in.getInt();
+		table.hotels = intColumn(in, rows);
+		table.numbers = intColumn(in, rows);
+		table.checkedIn = byteColumn(in, rows);
+		table.stayStarts = intColumn(in, rows);
+		table.stayEnds = intColumn(in, rows);
+		return table;
+	}
+
+	/*
+	 * Adds each reservation of a reservations or cancellations table to the loader
+	 *
+	 * @param table the columns of the table
+	 *
+	 * @param strings the string table
+	 *
+	 * @param rooms the rooms already looked up, by hotel and room type index
+	 *
+	 * @param reservationOrCancellation true if it is the reservations table, false if cancellations
+	 *
+	 * @param loader the system to load into
+	 */
+	private static void loadReservations(Table table, String[] strings, HashMap<Long, Room> rooms,
+			boolean reservationOrCancellation, Loader loader) {
+		int roomRow = 0;
+		for (int row = 0; row < table.hotels.length; row++) {
+			String hotelName = strings[table.hotels[row]];
+			ArrayList<RoomBooking> booked = new ArrayList<RoomBooking>(table.roomEnds[row] - roomRow);
+			for (; roomRow < table.roomEnds[row]; roomRow++) {
+				long key = (long) table.hotels[row] << 32 | table.roomTypes[roomRow];
+				Room room = rooms.get(key);
+				if (room == null) {
+					room = loader.getRoom(hotelName, strings[table.roomTypes[roomRow]]);
+					rooms.put(key, room);
+				}
+				if (room != null) {
+					RoomBooking rb = new RoomBooking(room, table.adults[roomRow], table.children[roomRow]);
+					rb.setBreakfastIncluded(table.breakfasts[roomRow] != 0);
+					booked.add(rb);
+				}
+			}
+			Reservation r = new Reservation(table.numbers[row], strings[table.names[row]], strings[table.types[row]],
+					LocalDate.ofEpochDay(table.checkins[row]), table.nights[row], table.people[row], table.numberOfRooms[row],
+					booked);
+			r.setTotalCostCents(table.totalCosts[row]);
+			r.setDepositCents(table.deposits[row]);
+			loader.addReservation(reservationOrCancellation, hotelName, r);
+		}
+	}
+
+	/*
+	 * Adds each stay of the stays table to the loader
+	 *
+	 * @param table the columns of the table
+	 *
+	 * @param strings the string table
+	 *
+	 * @param loader the system to load into
+	 */
+	private static void loadStays(Table table, String[] strings, Loader loader) {
+		for (int row = 0; row < table.hotels.length; row++) {
+			loader.addStay(strings[table.hotels[row]], table.numbers[row], table.checkedIn[row] != 0,
+					LocalDate.ofEpochDay(table.stayStarts[row]), LocalDate.ofEpochDay(table.stayEnds[row]));
+		}
+	}
+}
@@ -1,34 +1,128 @@
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.time.LocalDate;
-import java.util.Scanner;
 import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 
 /**
  * A class with tools for managing the system
  */
 public class BookingSystem implements CsvTools {
-	private TreeMap<String, ArrayList<Reservation>> reservations; // Stores a list of reservations per hotel
+	private String directory; // The directory holding the data folder the system is loaded from and saved to
+	private TreeMap<String, LinkedHashMap<Integer, Reservation>> reservations; // Stores the reservations of each hotel by number, in the order they were added
 	private TreeMap<String, TreeMap<Room, Integer>> allRooms;
-	private TreeMap<String, ArrayList<Reservation>> cancellations; // Stores a list of cancellations from the system per
-																	// hotel
+	private RoomCatalog catalog; // Holds every room of allRooms by hotel and type, and by id
+	private TreeMap<String, LinkedHashMap<Integer, Reservation>> cancellations; // Stores the cancellations of each hotel by number, in the order they were added
 	private TreeMap<String, ArrayList<HotelStay>> stays; // Stores a list of hotel stays per hotel
+	private TreeMap<String, RoomInventory> inventories; // Stores the number of rooms booked each night per hotel
+	private TreeMap<String, AvailabilityCache> availability; // Remembers the rooms free over the periods last looked up per hotel
+	private TreeMap<String, IntervalIndex<Reservation>> reservationPeriods; // Indexes the reservations of each hotel by their nights
+	private TreeMap<String, StayIndex> stayNumbers; // Indexes the stays of each hotel by reservation number, checked in apart from checked out
+	private TreeMap<String, IntervalIndex<HotelStay>> stayPeriods; // Indexes the stays of each hotel by the nights of their reservation
+	private TreeMap<String, ReservationIndex> guests; // Indexes the reservations of each hotel by guest name and by check-in and checkout day
+	private TreeMap<String, NoShowSweeper> noShows; // Buckets the reservations of each hotel still to check in by check-in day
+	private TreeMap<String, RevenueCube> revenue; // Keeps running daily totals of the stays of each hotel, once they are loaded
+	private StayArchive archive; // Holds the checked out stays too old to keep in memory, null if it could not be opened
+	private BookingJournal journal; // Records changes between rewrites of the csv files
+	private BookingWriter writer; // Rewrites the csv files and forces the journal to disk in the background
+	private TreeMap<String, ReentrantReadWriteLock> locks; // Guards the reservations, cancellations, stays and rooms of each hotel
+	private ReentrantReadWriteLock otherHotelsLock; // Guards hotels that are not in l4Hotels.csv
+	private Object compactionLock; // Stops two threads rewriting the csv files at once
+	private static final int JOURNAL_SYNC_EVERY = 16; // journal records written before they are forced to disk
+	private static final long JOURNAL_SYNC_INTERVAL = 1000; // longest time in milliseconds a journal record is left unforced
+	private static final int JOURNAL_COMPACT_EVERY = 1000; // journal records written before it is folded into the csv files
+	private static final int STAY_ARCHIVE_HORIZON = 365; // days after checking out that a stay is moved to the archive
+	private static final int AVAILABILITY_CACHE_SIZE = 256; // periods whose free rooms are remembered per hotel
+	private static final int WRITER_QUEUE = 64; // flush requests that can wait for the background writer
+	private static final String COMPACTION = "Journal"; // the flush request to fold the journal into the csv files
+	private static final LatencyHistogram GET_CURRENT_ROOMS = Metrics.histogram("BookingSystem.getCurrentRooms"); // times of the hot paths, see Metrics
+	private static final LatencyHistogram ADD_RESERVATION = Metrics.histogram("BookingSystem.addReservation");
+	private static final LatencyHistogram ADD_RESERVATIONS = Metrics.histogram("BookingSystem.addReservations");
+	private static final LatencyHistogram REMOVE_RESERVATION = Metrics.histogram("BookingSystem.removeReservation");
+	private static final LatencyHistogram UPDATE_FILES = Metrics.histogram("BookingSystem.updateFiles");
+	private static final LatencyHistogram RECORD_CHANGE = Metrics.histogram("BookingSystem.updateFiles.record");
 
 	/**
-	 * Constructs a BookingSystem object
+	 * Constructs a BookingSystem object from the data folder of the working
+	 * directory
 	 */
 	public BookingSystem() {
-		this.reservations = new TreeMap<String, ArrayList<Reservation>>();
-		this.cancellations = new TreeMap<String, ArrayList<Reservation>>();
+		this(System.getProperty("user.dir"));
+	}
+
+	/**
+	 * Constructs a BookingSystem object from the data folder of the given
+	 * directory, e.g. so that each shard of the chain keeps its own files
+	 * 
+	 * @param directory the directory holding the data folder
+	 */
+	public BookingSystem(String directory) {
+		this.directory = directory;
+		this.reservations = new TreeMap<String, LinkedHashMap<Integer, Reservation>>();
+		this.cancellations = new TreeMap<String, LinkedHashMap<Integer, Reservation>>();
 		this.stays = new TreeMap<String, ArrayList<HotelStay>>(); // will have to save and restore too?
+		this.inventories = new TreeMap<String, RoomInventory>();
+		this.availability = new TreeMap<String, AvailabilityCache>();
+		this.reservationPeriods = new TreeMap<String, IntervalIndex<Reservation>>();
+		this.stayNumbers = new TreeMap<String, StayIndex>();
+		this.stayPeriods = new TreeMap<String, IntervalIndex<HotelStay>>();
+		this.guests = new TreeMap<String, ReservationIndex>();
+		this.noShows = new TreeMap<String, NoShowSweeper>();
+		this.revenue = new TreeMap<String, RevenueCube>();
+		this.locks = new TreeMap<String, ReentrantReadWriteLock>();
+		this.otherHotelsLock = new ReentrantReadWriteLock();
+		this.compactionLock = new Object();
 		this.getRoomsFromFile();
-		this.reinitialise(true, false); // reinitialises reservations
-		this.reinitialise(false, false); // reinitialises cancellations
-		this.reinitialise(true, true); // reinitialises stays
+		for (Map.Entry<String, TreeMap<Room, Integer>> e : this.allRooms.entrySet()) {
+			// every hotel gets its lists up front so that the maps are never changed once threads are using them
+			String hotelName = e.getKey();
+			this.inventories.put(hotelName, new RoomInventory(e.getValue().keySet()));
+			this.availability.put(hotelName, new AvailabilityCache(AVAILABILITY_CACHE_SIZE));
+			this.reservations.put(hotelName, new LinkedHashMap<Integer, Reservation>());
+			this.cancellations.put(hotelName, new LinkedHashMap<Integer, Reservation>());
+			this.stays.put(hotelName, new ArrayList<HotelStay>());
+			this.reservationPeriods.put(hotelName, new IntervalIndex<Reservation>());
+			this.stayNumbers.put(hotelName, new StayIndex());
+			this.stayPeriods.put(hotelName, new IntervalIndex<HotelStay>());
+			this.guests.put(hotelName, new ReservationIndex());
+			this.noShows.put(hotelName, new NoShowSweeper());
+			this.locks.put(hotelName, new ReentrantReadWriteLock());
+		}
+		if (!this.loadSnapshot()) {
+			this.reinitialise(true, false); // reinitialises reservations
+			this.reinitialise(false, false); // reinitialises cancellations
+			this.reinitialise(true, true); // reinitialises stays
+		}
+		try {
+			this.archive = new StayArchive(this.directory + "/data/bookingInfo", this.catalog);
+		} catch (IOException e) {
+			e.printStackTrace(); // old stays are kept in memory instead
+		}
+		this.loadRevenue();
+		this.journal = new BookingJournal(this.directory + "/data/bookingInfo/journal.log",
+				JOURNAL_SYNC_EVERY, JOURNAL_SYNC_INTERVAL, JOURNAL_COMPACT_EVERY);
+		try {
+			if (this.journal.replay(this::replayRecord) > 0) {
+				this.compact(); // changes from the last run never made it to the csv files
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new IllegalStateException("The journal could not be replayed, so the booking system was not started", e);
+		}
+		this.writer = new BookingWriter(WRITER_QUEUE, JOURNAL_SYNC_INTERVAL, this::flush);
+		this.archiveStays();
 	}
 
 	/*
@@ -44,23 +138,19 @@ public class BookingSystem implements CsvTools {
 	 */
 	private TreeMap<String, TreeMap<Room, Integer>> getRoomsFromFile() {
 		this.allRooms = new TreeMap<String, TreeMap<Room, Integer>>();
-		File f = new File(System.getProperty("user.dir") + "/data/hotels/l4Hotels.csv");
-		try (Scanner in = new Scanner(f)) {
-			String line;
-			String[] values;
-			Room room;
-			int lineNum = 0;
-			String hotel = "";
-			TreeMap<Room, Integer> rooms = null;
-			while (in.hasNext()) {
-				line = in.nextLine();
+		this.catalog = new RoomCatalog();
+		CsvReader.read(this.directory + "/data/hotels/l4Hotels.csv", new Consumer<String[]>() {
+			private int lineNum = 0;
+			private TreeMap<Room, Integer> rooms = null;
+			private String hotelName = null;
+
+			@Override
+			public void accept(String[] values) {
 				if (lineNum > 1) {
-					boolean newHotel = false;
-					values = line.split(","); // csv values are separated by comma
 					if (!values[0].equals("")) {
-						newHotel = true;
-						hotel = values[0];
 						rooms = new TreeMap<Room, Integer>();
+						hotelName = values[0];
+						allRooms.put(hotelName, rooms);
 					}
 					String roomType = values[1];
 					int numberOfRooms = Integer.parseInt(values[2]);
@@ -77,19 +167,61 @@ public class BookingSystem implements CsvTools {
 						rates[i] = Integer.parseInt(values[index]);
 						index++;
 					}
+					rooms.put(catalog.addRoom(hotelName, roomType, occupancy, rates), numberOfRooms);
+				}
+				lineNum++;
+			}
+		});
+		this.getRateOverridesFromFile();
+		return allRooms;
+	}
+
+	/*
+	 * Reads the optional rate overrides file, where each row after the header
+	 * gives a hotel, room type, first night, last night and the rate to charge on
+	 * each of those nights instead of the room's weekly rate, e.g. for a season.
+	 * Rows for rooms that aren't in l4Hotels.csv are skipped
+	 */
+	private void getRateOverridesFromFile() {
+		CsvReader.read(this.directory + "/data/hotels/rateOverrides.csv", new Consumer<String[]>() {
+			private boolean header = true;
 
-					room = new Room(roomType, occupancy, rates);
-					rooms.put(room, numberOfRooms);
-					if (newHotel && !hotel.equals("")) {
-						allRooms.put(hotel, rooms);
+			@Override
+			public void accept(String[] values) {
+				if (header) {
+					header = false;
+				} else if (values.length >= 5) {
+					Room room = catalog.getRoom(values[0], values[1]);
+					if (room != null) {
+						room.getCalendar().setRate(LocalDate.parse(values[2]), LocalDate.parse(values[3]),
+								Integer.parseInt(values[4]));
 					}
 				}
-				lineNum++;
 			}
-		} catch (FileNotFoundException e) {
+		});
+	}
 
-		}
-		return allRooms;
+	/*
+	 * Returns the lock guarding the hotel. Reads of the hotel's reservations,
+	 * cancellations, stays and rooms hold its read lock, changes hold its write
+	 * lock so that checking and changing them happen together
+	 * 
+	 * @param hotelName the name of the hotel
+	 * 
+	 * @return the lock of the hotel
+	 */
+	private ReentrantReadWriteLock lockOf(String hotelName) {
+		ReentrantReadWriteLock lock = this.locks.get(hotelName);
+		return lock == null ? this.otherHotelsLock : lock;
+	}
+
+	/**
+	 * Returns the directory holding the data folder of the system
+	 * 
+	 * @return the directory
+	 */
+	public String getDirectory() {
+		return this.directory;
 	}
 
 	/**
@@ -100,12 +232,7 @@ public class BookingSystem implements CsvTools {
 	 * @return types of room in the hotel named
 	 */
 	public Room getRoom(String hotelName, String roomType) {
-		for (Room r : this.allRooms.get(hotelName).keySet()) {
-			if (r.getType().equals(roomType)) {
-				return r;
-			}
-		}
-		return null;
+		return this.catalog.getRoom(hotelName, roomType);
 	}
 
 	/**
@@ -117,150 +244,184 @@ public class BookingSystem implements CsvTools {
 		return this.allRooms; // Just here for testing until we save room info to csv file
 	}
 
-	/*
-	 * Equivalent to for example y <= x in maths but for dates
-	 * 
-	 * @param d1 the variable to check thats greater than or equals to
-	 * 
-	 * @param compare the variable to compare d1 against
+	/**
+	 * Returns a tree map of the rooms and their available number for the time
+	 * period specified by the from and to parameters
 	 * 
-	 * @return whether the date d1 is greater than or equals to compare
+	 * @param hotelName the name of the hotel in question
+	 * @param from      the date at the start of the time period
+	 * @param to        the date at the end of the time period
+	 * @return a TreeMap with a rooms and their corresponding number of rooms
+	 *         available in the hotel during this period
+	 * @throws IllegalArgumentException if the hotel is not in l4Hotels.csv
 	 */
-	private boolean dateGreaterThanEquals(LocalDate d1, LocalDate compare) {
-		return d1.isEqual(compare) || d1.isAfter(compare);
+	public TreeMap<Room, Integer> getCurrentRooms(String hotelName, LocalDate from, LocalDate to) {
+		long started = System.nanoTime();
+		if (!this.inventories.containsKey(hotelName)) { // every hotel in l4Hotels.csv has an inventory
+			GET_CURRENT_ROOMS.recordSince(started);
+			throw new IllegalArgumentException("No hotel called " + hotelName);
+		}
+		ReentrantReadWriteLock lock = this.lockOf(hotelName);
+		lock.readLock().lock();
+		try {
+			return new TreeMap<Room, Integer>(this.availableRooms(hotelName, from, to)); // copied as the cached rooms are shared
+		} finally {
+			lock.readLock().unlock();
+			GET_CURRENT_ROOMS.recordSince(started);
+		}
 	}
 
 	/*
-	 * Equivalent to for example x <= y in maths but for dates
+	 * Returns the rooms of the hotel free on every night of the period from its
+	 * availability cache, reading them from its room inventory and caching them
+	 * if the period was not looked up since its bookings on those nights last
+	 * changed. To be called while holding the read or write lock of a hotel in
+	 * l4Hotels.csv
 	 * 
-	 * @param d1 the variable to check thats greater than or equals to
+	 * @param hotelName the name of the hotel
+	 * 
+	 * @param from the first night of the period
 	 * 
-	 * @param compare the variable to compare d1 against
+	 * @param to the date the period ends at (not included)
 	 * 
-	 * @return whether the date d1 is greater than or equals to compare
+	 * @return the rooms and how many of each are available, which must not be
+	 * changed
 	 */
-	private boolean dateLessThan(LocalDate d1, LocalDate compare) {
-		return d1.isBefore(compare);
+	private TreeMap<Room, Integer> availableRooms(String hotelName, LocalDate from, LocalDate to) {
+		AvailabilityCache cache = this.availability.get(hotelName);
+		TreeMap<Room, Integer> rooms = cache.get(from, to);
+		if (rooms == null) {
+			rooms = this.inventories.get(hotelName).available(this.getAllRooms().get(hotelName), from, to); // a room is only available if it is free on every night of the period
+			cache.put(from, to, rooms);
+		}
+		return rooms;
 	}
 
-	/*
-	 * Checks if the specified reservation is between the given time period, i.e if
-	 * the reservation checkIn date + number of nights infringes on the time period
-	 * 
-	 * @param from the starting date of the time period
+	/**
+	 * Returns a TreeMap all reservations in each hotel
 	 * 
-	 * @param to the ending date of the time period
+	 * @return the TreeMap with hotel names and the reservations in that hotel by
+	 *         number, in the order they were added
+	 */
+	public TreeMap<String, LinkedHashMap<Integer, Reservation>> getReservations() {
+		return this.reservations;
+	}
+
+	/**
+	 * Returns a TreeMap all cancellations in each hotel
 	 * 
-	 * @param reservation the reservation to check
+	 * @return the TreeMap with hotel names and the cancellations in that hotel
+	 *         by number, in the order they were cancelled
+	 */
+	public TreeMap<String, LinkedHashMap<Integer, Reservation>> getCancellations() {
+		return this.cancellations;
+	}
+
+	/**
+	 * Returns all the hotel stays for each hotel
 	 * 
-	 * @return if the reservation is in the time period
+	 * @return the treemap with stays for each hotel
 	 */
-	private boolean isInTimePeriod(LocalDate from, LocalDate to, Reservation reservation) {
-		LocalDate checkIn = reservation.getCheckinDate();
-		LocalDate checkOut = reservation.getCheckoutDate();
-		for (LocalDate date = checkIn; !date.isEqual(checkOut); date = date.plusDays(1)) {
-			if (dateGreaterThanEquals(date, from) && dateLessThan(date, to)) {
-				return true;
-			}
-		}
-		return false;
+	public TreeMap<String, ArrayList<HotelStay>> getHotelStays() {
+		return this.stays;
 	}
 
-	/*
-	 * Returns a list of reservations that are booked in the period between the date
-	 * period specified
+	/**
+	 * Returns the reservations of the hotel with at least one night between from
+	 * and to
 	 * 
 	 * @param hotelName the name of the hotel
-	 * 
-	 * @param from the date the period starts at
-	 * 
-	 * @param to the date the period ends at
-	 * 
-	 * @return the list of matching reservations
+	 * @param from      the first night of the period
+	 * @param to        the date the period ends at (not included)
+	 * @return a new list of the reservations overlapping the period, in order of
+	 *         check-in date
 	 */
-	private ArrayList<Reservation> bookingsInTimePeriod(String hotelName, LocalDate from, LocalDate to) {
-		ArrayList<Reservation> allBookings = this.reservations.get(hotelName);
-		if (allBookings != null) {
-			ArrayList<Reservation> bookings = new ArrayList<Reservation>();
-			for (Reservation r : allBookings) {
-				if (isInTimePeriod(from, to, r)) {
-					bookings.add(r);
-				}
-			}
-			return bookings;
+	public ArrayList<Reservation> getReservations(String hotelName, LocalDate from, LocalDate to) {
+		ReentrantReadWriteLock lock = this.lockOf(hotelName);
+		lock.readLock().lock();
+		try {
+			IntervalIndex<Reservation> periods = this.reservationPeriods.get(hotelName);
+			return periods == null ? new ArrayList<Reservation>() : periods.overlapping(from, to);
+		} finally {
+			lock.readLock().unlock();
 		}
-		return null;
 	}
 
-	/*
-	 * Returns the number of rooms booked between certain dates
-	 * 
-	 * @param hotelName returns the name of the Hotel
-	 * 
-	 * @param room specifies the type of room
-	 * 
-	 * @param from the date the period begins
-	 * 
-	 * @param to the date the period ends
+	/**
+	 * Returns the reservations of the hotel made under a name starting with the
+	 * prefix, ignoring case, for the desk clerk to look a guest up by name
 	 * 
-	 * @return the number of rooms in that time period that are booked
+	 * @param hotelName  the name of the hotel
+	 * @param namePrefix the start of the guest's name
+	 * @return a new list of the matching reservations, in order of name
 	 */
-	private int numberOfTimesRoomIsBookedAtDate(String hotelName, Room room, LocalDate from, LocalDate to) {
-		ArrayList<Reservation> bookings = bookingsInTimePeriod(hotelName, from, to);
-		if (bookings != null) {
-			int count = 0;
-			for (Reservation r : bookings) {
-				for (RoomBooking rb : r.getRooms()) {
-					Room roomBooked = rb.getRoom();
-					if (roomBooked.equals(room)) {
-						count++;
-					}
-				}
-			}
-			return count;
+	public ArrayList<Reservation> findReservations(String hotelName, String namePrefix) {
+		ReentrantReadWriteLock lock = this.lockOf(hotelName);
+		lock.readLock().lock();
+		try {
+			ReservationIndex guests = this.guests.get(hotelName);
+			return guests == null ? new ArrayList<Reservation>() : guests.withNameStarting(namePrefix);
+		} finally {
+			lock.readLock().unlock();
 		}
-		return -1;
 	}
 
 	/**
-	 * Returns a tree map of the rooms and their available number for the time
-	 * period specified by the from and to parameters
+	 * Returns the hotel stays of the hotel whose reservation has at least one night
+	 * between from and to
 	 * 
-	 * @param hotelName the name of the hotel in question
-	 * @param from      the date at the start of the time period
-	 * @param to        the date at the end of the time period
-	 * @return a TreeMap with a rooms and their corresponding number of rooms
-	 *         available in the hotel during this period
+	 * @param hotelName the name of the hotel
+	 * @param from      the first night of the period
+	 * @param to        the date the period ends at (not included)
+	 * @return a new list of the stays overlapping the period, in order of check-in
+	 *         date
 	 */
-	public TreeMap<Room, Integer> getCurrentRooms(String hotelName, LocalDate from, LocalDate to) {
-		TreeMap<Room, Integer> hotelRooms = new TreeMap<Room, Integer>(this.getAllRooms().get(hotelName)); //deepCopy to prevent the method from altering the rooms in the hotel
-		if (this.reservations.get(hotelName) == null) { //no reservations made so all rooms are available
-			return hotelRooms;
+	public ArrayList<HotelStay> getHotelStays(String hotelName, LocalDate from, LocalDate to) {
+		ReentrantReadWriteLock lock = this.lockOf(hotelName);
+		lock.readLock().lock();
+		try {
+			IntervalIndex<HotelStay> periods = this.stayPeriods.get(hotelName);
+			return periods == null ? new ArrayList<HotelStay>() : periods.overlapping(from, to);
+		} finally {
+			lock.readLock().unlock();
 		}
-		TreeMap<Room, Integer> availableRooms = new TreeMap<Room, Integer>(hotelRooms); // Initialise it with allRooms i.e the total number of rooms in the hotel regardless of if booked or not
-		for (Room r : hotelRooms.keySet()) {
-			int numberTimesBooked = this.numberOfTimesRoomIsBookedAtDate(hotelName, r, from, to);
-			availableRooms.put(r, availableRooms.get(r) - numberTimesBooked);
-		}
-		return availableRooms;
 	}
 
 	/**
-	 * Returns a TreeMap all reservations in each hotel
+	 * Returns the income, occupants and rooms booked of each room type of the
+	 * hotel on each day of the period, summed from the hotel's running totals
+	 * rather than from its stays
 	 * 
-	 * @return the TreeMap with hotel names and the reservations in that hotel
+	 * @param hotelName the name of the hotel
+	 * @param start     the start date of the period
+	 * @param end       the end date of the period (not included), or start for
+	 *                  just that day
+	 * @return the occupancy matrix of the period, or null if the hotel has no
+	 *         running totals because it isn't in l4Hotels.csv
 	 */
-	public TreeMap<String, ArrayList<Reservation>> getReservations() {
-		return this.reservations;
+	public OccupancyMatrix getOccupancy(String hotelName, LocalDate start, LocalDate end) {
+		ReentrantReadWriteLock lock = this.lockOf(hotelName);
+		lock.readLock().lock();
+		try {
+			RevenueCube cube = this.revenue.get(hotelName);
+			return cube == null ? null : cube.occupancy(start, end);
+		} finally {
+			lock.readLock().unlock();
+		}
 	}
 
 	/**
-	 * Returns all the hotel stays for each hotel
+	 * Returns a cursor over the room bookings of the hotel's archived stays with
+	 * at least one night between from and to. The cursor reads the archive in
+	 * place, so no lock is needed while it is used
 	 * 
-	 * @return the treemap with stays for each hotel
+	 * @param hotelName the name of the hotel
+	 * @param from      the first night of the period
+	 * @param to        the date the period ends at (not included)
+	 * @return the cursor, or null if there is no archive
 	 */
-	public TreeMap<String, ArrayList<HotelStay>> getHotelStays() {
-		return this.stays;
+	public StayArchive.Cursor getArchivedStays(String hotelName, LocalDate from, LocalDate to) {
+		return this.archive == null ? null : this.archive.cursor(hotelName, from, to);
 	}
 
 	/**
@@ -273,15 +434,18 @@ public class BookingSystem implements CsvTools {
 	 *         null if not
 	 */
 	public Reservation getReservation(String hotelName, String name, LocalDate checkIn, int number) {
-		ArrayList<Reservation> reservations = this.reservations.get(hotelName);
-		if (reservations != null) {
-			for (Reservation r : this.reservations.get(hotelName)) {
-				if ((r.getName().equals(name) && r.getCheckinDate().equals(checkIn)) || r.getNumber() == number) {
-					return r;
-				}
+		ReentrantReadWriteLock lock = this.lockOf(hotelName);
+		lock.readLock().lock();
+		try {
+			Reservation reservation = this.findReservation(true, hotelName, number);
+			if (reservation != null) {
+				return reservation;
 			}
+			ReservationIndex guests = this.guests.get(hotelName);
+			return guests == null ? null : guests.find(name, checkIn);
+		} finally {
+			lock.readLock().unlock();
 		}
-		return null;
 	}
 	
 	/**
@@ -291,27 +455,29 @@ public class BookingSystem implements CsvTools {
 	 * @return the reservation matching the number
 	 */
 	public Reservation getReservation(String hotelName, int number) {
-		return this.getReservation(hotelName, "", LocalDate.now(), number); //have local date as a placeholder
+		ReentrantReadWriteLock lock = this.lockOf(hotelName);
+		lock.readLock().lock();
+		try {
+			return this.findReservation(true, hotelName, number);
+		} finally {
+			lock.readLock().unlock();
+		}
 	}
 
 	/*
-	 * Returns a Tree Map with the room type and the number of rooms in the
-	 * reservation for each room
+	 * Returns a Hash Map with the rooms of the reservation and the number of each
+	 * room booked in it
 	 * 
 	 * @param reservation the reservation
 	 * 
-	 * @return a treemap with the room types mapped to the number of rooms booked
-	 * for each type in reservation
+	 * @return a hashmap with the rooms mapped to the number of rooms booked for
+	 * each type in reservation
 	 */
-	private TreeMap<String, Integer> numberOfRoomsBooked(Reservation reservation) {
-		TreeMap<String, Integer> roomNumbers = new TreeMap<String, Integer>();
+	private HashMap<Room, Integer> numberOfRoomsBooked(Reservation reservation) {
+		HashMap<Room, Integer> roomNumbers = new HashMap<Room, Integer>();
 		for (RoomBooking rb : reservation.getRooms()) {
-			Room r = rb.getRoom();
-			String type = r.getType();
-			if (roomNumbers.containsKey(type)) {
-				roomNumbers.put(type, roomNumbers.get(type) + 1);
-			} else {
-				roomNumbers.put(type, 1);
+			if (rb.getRoom() != null) {
+				roomNumbers.merge(rb.getRoom(), 1, Integer::sum);
 			}
 		}
 		return roomNumbers;
@@ -322,7 +488,9 @@ public class BookingSystem implements CsvTools {
 	 * chosen in the reservation. Take the following reservation for example: Deluxe
 	 * Double - 3 rooms Deluxe Single - 2 rooms And the hotel has 6 Deluxe Double
 	 * rooms left and 1 Deluxe Single left While there is enough Deluxe Double left
-	 * there is not enough Deluxe Single so the method would return false
+	 * there is not enough Deluxe Single so the method would return false. Rooms
+	 * already booked by other reservations during the reservation's nights are not
+	 * counted as left
 	 * 
 	 * @param hotelName the name of the hotel
 	 * 
@@ -332,13 +500,13 @@ public class BookingSystem implements CsvTools {
 	 * the rooms booked in reservation
 	 */
 	private boolean hasEnoughRoomsFree(String hotelName, Reservation reservation) {
-		TreeMap<String, Integer> roomNumbers = numberOfRoomsBooked(reservation);
-		TreeMap<Room, Integer> rooms = this.getAllRooms().get(hotelName);
-		if (rooms != null) {
-			for (Map.Entry<Room, Integer> e : rooms.entrySet()) {
-				String type = e.getKey().getType();
-				int numRoomsBooked = roomNumbers.get(type) == null ? -1 : roomNumbers.get(type);
-				if (numRoomsBooked > e.getValue() && numRoomsBooked != -1) {
+		TreeMap<Room, Integer> hotelRooms = this.getAllRooms().get(hotelName);
+		if (hotelRooms != null) {
+			TreeMap<Room, Integer> available = this.availableRooms(hotelName, reservation.getCheckinDate(),
+					reservation.getCheckoutDate()); // usually cached when the guest was shown the rooms free
+			for (Map.Entry<Room, Integer> e : numberOfRoomsBooked(reservation).entrySet()) {
+				Integer numberOfRooms = available.get(e.getKey()); // rooms the hotel doesn't have are not checked
+				if (numberOfRooms != null && e.getValue() > numberOfRooms) {
 					return false;
 				}
 			}
@@ -348,6 +516,245 @@ public class BookingSystem implements CsvTools {
 		}
 	}
 
+	/*
+	 * Counts the rooms of the reservation as booked in the hotel's room inventory
+	 * 
+	 * @param hotelName the name of the hotel
+	 * 
+	 * @param reservation the reservation that was added
+	 */
+	private void bookRooms(String hotelName, Reservation reservation) {
+		RoomInventory inventory = this.inventories.get(hotelName);
+		if (inventory != null) {
+			inventory.book(reservation);
+			this.availability.get(hotelName).invalidate(reservation);
+		}
+	}
+
+	/*
+	 * Frees the rooms of the reservation in the hotel's room inventory
+	 * 
+	 * @param hotelName the name of the hotel
+	 * 
+	 * @param reservation the reservation that was removed
+	 */
+	private void releaseRooms(String hotelName, Reservation reservation) {
+		RoomInventory inventory = this.inventories.get(hotelName);
+		if (inventory != null) {
+			inventory.release(reservation);
+			this.availability.get(hotelName).invalidate(reservation);
+		}
+	}
+
+	/*
+	 * Finds the reservation or cancellation with the given number in the hotel
+	 * 
+	 * @param reservationOrCancellation true to look in the reservations, false to
+	 * look in the cancellations
+	 * 
+	 * @param hotelName the name of the hotel
+	 * 
+	 * @param number the reservation number
+	 * 
+	 * @return the reservation or null if the hotel has no reservation with that
+	 * number
+	 */
+	private Reservation findReservation(boolean reservationOrCancellation, String hotelName, int number) {
+		LinkedHashMap<Integer, Reservation> numbers = reservationOrCancellation ? this.reservations.get(hotelName)
+				: this.cancellations.get(hotelName);
+		return numbers == null ? null : numbers.get(number);
+	}
+
+	/*
+	 * Adds the reservation to the reservations or cancellations of the hotel,
+	 * booking its rooms if it is a reservation
+	 * 
+	 * @param reservationOrCancellation true if it is a reservation, false if
+	 * cancellation
+	 * 
+	 * @param hotelName the name of the hotel
+	 * 
+	 * @param reservation the reservation to add
+	 */
+	private void addReservationToHotel(boolean reservationOrCancellation, String hotelName, Reservation reservation) {
+		if (reservationOrCancellation) {
+			this.bookRooms(hotelName, reservation); // first, so that nothing is changed if its nights can't be counted
+		}
+		TreeMap<String, LinkedHashMap<Integer, Reservation>> reservations = reservationOrCancellation ? this.reservations
+				: this.cancellations;
+		if (!reservations.containsKey(hotelName)) {
+			reservations.put(hotelName, new LinkedHashMap<Integer, Reservation>());
+		}
+		reservations.get(hotelName).put(reservation.getNumber(), reservation);
+		if (reservationOrCancellation) {
+			if (!this.reservationPeriods.containsKey(hotelName)) {
+				this.reservationPeriods.put(hotelName, new IntervalIndex<Reservation>());
+				this.guests.put(hotelName, new ReservationIndex());
+				this.noShows.put(hotelName, new NoShowSweeper());
+			}
+			this.reservationPeriods.get(hotelName).add(reservation.getCheckinDate().toEpochDay(),
+					reservation.getCheckoutDate().toEpochDay(), reservation);
+			this.guests.get(hotelName).add(reservation);
+			this.noShows.get(hotelName).expect(reservation); // until it is checked in
+		}
+	}
+
+	/*
+	 * Removes the reservation from the reservations or cancellations of the hotel
+	 * by its number, freeing its rooms if it is a reservation
+	 * 
+	 * @param reservationOrCancellation true if it is a reservation, false if
+	 * cancellation
+	 * 
+	 * @param hotelName the name of the hotel
+	 * 
+	 * @param reservation the reservation to remove
+	 */
+	private void removeReservationFromHotel(boolean reservationOrCancellation, String hotelName,
+			Reservation reservation) {
+		Reservation removed = this.findReservation(reservationOrCancellation, hotelName, reservation.getNumber());
+		if (reservation.equals(removed)) { // the stored object may not be the one given
+			(reservationOrCancellation ? this.reservations : this.cancellations).get(hotelName).remove(removed.getNumber());
+			if (reservationOrCancellation) {
+				this.releaseRooms(hotelName, removed);
+				this.reservationPeriods.get(hotelName).remove(removed);
+				this.guests.get(hotelName).remove(removed);
+				this.noShows.get(hotelName).forget(removed);
+			}
+		}
+	}
+
+	/*
+	 * Adds the stay to the stays of the hotel, their period index and the
+	 * hotel's running totals
+	 * 
+	 * @param hotelName the name of the hotel
+	 * 
+	 * @param stay the stay to add
+	 */
+	private void addStayToHotel(String hotelName, HotelStay stay) {
+		if (!this.stays.containsKey(hotelName)) {
+			this.stays.put(hotelName, new ArrayList<HotelStay>());
+			this.stayNumbers.put(hotelName, new StayIndex());
+			this.stayPeriods.put(hotelName, new IntervalIndex<HotelStay>());
+		}
+		this.stays.get(hotelName).add(stay);
+		this.stayNumbers.get(hotelName).add(stay);
+		Reservation r = stay.getReservation();
+		this.stayPeriods.get(hotelName).add(r.getCheckinDate().toEpochDay(), r.getCheckoutDate().toEpochDay(), stay);
+		if (this.noShows.containsKey(hotelName)) {
+			this.noShows.get(hotelName).forget(r); // the guests arrived
+		}
+		if (this.revenue.containsKey(hotelName) && !this.isArchived(r.getNumber())) {
+			this.revenue.get(hotelName).add(stay);
+		}
+	}
+
+	/*
+	 * Removes the stay from the stays of the hotel, their period index and the
+	 * hotel's running totals
+	 * 
+	 * @param hotelName the name of the hotel
+	 * 
+	 * @param stay the stay to remove
+	 */
+	private void removeStayFromHotel(String hotelName, HotelStay stay) {
+		HotelStay removed = this.findHotelStay(hotelName, stay.getReservation());
+		if (removed != null) {
+			this.stays.get(hotelName).remove(removed); // the stored object may not be the one given
+			this.stayNumbers.get(hotelName).remove(removed);
+			this.stayPeriods.get(hotelName).remove(removed);
+			if (this.revenue.containsKey(hotelName) && !this.isArchived(removed.getReservation().getNumber())) {
+				this.revenue.get(hotelName).remove(removed);
+			}
+		}
+	}
+
+	/*
+	 * Checks if the stay of a reservation has been moved to the archive. The
+	 * totals of an archived stay come from the archive, so the stay is left out
+	 * of them if it is still in memory, e.g. while the journal is replayed
+	 * 
+	 * @param number the reservation number
+	 * 
+	 * @return true if the stay is in the archive
+	 */
+	private boolean isArchived(int number) {
+		return this.archive != null && this.archive.contains(number);
+	}
+
+	/**
+	 * Moves the checked out stays of every hotel which ended more than a year
+	 * ago to the archive, see archiveStays(int)
+	 * 
+	 * @return the number of stays archived
+	 */
+	public int archiveStays() {
+		return this.archiveStays(STAY_ARCHIVE_HORIZON);
+	}
+
+	/**
+	 * Moves the checked out stays of every hotel which ended more than the given
+	 * number of days ago, along with their reservations, out of memory and into
+	 * the archive. They still count towards the data analysis reports but can no
+	 * longer be looked up or changed
+	 * 
+	 * @param horizonDays the days after checking out that a stay is kept in memory
+	 * @return the number of stays archived
+	 */
+	public int archiveStays(int horizonDays) {
+		if (this.archive == null) {
+			return 0;
+		}
+		LocalDate horizon = LocalDate.now().minusDays(horizonDays);
+		int archived = 0;
+		for (Map.Entry<String, ReentrantReadWriteLock> e : this.locks.entrySet()) {
+			String hotelName = e.getKey();
+			e.getValue().writeLock().lock();
+			try {
+				ArrayList<HotelStay> old = new ArrayList<HotelStay>();
+				ArrayList<HotelStay> fresh = new ArrayList<HotelStay>(); // not archived yet
+				ArrayList<String[]> history = new ArrayList<String[]>();
+				ArrayList<HotelStay> checkedOut = this.stayNumbers.get(hotelName).checkedOut();
+				checkedOut.sort(Comparator.comparingInt((HotelStay stay) -> stay.getReservation().getNumber()));
+				for (HotelStay stay : checkedOut) {
+					Reservation r = stay.getReservation();
+					if (this.archive.contains(r.getNumber())) {
+						old.add(stay); // archived before the system last stopped, but still in the csv files
+					} else if (stay.getStayEnd().isBefore(horizon)) {
+						old.add(stay);
+						fresh.add(stay);
+						history.add(this.reservationRow(hotelName, r, stay));
+					}
+				}
+				if (old.isEmpty() || (!fresh.isEmpty() && !this.archive.append(hotelName, fresh, history))) {
+					continue;
+				}
+				Set<HotelStay> moved = Collections.newSetFromMap(new IdentityHashMap<HotelStay, Boolean>());
+				moved.addAll(old);
+				this.stays.get(hotelName).removeIf(moved::contains);
+				ArrayList<String> records = new ArrayList<String>();
+				for (HotelStay stay : old) {
+					Reservation r = stay.getReservation();
+					this.stayNumbers.get(hotelName).remove(stay);
+					this.stayPeriods.get(hotelName).remove(stay); // its totals stay in the running totals
+					this.removeReservationFromHotel(true, hotelName, r);
+					records.add(BookingJournal.removalRecord("Stays", hotelName, r.getNumber()));
+					records.add(BookingJournal.removalRecord("Reservations", hotelName, r.getNumber()));
+				}
+				this.journal.recordAll(records);
+				archived += fresh.size();
+			} finally {
+				e.getValue().writeLock().unlock();
+			}
+		}
+		if (archived > 0) {
+			this.writer.flush(null, true); // the removals are forced once every hotel is unlocked
+		}
+		this.flushIfNeeded();
+		return archived;
+	}
+
 	/*
 	 * Checks if the hotel that is being provided exists in the system
 	 * 
@@ -368,15 +775,30 @@ public class BookingSystem implements CsvTools {
 	 * @return if this is the only reservation for this person for this checkin date
 	 */
 	public boolean onlyBookingOnCheckInDate(String hotelName, String name, LocalDate checkin) {
-		ArrayList<Reservation> reservations = this.reservations.get(hotelName);
-		if (reservations != null) {
-			for (Reservation r : reservations) {
-				if (r.getName().equals(name) && r.getCheckinDate().isEqual(checkin)) {
-					return false;
-				}
-			}
+		ReentrantReadWriteLock lock = this.lockOf(hotelName);
+		lock.readLock().lock();
+		try {
+			return this.isOnlyBooking(hotelName, name, checkin);
+		} finally {
+			lock.readLock().unlock();
 		}
-		return true;
+	}
+
+	/*
+	 * Checks if the guest has no reservation checking in on the date, to be
+	 * called while holding the lock of the hotel
+	 * 
+	 * @param hotelName the name of the hotel
+	 * 
+	 * @param name the name of the guest
+	 * 
+	 * @param checkin the check-in date
+	 * 
+	 * @return true if the guest has no reservation checking in on the date
+	 */
+	private boolean isOnlyBooking(String hotelName, String name, LocalDate checkin) {
+		ReservationIndex guests = this.guests.get(hotelName);
+		return guests == null || guests.find(name, checkin) == null;
 	}
 
 	/*
@@ -392,8 +814,7 @@ public class BookingSystem implements CsvTools {
 		if (!containsHotel(hotelName)) {
 			return false;
 		} else {
-			ArrayList<Reservation> reservationList = this.reservations.get(hotelName);
-			return reservationList.contains(reservation);
+			return reservation.equals(this.findReservation(true, hotelName, reservation.getNumber()));
 		}
 	}
 
@@ -408,56 +829,100 @@ public class BookingSystem implements CsvTools {
 	 * @return true if the reservation was removed successfully
 	 */
 	public boolean removeReservation(String hotelName, Reservation reservation, boolean cancellation) {
-		if (containsReservation(hotelName, reservation)) {
-			if (cancellation) {
-				if (!this.cancellations.containsKey(hotelName)) {
-					this.cancellations.put(hotelName, new ArrayList<Reservation>());
-				}
-				boolean refunded = false;
-				if (!reservation.getCheckinDate().equals(LocalDate.now().minusDays((long)1))) {
-					if (reservation.getType().equals("S")) {
-						reservation.setTotalCost(0.00);
-						reservation.setDeposit(0.00); //refunded money
-						refunded = true;
-					} else if (reservation.getType().equals("AP")) {
-						if (reservation.getTotalCost().getAmountDue() == 0) {
-							//didn't check in yet so charge them
-							reservation.getTotalCostCalculated();
-							reservation.setDeposit(75);
-							System.out.println("You have been charged:\n" + reservation.getTotalCost());
-						}
-					}
+		long started = System.nanoTime();
+		ReentrantReadWriteLock lock = this.lockOf(hotelName);
+		lock.writeLock().lock();
+		try {
+			if (containsReservation(hotelName, reservation)) {
+				if (cancellation) {
+					return this.cancel(hotelName, reservation);
 				} else {
-					if (reservation.getTotalCost().getAmountDue() == 0) {
-						//didn't check in yet so charge them
-						reservation.getTotalCostCalculated();
-						reservation.getTotalCost().setBilledDate(LocalDate.now()); //billed for the date it was cancelled
-						reservation.setDeposit(75);
-						reservation.getDeposit().setBilledDate(LocalDate.now());
-						System.out.println("You have been charged:\n" + reservation.getTotalCost());
+					if (LocalDate.now().isAfter(reservation.getCheckoutDate().plusDays(30))
+							&& (reservation.equals(this.findReservation(false, hotelName, reservation.getNumber())) || // if cancelled or is a hotel
+																							// stay, it has been processed
+									this.findHotelStay(hotelName, reservation) != null)) {
+						this.removeReservationFromHotel(true, hotelName, reservation);
+						this.recordChange("Reservations", hotelName, reservation);
+					} else {
+						return false;
 					}
 				}
-				this.cancellations.get(hotelName).add(reservation);
-				this.reservations.get(hotelName).remove(reservation);
-				this.updateFiles("Reservations");
-				this.updateFiles("Cancellations");
-				return refunded;
-			} else {
-				if (LocalDate.now().isAfter(reservation.getCheckoutDate().plusDays(30))
-						&& (this.cancellations.get(hotelName).contains(reservation) || // if cancelled or is a hotel
-																						// stay, it has been processed
-								this.stays.get(hotelName).contains(new HotelStay(reservation)))) {
-					this.reservations.get(hotelName).remove(reservation);
-					this.updateFiles("Reservations");
-				} else {
-					return false;
-				}
+				return true;
 			}
-			return true;
+			return false;
+		} finally {
+			lock.writeLock().unlock();
+			this.flushIfNeeded();
+			REMOVE_RESERVATION.recordSince(started);
 		}
-		return false;
 	}
 	
+	/**
+	 * Cancels a reservation, refunding it if it is a standard reservation
+	 * cancelled before the day before check-in. The reservation is checked and
+	 * cancelled under the hotel's lock, so of two callers cancelling it at once
+	 * only one does
+	 * 
+	 * @param hotelName   the name of the hotel to which the reservation belongs
+	 * @param reservation the reservation to be cancelled
+	 * @return true if it was cancelled with a refund, false if without, or null
+	 *         if it is not booked, e.g. because it has already been cancelled
+	 */
+	public Boolean cancelReservation(String hotelName, Reservation reservation) {
+		long started = System.nanoTime();
+		ReentrantReadWriteLock lock = this.lockOf(hotelName);
+		lock.writeLock().lock();
+		try {
+			return containsReservation(hotelName, reservation) ? this.cancel(hotelName, reservation) : null;
+		} finally {
+			lock.writeLock().unlock();
+			this.flushIfNeeded();
+			REMOVE_RESERVATION.recordSince(started);
+		}
+	}
+
+	/*
+	 * Moves a booked reservation to the cancellations of the hotel, charging or
+	 * refunding it, to be called while holding the write lock of the hotel
+	 * 
+	 * @param hotelName the name of the hotel to which the reservation belongs
+	 * 
+	 * @param reservation the reservation to be cancelled
+	 * 
+	 * @return true if the cancellation was refunded
+	 */
+	private boolean cancel(String hotelName, Reservation reservation) {
+		boolean refunded = false;
+		if (!reservation.getCheckinDate().equals(LocalDate.now().minusDays((long)1))) {
+			if (reservation.getType().equals("S")) {
+				reservation.setTotalCostCents(0);
+				reservation.setDepositCents(0); //refunded money
+				refunded = true;
+			} else if (reservation.getType().equals("AP")) {
+				if (reservation.getTotalCost().getAmountDueCents() == 0) {
+					//didn't check in yet so charge them
+					reservation.getTotalCostCalculated();
+					reservation.setDepositCents(Reservation.DEPOSIT);
+					System.out.println("You have been charged:\n" + reservation.getTotalCost());
+				}
+			}
+		} else {
+			if (reservation.getTotalCost().getAmountDueCents() == 0) {
+				//didn't check in yet so charge them
+				reservation.getTotalCostCalculated();
+				reservation.getTotalCost().setBilledDate(LocalDate.now()); //billed for the date it was cancelled
+				reservation.setDepositCents(Reservation.DEPOSIT);
+				reservation.getDeposit().setBilledDate(LocalDate.now());
+				System.out.println("You have been charged:\n" + reservation.getTotalCost());
+			}
+		}
+		this.addReservationToHotel(false, hotelName, reservation);
+		this.removeReservationFromHotel(true, hotelName, reservation);
+		this.recordChange("Cancellations", hotelName, reservation);
+		this.recordChange("Reservations", hotelName, reservation);
+		return refunded;
+	}
+
 	/**
 	 * Returns an array of reservations that are on this check in date for the desk clerk to choose
 	 * @param hotelName the name of the hotel
@@ -466,69 +931,146 @@ public class BookingSystem implements CsvTools {
 	 * @return an object array of the reservations
 	 */
 	public Object[] reservationsOnDate(String hotelName, LocalDate date, boolean checkin) {
-		ArrayList<Reservation> rList = this.reservations.get(hotelName);
-		if (rList != null) {
-			Object[] reservations = new Object[rList.size()];
-			int i = 0;
-			for (Reservation r : rList) {
-				LocalDate dateToCheck = checkin ? r.getCheckinDate():r.getCheckoutDate();
-				if (dateToCheck.equals(date)) {
-					if (!checkin) {
-						HotelStay stay = this.getHotelStay(hotelName, r); 
-						if (stay != null && stay.isCheckedIn()) {
-							reservations[i++] = r; //if checkout make sure its checked in first
-						}
-					} else {
-						reservations[i++] = r;
+		ReentrantReadWriteLock lock = this.lockOf(hotelName);
+		lock.readLock().lock();
+		try {
+			ReservationIndex guests = this.guests.get(hotelName);
+			if (guests != null) {
+				if (checkin) {
+					return guests.arriving(date).toArray();
+				}
+				ArrayList<Reservation> departing = guests.departing(date);
+				ArrayList<Reservation> reservations = new ArrayList<Reservation>(departing.size());
+				for (Reservation r : departing) {
+					HotelStay stay = this.findHotelStay(hotelName, r);
+					if (stay != null && stay.isCheckedIn()) {
+						reservations.add(r); //if checkout make sure its checked in first
 					}
 				}
+				return reservations.toArray();
 			}
-			
-			return java.util.Arrays.copyOf(reservations, i);
+			return null;
+		} finally {
+			lock.readLock().unlock();
 		}
-		return null;
 	}
 	/**
-	 * Adds a new reservation to the list of reservations for the particular hotel
+	 * Adds a batch of new reservations to the hotel, e.g. the manifest of a tour
+	 * operator. The rooms of the whole batch are checked against the rooms free in
+	 * one pass and either every reservation is added or none are, and the batch is
+	 * written to the journal in a single write, which is forced to disk by the
+	 * background writer before this returns. A guest can only have one
+	 * reservation checking in on each day
 	 * 
-	 * @param hotelName   the name of the hotel owned by the chain e.g 5-star
-	 * @param reservation the reservation to be added
+	 * @param hotelName    the name of the hotel owned by the chain e.g 5-star
+	 * @param reservations the reservations to be added
+	 * @return the reservations added, or null if there weren't enough rooms free
+	 *         for all of them or a guest would have two reservations checking in
+	 *         on the same day, in which case none were added
+	 */
+	public ArrayList<Reservation> addReservations(String hotelName, List<Reservation> reservations) {
+		long started = System.nanoTime();
+		boolean added = false;
+		ReentrantReadWriteLock lock = this.lockOf(hotelName);
+		lock.writeLock().lock();
+		try {
+			TreeMap<Room, Integer> hotelRooms = this.allRooms.get(hotelName);
+			if (hotelRooms == null || !this.inventories.get(hotelName).canBook(reservations, hotelRooms)) {
+				return null;
+			}
+			HashSet<String> arrivals = new HashSet<String>(); // the name and check-in date of each reservation so far
+			for (Reservation reservation : reservations) {
+				if (!arrivals.add(reservation.getName() + "," + reservation.getCheckinDate())
+						|| !this.isOnlyBooking(hotelName, reservation.getName(), reservation.getCheckinDate())) {
+					return null;
+				}
+			}
+			ArrayList<String> records = new ArrayList<String>(reservations.size());
+			for (Reservation reservation : reservations) {
+				this.addReservationToHotel(true, hotelName, reservation);
+				reservation.getTotalCostCalculated();
+				records.add(BookingJournal.updateRecord("Reservations", this.reservationRow(hotelName, reservation, null)));
+			}
+			this.journal.recordAll(records);
+			added = true;
+			return new ArrayList<Reservation>(reservations);
+		} finally {
+			lock.writeLock().unlock();
+			if (added) {
+				this.writer.flush(null, true); // the batch is on disk before it is confirmed, forced outside the lock
+			}
+			this.flushIfNeeded();
+			ADD_RESERVATIONS.recordSince(started);
+		}
+	}
+
+	/**
+	 * Adds a new reservation to the list of reservations for the particular hotel,
+	 * unless its guest already has a reservation checking in on the same day. The
+	 * guest and the rooms free are checked under the hotel's lock, so two requests
+	 * for the same guest and day can't both be booked
+	 * 
+	 * @param hotelName   the name of the hotel owned by the chain e.g 5-star
+	 * @param reservation the reservation to be added
 	 * @return the reservation created if the reservation was successfully added or null if not
 	 */
 	public Reservation addReservation(String hotelName, Reservation reservation) {
-		if (hasEnoughRoomsFree(hotelName, reservation)) { 
-			if (!this.reservations.containsKey(hotelName)) {
-				this.reservations.put(hotelName, new ArrayList<Reservation>());
+		long started = System.nanoTime();
+		ReentrantReadWriteLock lock = this.lockOf(hotelName);
+		lock.writeLock().lock();
+		try {
+			if (this.isOnlyBooking(hotelName, reservation.getName(), reservation.getCheckinDate())
+					&& hasEnoughRoomsFree(hotelName, reservation)) {
+				this.addReservationToHotel(true, hotelName, reservation);
+				reservation.getTotalCostCalculated();
+				this.recordChange("Reservations", hotelName, reservation);
+				return reservation;
 			}
-			this.reservations.get(hotelName).add(reservation);
-			reservation.getTotalCostCalculated();
-			this.updateFiles("Reservations");
-			return reservation;
+			return null;
+		} finally {
+			lock.writeLock().unlock();
+			this.flushIfNeeded();
+			ADD_RESERVATION.recordSince(started);
 		}
-		return null;
 	}
 
 	/*
-	 * After each check in, this method scans for if any reservation was a no show
-	 * and cancels it with no refund
+	 * Cancels with no refund every reservation of the hotel whose check-in date
+	 * has passed without its guests checking in. The no-shows are only looked for
+	 * once a day, in the hotel's check-in day buckets, and their cancellations are
+	 * written to the journal in one batch. To be called while holding the write
+	 * lock of the hotel
 	 * 
 	 * @param hotelName the name of the hotel to check for no shows in
 	 */
 	private void scanForNoShows(String hotelName) {
-		ArrayList<Reservation> reservations = this.reservations.get(hotelName);
-		if (reservations != null) {
-			LocalDate current = LocalDate.now();
-			for (Reservation r : reservations) {
-				if ((r.getCheckinDate().isBefore(current) || r.getCheckinDate().equals(current))
-						&& !this.isStayed(hotelName, r)) {
-					r.getTotalCostCalculated();
-					this.cancellations.get(hotelName).add(r); // if its a no show cancel it with no refund
-					this.reservations.get(hotelName).remove(r);
-					this.updateFiles("Reservations");
-					this.updateFiles("Cancellations");
-				}
+		NoShowSweeper sweeper = this.noShows.get(hotelName);
+		if (sweeper != null) {
+			ArrayList<String> records = new ArrayList<String>();
+			for (Reservation r : sweeper.sweep(LocalDate.now())) {
+				r.getTotalCostCalculated();
+				this.addReservationToHotel(false, hotelName, r); // if its a no show cancel it with no refund
+				this.removeReservationFromHotel(true, hotelName, r);
+				this.cancellationRecords(hotelName, r, records);
+			}
+			this.journal.recordAll(records);
+		}
+	}
+
+	/**
+	 * Cancels the no-shows of every hotel. Each hotel is only checked once a day,
+	 * so this can be run as often as wanted, e.g. by a background task
+	 */
+	public void sweepNoShows() {
+		for (Map.Entry<String, ReentrantReadWriteLock> e : this.locks.entrySet()) {
+			e.getValue().writeLock().lock();
+			try {
+				this.scanForNoShows(e.getKey());
+			} finally {
+				e.getValue().writeLock().unlock();
 			}
 		}
+		this.flushIfNeeded();
 	}
 
 	/**
@@ -541,20 +1083,23 @@ public class BookingSystem implements CsvTools {
 	 *         return false
 	 */
 	public boolean addHotelStay(String hotelName, HotelStay stay) {
-		if (this.containsHotel(hotelName)) {
-			this.scanForNoShows(hotelName);
-			if (!this.stays.containsKey(hotelName)) {
-				this.stays.put(hotelName, new ArrayList<HotelStay>());
-			}
-
-			if (this.stays.get(hotelName).contains(stay)) {
-				return false; // already checkedin
+		ReentrantReadWriteLock lock = this.lockOf(hotelName);
+		lock.writeLock().lock();
+		try {
+			if (this.containsHotel(hotelName)) {
+				this.scanForNoShows(hotelName);
+				if (this.stayNumbers.get(hotelName).get(stay.getReservation().getNumber()) != null) {
+					return false; // already checkedin, checked under the lock so two desks can't check in the same reservation
+				}
+				this.addStayToHotel(hotelName, stay);
+				this.recordChange("Stays", hotelName, stay.getReservation());
+				return true;
 			}
-			this.stays.get(hotelName).add(stay);
-			this.updateFiles("Stays");
-			return true;
+			return false;
+		} finally {
+			lock.writeLock().unlock();
+			this.flushIfNeeded();
 		}
-		return false;
 	}
 
 	/**
@@ -565,15 +1110,133 @@ public class BookingSystem implements CsvTools {
 	 * @return the hotel stay if present, null otherwise
 	 */
 	public HotelStay getHotelStay(String hotelName, Reservation r) {
-		ArrayList<HotelStay> stays = this.stays.get(hotelName);
-		if (stays != null) {
-			for (HotelStay stay : stays) {
-				if (stay.getReservation().equals(r)) {
-					return stay;
-				}
+		ReentrantReadWriteLock lock = this.lockOf(hotelName);
+		lock.readLock().lock();
+		try {
+			return this.findHotelStay(hotelName, r);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * Looks up the stay of a reservation by its number, to be called while
+	 * holding the lock of the hotel
+	 * 
+	 * @param hotelName the name of the hotel
+	 * 
+	 * @param r the reservation concerned with a hotel stay
+	 * 
+	 * @return the hotel stay if present, null otherwise
+	 */
+	private HotelStay findHotelStay(String hotelName, Reservation r) {
+		StayIndex stays = this.stayNumbers.get(hotelName);
+		HotelStay stay = stays == null || r == null ? null : stays.get(r.getNumber());
+		return stay != null && stay.getReservation().equals(r) ? stay : null;
+	}
+
+	/**
+	 * Checks the guests of a reservation out, billing them for the stay less the
+	 * deposit they paid on arrival. The stay is checked and changed under the
+	 * hotel's lock so that two desks can't check the same guests out
+	 * 
+	 * @param hotelName   the name of the hotel
+	 * @param reservation the reservation to check out
+	 * @return true if the guests were checked out, false if the reservation has
+	 *         no stay or its guests are not checked in
+	 */
+	public boolean checkOut(String hotelName, Reservation reservation) {
+		ReentrantReadWriteLock lock = this.lockOf(hotelName);
+		lock.writeLock().lock();
+		try {
+			HotelStay stay = this.findHotelStay(hotelName, reservation);
+			if (stay == null || stay.isCheckedOut()) {
+				return false;
 			}
+			System.out.println("Your bill(incl. deposit) is:\n" + reservation.getTotalCost());
+			reservation.getTotalCost().setBilledDate(reservation.getCheckoutDate()); //set the billable date as the checkout
+			Bill totalExclDeposit = reservation.getTotalCost();
+			totalExclDeposit.setAmountDueCents(reservation.getTotalCost().getAmountDueCents() - Reservation.DEPOSIT);
+			System.out.println("Your bill(excl. deposit) is:\n" + totalExclDeposit);
+			stay.setCheckedIn(false);
+			stay.setStayStart(reservation.getCheckinDate());
+			stay.setStayEnd(reservation.getCheckoutDate());
+			this.recordChange("Reservations", hotelName, reservation);
+			this.recordChange("Stays", hotelName, reservation); // moves the stay to the checked out stays
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+			this.flushIfNeeded();
+		}
+	}
+
+	/**
+	 * Takes a discount off the bill of a reservation whose guests have been
+	 * billed. The bill is checked and discounted, and the reservation and stay
+	 * rows holding it are recorded in one journal batch, all under the hotel's
+	 * lock so that the discount is not lost to a check-out at the same time and
+	 * both rows always hold the same bill
+	 * 
+	 * @param hotelName the name of the hotel
+	 * @param number    the number of the reservation
+	 * @param discount  the discount as a fraction, 0.00 - 0.99
+	 * @return true if the discount was applied, false if the reservation is not
+	 *         in the hotel or its guests have not been billed yet
+	 */
+	public boolean applyDiscount(String hotelName, int number, double discount) {
+		ReentrantReadWriteLock lock = this.lockOf(hotelName);
+		lock.writeLock().lock();
+		try {
+			Reservation reservation = this.findReservation(true, hotelName, number);
+			if (reservation == null || reservation.getTotalCost().getAmountDueCents() == 0) {
+				return false; // discounts can only be applied once the guests have been billed on check in
+			}
+			Bill bill = reservation.getTotalCost();
+			bill.setAmountDueCents(Money.discount(bill.getAmountDueCents(), discount));
+			ArrayList<String> records = new ArrayList<String>();
+			records.add(BookingJournal.updateRecord("Reservations", this.reservationRow(hotelName, reservation, null)));
+			HotelStay stay = this.findHotelStay(hotelName, reservation);
+			if (stay != null) {
+				records.add(BookingJournal.updateRecord("Stays", this.reservationRow(hotelName, reservation, stay)));
+			}
+			this.journal.recordAll(records);
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+			this.flushIfNeeded();
+		}
+	}
+
+	/**
+	 * Checks the guests of a reservation in, billing the deposit on arrival. The
+	 * stay is checked for and added under the hotel's lock so that two desks
+	 * can't check the same guests in
+	 * 
+	 * @param hotelName   the name of the hotel
+	 * @param reservation the reservation to check in
+	 * @return true if the guests were checked in, false if the hotel is not in
+	 *         the system or the reservation already has a stay
+	 */
+	public boolean checkIn(String hotelName, Reservation reservation) {
+		ReentrantReadWriteLock lock = this.lockOf(hotelName);
+		lock.writeLock().lock();
+		try {
+			if (!this.containsHotel(hotelName)) {
+				return false;
+			}
+			this.scanForNoShows(hotelName);
+			if (this.findHotelStay(hotelName, reservation) != null) {
+				return false; // already checked in
+			}
+			reservation.getDeposit().setBilledDate(reservation.getCheckinDate()); //billed on arrival
+			this.addStayToHotel(hotelName, new HotelStay(reservation));
+			this.recordChange("Stays", hotelName, reservation);
+			System.out.println("Your deposit payable is:\n" + reservation.getDeposit());
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+			this.flushIfNeeded();
 		}
-		return null;
 	}
 
 	/**
@@ -584,15 +1247,22 @@ public class BookingSystem implements CsvTools {
 	 * @return true if the stay exists and it was successfully removed
 	 */
 	public boolean removeHotelStay(String hotelName, HotelStay stay) {
-		if (this.containsHotel(hotelName)) {
-			if (this.stays.get(hotelName).contains(stay)
-					&& LocalDate.now().isAfter(stay.getReservation().getCheckinDate().plusYears(7))) {
-				this.stays.get(hotelName).remove(stay);
-				this.updateFiles("Stays");
-				return true;
+		ReentrantReadWriteLock lock = this.lockOf(hotelName);
+		lock.writeLock().lock();
+		try {
+			if (this.containsHotel(hotelName)) {
+				if (stay.equals(this.findHotelStay(hotelName, stay.getReservation()))
+						&& LocalDate.now().isAfter(stay.getReservation().getCheckinDate().plusYears(7))) {
+					this.removeStayFromHotel(hotelName, stay);
+					this.recordChange("Stays", hotelName, stay.getReservation());
+					return true;
+				}
 			}
+			return false;
+		} finally {
+			lock.writeLock().unlock();
+			this.flushIfNeeded();
 		}
-		return false;
 	}
 
 	/*
@@ -606,10 +1276,10 @@ public class BookingSystem implements CsvTools {
 	 */
 	private int largestRoomCountBooked(boolean reservationOrCancellation) {
 		int largestRoomCount = 0;
-		TreeMap<String, ArrayList<Reservation>> reservations = reservationOrCancellation ? this.reservations
+		TreeMap<String, LinkedHashMap<Integer, Reservation>> reservations = reservationOrCancellation ? this.reservations
 				: this.cancellations;
-		for (Map.Entry<String, ArrayList<Reservation>> e : reservations.entrySet()) {
-			for (Reservation r : e.getValue()) {
+		for (Map.Entry<String, LinkedHashMap<Integer, Reservation>> e : reservations.entrySet()) {
+			for (Reservation r : e.getValue().values()) {
 				if (r.getNumberOfRooms() > largestRoomCount) {
 					largestRoomCount = r.getNumberOfRooms();
 				}
@@ -618,33 +1288,6 @@ public class BookingSystem implements CsvTools {
 		return largestRoomCount;
 	}
 
-	/*
-	 * Gets the number of rows for a reservation data matrix
-	 * 
-	 * @param reservationOrCancellation returns number of rows for reservations if
-	 * true, cancellations if false
-	 * 
-	 * @param hotelStay true if you want to find number of rows for hotel stays
-	 * 
-	 * @return the number of rows required
-	 */
-	private int getNumberOfRows(boolean reservationOrCancellation, boolean hotelStay) {
-		int rows = 0;
-		if (!hotelStay) {
-			TreeMap<String, ArrayList<Reservation>> reservations = reservationOrCancellation ? this.reservations
-					: this.cancellations;
-			for (Map.Entry<String, ArrayList<Reservation>> e : reservations.entrySet()) {
-				rows += e.getValue().size();
-			}
-		} else if (reservationOrCancellation) {
-			for (Map.Entry<String, ArrayList<HotelStay>> e : stays.entrySet()) {
-				rows += e.getValue().size();
-			}
-		}
-
-		return rows;
-	}
-
 	/**
 	 * Checks if the reservation has been processed to a hotel stay
 	 * 
@@ -666,88 +1309,103 @@ public class BookingSystem implements CsvTools {
 	 *                                  be true also
 	 */
 	public void writeReservationsToFile(boolean reservationOrCancellation, boolean hotelStay) {
-		TreeMap<String, ArrayList<Reservation>> reservations = reservationOrCancellation ? this.reservations
+		TreeMap<String, LinkedHashMap<Integer, Reservation>> reservations = reservationOrCancellation ? this.reservations
 				: this.cancellations;
 		int largestRoomCount = largestRoomCountBooked(reservationOrCancellation);
-		int rows = getNumberOfRows(reservationOrCancellation, hotelStay) + 1;
 		int columns = 10 + largestRoomCount;
 		columns = hotelStay ? columns + 3 : columns;
-		Object[][] data = new Object[rows][columns];
 		String[] attributes = { "Hotel", "Number", "Name", "Type", "Check-in Date", "Number of Nights",
 				"Number of People", "Number Of Rooms", "Total Cost", "Deposit", "Checked In", "Stay Start",
 				"Stay End" };
-		int row = 1;
-		int index = 0;
-		for (int col = 0; col < columns; col++) {
-			if (col == 8) {
-				data[0][col] = "Rooms(Breakfast Included_Adult Occupancy_Child Occupancy)";
-			} else if (col > 8 && col < 8 + largestRoomCount) {
-				data[0][col] = "";
-			} else {
-				if (index < attributes.length) {
-					data[0][col] = attributes[index++];
-				}
-			}
+		String fileName;
+		if (reservationOrCancellation && !hotelStay) {
+			fileName = "/data/bookingInfo/reservations.csv";
+		} else if (!reservationOrCancellation && !hotelStay) {
+			fileName = "/data/bookingInfo/cancellations.csv";
+		} else {
+			fileName = "/data/bookingInfo/stays.csv";
 		}
-		for (Map.Entry<String, ArrayList<Reservation>> e : reservations.entrySet()) {
-			data[row][0] = e.getKey();
-			boolean hotelNamed = true;
-			for (Reservation reservation : e.getValue()) {
-				boolean canAddReservation = true;
-				if (hotelStay) {
-					canAddReservation = this.isStayed(e.getKey(), reservation);
+		String path = this.directory + fileName;
+		try (CsvWriter writer = new CsvWriter(path)) {
+			int index = 0;
+			for (int col = 0; col < columns; col++) {
+				if (col == 8) {
+					writer.write("Rooms(Breakfast Included_Adult Occupancy_Child Occupancy)");
+				} else if (col > 8 && col < 8 + largestRoomCount) {
+					writer.write("");
+				} else {
+					writer.write(index < attributes.length ? attributes[index++] : null);
 				}
-				if (canAddReservation) { // if reservation has not been procesed to a stay and hotel stay is true, don't
-											// bother writing it
-					if (hotelNamed) {
-						hotelNamed = false;
-					} else {
-						data[row][0] = "";
-					}
-					data[row][1] = Integer.valueOf(reservation.getNumber()).toString();
-					data[row][2] = reservation.getName();
-					data[row][3] = reservation.getType();
-					data[row][4] = reservation.getCheckinDate().toString();
-					data[row][5] = Integer.valueOf(reservation.getNumberOfNights()).toString();
-					data[row][6] = Integer.valueOf(reservation.getNumberOfPeople()).toString();
-					data[row][7] = Integer.valueOf(reservation.getNumberOfRooms()).toString();
-					int lastIndex = 8;
-					int roomsPrinted = 0;
-					for (RoomBooking rb : reservation.getRooms()) {
-						Room r = rb.getRoom();
-						data[row][lastIndex++] = r.getType() + "(" + rb.isBreakfastIncluded() + "_"
-								+ rb.getOccupancy()[0] + "_" + rb.getOccupancy()[1] + ")";
-						roomsPrinted++;
+			}
+			writer.endRow();
+			for (Map.Entry<String, LinkedHashMap<Integer, Reservation>> e : reservations.entrySet()) {
+				boolean hotelNamed = false;
+				for (Reservation reservation : e.getValue().values()) {
+					HotelStay stay = null;
+					if (hotelStay) {
+						stay = this.findHotelStay(e.getKey(), reservation);
 					}
-					if (roomsPrinted < largestRoomCount) {
-						for (int i = roomsPrinted; i < largestRoomCount; i++) {
-							data[row][lastIndex++] = "";
+					if (!hotelStay || stay != null) { // if reservation has not been procesed to a stay and hotel stay is true, don't
+													// bother writing it
+						String[] values = this.reservationRow(e.getKey(), reservation, stay);
+						int roomsPrinted = reservation.getRooms().size();
+						writer.write(hotelNamed ? "" : values[0]);
+						for (int i = 1; i < 8 + roomsPrinted; i++) {
+							writer.write(values[i]);
 						}
-					}
-					data[row][lastIndex++] = String.format("$%.02f", reservation.getTotalCost().getAmountDue());														// checkout
-					data[row][lastIndex++] = String.format("$%.02f", reservation.getDeposit().getAmountDue());
-					if (hotelStay) {
-						HotelStay stay = getHotelStay(e.getKey(), reservation);
-						if (stay != null) {
-							data[row][lastIndex++] = stay.isCheckedIn();
-							data[row][lastIndex++] = stay.getStayStart().toString();
-							data[row][lastIndex] = stay.getStayEnd().toString();
+						writer.skip(largestRoomCount - roomsPrinted); // pad out the rooms so the costs line up with the header
+						for (int i = 8 + roomsPrinted; i < values.length; i++) {
+							writer.write(values[i]);
 						}
+						writer.endRow();
+						hotelNamed = true;
 					}
-					row++;
 				}
 			}
+			writer.commit();
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
-		String fileName;
-		if (reservationOrCancellation && !hotelStay) {
-			fileName = "/data/bookingInfo/reservations.csv";
-		} else if (!reservationOrCancellation && !hotelStay) {
-			fileName = "/data/bookingInfo/cancellations.csv";
-		} else {
-			fileName = "/data/bookingInfo/stays.csv";
+	}
+
+	/*
+	 * Returns the values of a single reservation as they are written to a csv file,
+	 * with one column for each room booked
+	 * 
+	 * @param hotelName the name of the hotel
+	 * 
+	 * @param reservation the reservation
+	 * 
+	 * @param stay the hotel stay of the reservation if the row is for the stays
+	 * file, null if not
+	 * 
+	 * @return the values of the row
+	 */
+	private String[] reservationRow(String hotelName, Reservation reservation, HotelStay stay) {
+		ArrayList<RoomBooking> rooms = reservation.getRooms();
+		String[] row = new String[stay == null ? 10 + rooms.size() : 13 + rooms.size()];
+		row[0] = hotelName;
+		row[1] = Integer.valueOf(reservation.getNumber()).toString();
+		row[2] = reservation.getName();
+		row[3] = reservation.getType();
+		row[4] = reservation.getCheckinDate().toString();
+		row[5] = Integer.valueOf(reservation.getNumberOfNights()).toString();
+		row[6] = Integer.valueOf(reservation.getNumberOfPeople()).toString();
+		row[7] = Integer.valueOf(reservation.getNumberOfRooms()).toString();
+		int lastIndex = 8;
+		for (RoomBooking rb : rooms) {
+			Room r = rb.getRoom();
+			row[lastIndex++] = r.getType() + "(" + rb.isBreakfastIncluded() + "_" + rb.getOccupancy()[0] + "_"
+					+ rb.getOccupancy()[1] + ")";
+		}
+		row[lastIndex++] = Money.format(reservation.getTotalCost().getAmountDueCents());
+		row[lastIndex++] = Money.format(reservation.getDeposit().getAmountDueCents());
+		if (stay != null) {
+			row[lastIndex++] = Boolean.valueOf(stay.isCheckedIn()).toString();
+			row[lastIndex++] = stay.getStayStart().toString();
+			row[lastIndex] = stay.getStayEnd().toString();
 		}
-		String path = System.getProperty("user.dir") + fileName;
-		this.writeDataToFile(path, data);
+		return row;
 	}
 
 	/**
@@ -758,110 +1416,413 @@ public class BookingSystem implements CsvTools {
 	 */
 	@Override
 	public void writeDataToFile(String filePath, Object[][] data) {
-		File file = new File(filePath);
-		try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
-			if (!file.exists()) {
-				file.createNewFile();
-			}
-			for (int row = 0; row < data.length; row++) {
-				String line = "";
-				for (int col = 0; col < data[row].length; col++) {
-					line += data[row][col] + ",";
-				}
-				line = line.substring(0, line.length() - 1); // removes the last ","
-				writer.println(line);
+		try (CsvWriter writer = new CsvWriter(filePath)) {
+			for (Object[] row : data) {
+				writer.writeRow(row);
 			}
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
+			writer.commit();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
 
+	/**
+	 * Reads in data from the specified filePath into a String matrix in a single
+	 * pass. Each row only has as many columns as the line it was read from
+	 * 
+	 * @param filePath the path to the file
+	 * @return the data found
+	 */
+	@Override
+	public String[][] readDataFromFile(String filePath) {
+		ArrayList<String[]> rows = new ArrayList<String[]>();
+		if (this.readDataFromFile(filePath, rows::add)) {
+			return rows.toArray(new String[rows.size()][]);
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Reads in data from the specified filePath one row at a time, passing each
+	 * row to rowHandler as soon as it is read
+	 * 
+	 * @param filePath   the path to the file
+	 * @param rowHandler called with the values of each row in the order they
+	 *                   appear in the file
+	 * @return true if the file exists and was read, false if not
+	 */
+	@Override
+	public boolean readDataFromFile(String filePath, Consumer<String[]> rowHandler) {
+		return CsvReader.read(filePath, rowHandler);
+	}
+
+	/**
+	 * Updates the specified file, returning once it has been rewritten
+	 * 
+	 * @param type type can be Reservations, Cancellations or Stays
+	 */
+	public void updateFiles(String type) {
+		this.updateFiles(type, true);
+	}
+
+	/**
+	 * Asks the background writer to update the specified file. Requests made
+	 * while the writer is busy are rewritten together in its next flush, so each
+	 * file is written at most once for all of them. Must not be called while
+	 * holding the write lock of a hotel if waiting, as the rewrite waits for
+	 * every hotel to be free of changes
+	 * 
+	 * @param type         type can be Reservations, Cancellations or Stays
+	 * @param waitForFlush true to return once the file has been rewritten, false
+	 *                     to return straight away and leave it to the writer
+	 */
+	public void updateFiles(String type, boolean waitForFlush) {
+		type = type.substring(0, 1).toUpperCase() + type.substring(1).toLowerCase();
+		if (type.equals("Reservations") || type.equals("Cancellations") || type.equals("Stays")) {
+			this.writer.flush(type, waitForFlush);
+		}
+	}
+
+	/**
+	 * Waits for every change recorded so far to be forced to disk by the
+	 * background writer, so that none of them can be lost if the system stops
+	 * without closing
+	 */
+	public void sync() {
+		this.writer.flush(null, true);
+	}
+
 	/*
-	 * Gets the number of data rows in a file
+	 * Rewrites the specified file with the current state of the system, to be
+	 * called while holding the read lock of every hotel
 	 * 
-	 * @param filePath the path of the file
+	 * @param type type can be Reservations, Cancellations or Stays
+	 */
+	private void rewriteFile(String type) {
+		long started = System.nanoTime();
+		if (type.equals("Reservations")) {
+			this.writeReservationsToFile(true, false);
+		} else if (type.equals("Cancellations")) {
+			this.writeReservationsToFile(false, false);
+		} else if (type.equals("Stays")) {
+			this.writeReservationsToFile(true, true);
+		}
+		UPDATE_FILES.recordSince(started);
+	}
+
+	/**
+	 * Records the current state of a single reservation in the specified file by
+	 * appending it to the journal rather than rewriting the whole file. If the
+	 * reservation is no longer in that file, its removal is recorded. The record
+	 * is left to the background writer to force to disk along with others
+	 * 
+	 * @param type        type can be Reservations, Cancellations or Stays
+	 * @param hotelName   the name of the hotel of the reservation
+	 * @param reservation the reservation that changed
+	 */
+	public void updateFiles(String type, String hotelName, Reservation reservation) {
+		this.updateFiles(type, hotelName, reservation, false);
+	}
+
+	/**
+	 * Records the current state of a single reservation in the specified file by
+	 * appending it to the journal, see updateFiles(String, String, Reservation).
+	 * Callers waiting at the same time share a single force of the journal
 	 * 
-	 * @return the number of data rows in the file
+	 * @param type         type can be Reservations, Cancellations or Stays
+	 * @param hotelName    the name of the hotel of the reservation
+	 * @param reservation  the reservation that changed
+	 * @param waitForFlush true to return once the record is on disk, false to
+	 *                     return once it is written to the journal
 	 */
-	private int getRows(String filePath) {
-		int count = 0;
-		try (Scanner in = new Scanner(new File(filePath))) {
-			while (in.hasNextLine()) {
-				count++;
-				in.nextLine();
+	public void updateFiles(String type, String hotelName, Reservation reservation, boolean waitForFlush) {
+		long started = System.nanoTime();
+		ReentrantReadWriteLock lock = this.lockOf(hotelName);
+		lock.writeLock().lock();
+		try {
+			this.recordChange(type, hotelName, reservation);
+		} finally {
+			lock.writeLock().unlock();
+			if (waitForFlush) {
+				this.writer.flush(null, true);
 			}
-		} catch (FileNotFoundException e) {
+			this.flushIfNeeded();
+			RECORD_CHANGE.recordSince(started);
 		}
-		return count;
 	}
 
 	/*
-	 * Gets the number of columns in a file
+	 * Appends the current state of the reservation in the specified file to the
+	 * journal, to be called while holding the write lock of the hotel
 	 * 
-	 * @param filePath the path to the file
+	 * @param type type can be Reservations, Cancellations or Stays
+	 * 
+	 * @param hotelName the name of the hotel of the reservation
 	 * 
-	 * @return the number of columns
+	 * @param reservation the reservation that changed
 	 */
-	private int getCols(String filePath) {
-		int count = 0;
-		try (Scanner in = new Scanner(new File(filePath))) {
-			while (in.hasNextLine()) {
-				int nextCount = in.nextLine().split(",").length;
-				if (nextCount > count) {
-					count = in.nextLine().split(",").length;
-				}
+	private void recordChange(String type, String hotelName, Reservation reservation) {
+		type = type.substring(0, 1).toUpperCase() + type.substring(1).toLowerCase();
+		String[] row = null;
+		if (type.equals("Reservations") || type.equals("Cancellations")) {
+			if (reservation.equals(this.findReservation(type.equals("Reservations"), hotelName, reservation.getNumber()))) {
+				row = this.reservationRow(hotelName, reservation, null);
 			}
-		} catch (FileNotFoundException e) {
+		} else if (type.equals("Stays")) {
+			HotelStay stay = this.findHotelStay(hotelName, reservation);
+			if (stay != null) {
+				this.stayNumbers.get(hotelName).update(stay); // its guests may have checked out since it was last recorded
+				row = this.reservationRow(hotelName, reservation, stay);
+			}
+		} else {
+			return;
+		}
+		if (row != null) {
+			this.journal.recordUpdate(type, row);
+		} else {
+			this.journal.recordRemoval(type, hotelName, reservation.getNumber());
 		}
-		return count;
 	}
 
-	/**
-	 * Reads in data from the specified filePath and reads it into an Object matrix
+	/*
+	 * Makes the journal record of a reservation moved from the reservations to
+	 * the cancellations of the hotel, as two records: its cancellation row and
+	 * the removal of its reservation row
 	 * 
-	 * @param filePath the path to the file
-	 * @return the data found
+	 * @param hotelName the name of the hotel of the reservation
+	 * 
+	 * @param reservation the reservation that was cancelled
+	 * 
+	 * @param records the list to add the records to
 	 */
-	@Override
-	public String[][] readDataFromFile(String filePath) {
-		if (new File(filePath).exists()) {
-			String[][] data = new String[getRows(filePath)][getCols(filePath)];
-			int row = 0;
-			try (Scanner in = new Scanner(new File(filePath))) {
-				while (in.hasNextLine()) {
-					String[] values = in.nextLine().split(",");
-					for (int col = 0; col < values.length; col++) {
-						data[row][col] = values[col];
+	private void cancellationRecords(String hotelName, Reservation reservation, ArrayList<String> records) {
+		records.add(BookingJournal.updateRecord("Cancellations", this.reservationRow(hotelName, reservation, null)));
+		records.add(BookingJournal.removalRecord("Reservations", hotelName, reservation.getNumber()));
+	}
+
+	/*
+	 * Asks the background writer to compact the journal if enough changes have
+	 * built up in it, or else to force the journal to disk if enough records or
+	 * time have built up since it was last forced. Must not be called while
+	 * holding the write lock of a hotel, as the writer's queue may be full while
+	 * it waits for every hotel to be free of changes
+	 */
+	private void flushIfNeeded() {
+		if (this.journal.needsCompaction()) {
+			this.writer.flush(COMPACTION, false);
+		} else if (this.journal.needsSync()) {
+			this.writer.flush(null, false);
+		}
+	}
+
+	/*
+	 * Writes the files asked for since the background writer's last flush and
+	 * forces the journal to disk, run on the writer's thread. Compacting rewrites
+	 * every file, otherwise each file asked for is rewritten once however many
+	 * times it was asked for
+	 * 
+	 * @param files the files to write, Reservations, Cancellations, Stays or
+	 * Journal to compact the journal
+	 */
+	private void flush(TreeSet<String> files) {
+		synchronized (this.compactionLock) {
+			if (files.remove(COMPACTION) && this.journal.needsCompaction()) {
+				this.compact();
+			} else if (!files.isEmpty()) {
+				ArrayList<ReentrantReadWriteLock> held = this.lockEveryHotel();
+				try {
+					for (String type : files) {
+						this.rewriteFile(type);
+					}
+				} finally {
+					for (ReentrantReadWriteLock lock : held) {
+						lock.readLock().unlock();
 					}
-					row++;
 				}
-			} catch (FileNotFoundException e) {
-				e.printStackTrace();
 			}
-			return data;
-		} else {
-			return null;
+		}
+		this.journal.sync();
+	}
+
+	/*
+	 * Takes the read lock of every hotel, always in order of hotel name, so that
+	 * no change can be made while the files are written
+	 * 
+	 * @return the locks held, to be unlocked by the caller
+	 */
+	private ArrayList<ReentrantReadWriteLock> lockEveryHotel() {
+		ArrayList<ReentrantReadWriteLock> held = new ArrayList<ReentrantReadWriteLock>(this.locks.values());
+		held.add(this.otherHotelsLock);
+		for (ReentrantReadWriteLock lock : held) {
+			lock.readLock().lock();
+		}
+		return held;
+	}
+
+	/*
+	 * Rewrites all the csv files with the current state of the system and empties
+	 * the journal as it no longer holds any changes the files don't have. The
+	 * read lock of every hotel is held, always taken in order of hotel name, so
+	 * that no change can be made between the files being written and the journal
+	 * being emptied
+	 */
+	private void compact() {
+		this.compact(false);
+	}
+
+	/*
+	 * Rewrites all the csv files with the current state of the system and empties
+	 * the journal. The snapshot is rewritten alongside them if asked for, else it
+	 * is deleted as it no longer matches the files
+	 * 
+	 * @param writeSnapshot true to write a new snapshot of the system
+	 */
+	private void compact(boolean writeSnapshot) {
+		synchronized (this.compactionLock) {
+			ArrayList<ReentrantReadWriteLock> held = this.lockEveryHotel();
+			try {
+				this.rewriteFile("Reservations");
+				this.rewriteFile("Cancellations");
+				this.rewriteFile("Stays");
+				this.journal.truncate();
+				if (writeSnapshot) {
+					BookingSnapshot.write(this.snapshotPath(), this.snapshotSources(), this.reservations, this.cancellations,
+							this.stays);
+					RevenueCube.write(this.revenuePath(), this.revenueSources(), this.revenue);
+				} else {
+					new File(this.snapshotPath()).delete();
+					new File(this.revenuePath()).delete();
+				}
+			} finally {
+				for (ReentrantReadWriteLock lock : held) {
+					lock.readLock().unlock();
+				}
+			}
 		}
 	}
 
 	/**
-	 * Updates the specified file
+	 * Writes any changes held in the journal to the csv files, snapshots the
+	 * system so that the next start up can skip reading them and closes the
+	 * journal. To be called when the system is shutting down
+	 */
+	public void close() {
+		this.writer.close(); // later changes are flushed on their own threads
+		this.compact(true);
+		this.journal.close();
+		if (this.archive != null) {
+			this.archive.close();
+		}
+	}
+
+	/*
+	 * Returns the path of the snapshot of the reservations, cancellations and
+	 * stays
 	 * 
-	 * @param type type can be Reservations, Cancellations or Stays
+	 * @return the path of the snapshot file
 	 */
-	public void updateFiles(String type) {
-		type = type.substring(0, 1).toUpperCase() + type.substring(1).toLowerCase();
-		if (type.equals("Reservations")) {
-			this.writeReservationsToFile(true, false);
-		} else if (type.equals("Cancellations")) {
-			this.writeReservationsToFile(false, false);
-		} else if (type.equals("Stays")) {
-			this.writeReservationsToFile(true, true);
+	private String snapshotPath() {
+		return this.directory + "/data/bookingInfo/snapshot.bin";
+	}
+
+	/*
+	 * Returns the files the snapshot is only valid alongside, the hotels file as
+	 * the rooms are looked up in it and the csv files the snapshot replaces
+	 * 
+	 * @return the files, in the same order every time
+	 */
+	private File[] snapshotSources() {
+		String dir = this.directory;
+		return new File[] { new File(dir + "/data/hotels/l4Hotels.csv"),
+				new File(dir + "/data/bookingInfo/reservations.csv"), new File(dir + "/data/bookingInfo/cancellations.csv"),
+				new File(dir + "/data/bookingInfo/stays.csv") };
+	}
+
+	/*
+	 * Returns the path of the running totals of the stays, saved alongside
+	 * stays.csv
+	 * 
+	 * @return the path of the totals file
+	 */
+	private String revenuePath() {
+		return this.directory + "/data/bookingInfo/revenue.bin";
+	}
+
+	/*
+	 * Returns the files the running totals are only valid alongside, the hotels
+	 * and rate overrides files as the income of each night comes from them, and
+	 * the csv files and archive the stays are read from
+	 * 
+	 * @return the files, in the same order every time
+	 */
+	private File[] revenueSources() {
+		String dir = this.directory;
+		return new File[] { new File(dir + "/data/hotels/l4Hotels.csv"), new File(dir + "/data/hotels/rateOverrides.csv"),
+				new File(dir + "/data/bookingInfo/reservations.csv"), new File(dir + "/data/bookingInfo/stays.csv"),
+				new File(dir + "/data/bookingInfo/stayArchive.bin") };
+	}
+
+	/*
+	 * Sets up the running totals of the stays of each hotel once the stays are
+	 * loaded, from the file written when the system was last closed if the files
+	 * they were built from have not changed since, else in one pass over the
+	 * stays and the archive. From then on every stay added or removed changes the
+	 * totals
+	 */
+	private void loadRevenue() {
+		TreeMap<String, RevenueCube> saved = RevenueCube.load(this.revenuePath(), this.revenueSources(), this.catalog);
+		for (String hotelName : this.allRooms.keySet()) {
+			RevenueCube cube = saved == null ? null : saved.get(hotelName);
+			if (cube == null) {
+				cube = new RevenueCube();
+				for (HotelStay stay : this.stays.get(hotelName)) {
+					if (!this.isArchived(stay.getReservation().getNumber())) {
+						cube.add(stay);
+					}
+				}
+				StayArchive.Cursor archived = this.getArchivedStays(hotelName, LocalDate.MIN, LocalDate.MAX);
+				while (archived != null && archived.next()) {
+					cube.add(archived);
+				}
+			}
+			this.revenue.put(hotelName, cube);
 		}
 	}
 
+	/*
+	 * Loads the reservations, cancellations and stays from the snapshot written
+	 * when the system was last closed, if the csv files have not changed since
+	 * 
+	 * @return true if the snapshot was loaded, false if the csv files must be read
+	 */
+	private boolean loadSnapshot() {
+		return BookingSnapshot.load(this.snapshotPath(), this.snapshotSources(), new BookingSnapshot.Loader() {
+			@Override
+			public Room getRoom(String hotelName, String roomType) {
+				return BookingSystem.this.getRoom(hotelName, roomType);
+			}
+
+			@Override
+			public void addReservation(boolean reservationOrCancellation, String hotelName, Reservation reservation) {
+				addReservationToHotel(reservationOrCancellation, hotelName, reservation);
+			}
+
+			@Override
+			public void addStay(String hotelName, int number, boolean checkedIn, LocalDate stayStart, LocalDate stayEnd) {
+				Reservation r = findReservation(true, hotelName, number);
+				if (r != null) {
+					HotelStay stay = new HotelStay(r);
+					addStayToHotel(hotelName, stay);
+					stay.setCheckedIn(checkedIn);
+					stay.setStayStart(stayStart);
+					stay.setStayEnd(stayEnd);
+					stayNumbers.get(hotelName).update(stay);
+				}
+			}
+		});
+	}
+
 	/*
 	 * Reinitialises the hotel system with reservations, cancellations or stays
 	 * 
@@ -880,87 +1841,164 @@ public class BookingSystem implements CsvTools {
 		} else {
 			fileName = "/data/bookingInfo/stays.csv";
 		}
-		String[][] data = readDataFromFile(System.getProperty("user.dir") + fileName);
-		if (data != null) {
-			int row;
-			String hotelName = "", name, type;
-			int number, numOfNights, numOfPeople, numOfRooms;
-			Reservation r;
-			ArrayList<RoomBooking> rooms;
-			for (row = 1; row < data.length; row++) {
-				String[] dataRow = data[row];
-				if (!dataRow[0].equals("")) {
-					hotelName = dataRow[0];
-				}
-				number = Integer.parseInt(dataRow[1]);
-				name = dataRow[2];
-				type = dataRow[3];
-				String[] date = dataRow[4].split("-");
-				LocalDate checkin = LocalDate.of(Integer.parseInt(date[0]), Integer.parseInt(date[1]),
-						Integer.parseInt(date[2]));
-				numOfNights = Integer.parseInt(dataRow[5]);
-				numOfPeople = Integer.parseInt(dataRow[6]);
-				numOfRooms = Integer.parseInt(dataRow[7]);
-				rooms = new ArrayList<RoomBooking>(numOfRooms);
-				int lastCol = 8;
-				while (lastCol < numOfRooms + 8) {
-					String room = dataRow[lastCol++];
-					String roomName = room.substring(0, room.indexOf("("));
-					String[] roomInfo = room.substring(room.indexOf("(") + 1, room.length() - 1).split("_");
-					boolean breakfastIncluded = Boolean.parseBoolean(roomInfo[0]);
-					int adults = Integer.parseInt(roomInfo[1]);
-					int children = Integer.parseInt(roomInfo[2]);
-					if (!roomName.equals("")) {
-						Room rm = this.getRoom(hotelName, roomName);
-						RoomBooking rb = new RoomBooking(rm, adults, children);
-						rb.setBreakfastIncluded(breakfastIncluded);
-						if (rm != null) {
-							rooms.add(rb);
-						}
-					}
-				}
-				if (!hotelStay) {
-					r = new Reservation(number, name, type, checkin, numOfNights, numOfPeople, numOfRooms, rooms);
-				} else if (reservationOrCancellation) {
-					r = this.getReservation(hotelName, name, checkin, number);
+		this.readDataFromFile(this.directory + fileName, new Consumer<String[]>() {
+			private boolean header = true;
+			private String hotelName = "";
+
+			@Override
+			public void accept(String[] dataRow) {
+				if (header) {
+					header = false;
 				} else {
-					r = new Reservation(number, name, type, checkin, numOfNights, numOfPeople, numOfRooms, rooms);
-					Reservation.setLastBookingNumber(Reservation.getLastBookingNumber() - 1);
+					if (!dataRow[0].equals("")) {
+						hotelName = dataRow[0];
+					}
+					loadRow(hotelName, dataRow, reservationOrCancellation, hotelStay);
 				}
-				while (dataRow[lastCol].equals("")) {
-					lastCol++;
+			}
+		});
+	}
+
+	/*
+	 * Creates a new reservation from the values of a row of a reservations file
+	 * 
+	 * @param hotelName the name of the hotel the reservation is for
+	 * 
+	 * @param dataRow the values of the row
+	 * 
+	 * @return the reservation without its bills set
+	 */
+	private Reservation parseReservation(String hotelName, String[] dataRow) {
+		int number = Integer.parseInt(dataRow[1]);
+		String name = dataRow[2];
+		String type = dataRow[3];
+		String[] date = dataRow[4].split("-");
+		LocalDate checkin = LocalDate.of(Integer.parseInt(date[0]), Integer.parseInt(date[1]),
+				Integer.parseInt(date[2]));
+		int numOfNights = Integer.parseInt(dataRow[5]);
+		int numOfPeople = Integer.parseInt(dataRow[6]);
+		int numOfRooms = Integer.parseInt(dataRow[7]);
+		ArrayList<RoomBooking> rooms = new ArrayList<RoomBooking>(numOfRooms);
+		int lastCol = 8;
+		while (lastCol < numOfRooms + 8) {
+			String room = dataRow[lastCol++];
+			String roomName = room.substring(0, room.indexOf("("));
+			String[] roomInfo = room.substring(room.indexOf("(") + 1, room.length() - 1).split("_");
+			boolean breakfastIncluded = Boolean.parseBoolean(roomInfo[0]);
+			int adults = Integer.parseInt(roomInfo[1]);
+			int children = Integer.parseInt(roomInfo[2]);
+			if (!roomName.equals("")) {
+				Room rm = this.getRoom(hotelName, roomName);
+				RoomBooking rb = new RoomBooking(rm, adults, children);
+				rb.setBreakfastIncluded(breakfastIncluded);
+				if (rm != null) {
+					rooms.add(rb);
 				}
-				if (r != null) {
-					r.setTotalCost(Double.parseDouble(dataRow[lastCol++].substring(1)));
-					r.setDeposit(Double.parseDouble(dataRow[lastCol].substring(1)));
-					TreeMap<String, ArrayList<Reservation>> reservations = reservationOrCancellation ? this.reservations
-							: this.cancellations;
-					if (!reservations.containsKey(hotelName)) {
-						reservations.put(hotelName, new ArrayList<Reservation>());
-					}
-					if (!reservations.get(hotelName).contains(r)) {
-						reservations.get(hotelName).add(r);
-					}
-					if (reservationOrCancellation && hotelStay) {
-						lastCol++;
-						boolean checkedIn = Boolean.parseBoolean(dataRow[lastCol++]);
-						String[] start = dataRow[lastCol++].split("-");
-						LocalDate startDate = LocalDate.of(Integer.parseInt(start[0]), Integer.parseInt(start[1]),
-								Integer.parseInt(start[2]));
-						String[] end = dataRow[lastCol].split("-");
-						LocalDate endDate = LocalDate.of(Integer.parseInt(end[0]), Integer.parseInt(end[1]),
-								Integer.parseInt(end[2]));
-						HotelStay stay = new HotelStay(r);
-						stay.setCheckedIn(checkedIn);
-						stay.setStayStart(startDate);
-						stay.setStayEnd(endDate);
-						if (!stays.containsKey(hotelName)) {
-							stays.put(hotelName, new ArrayList<HotelStay>());
-						}
-						stays.get(hotelName).add(stay);
-					}
+			}
+		}
+		return new Reservation(number, name, type, checkin, numOfNights, numOfPeople, numOfRooms, rooms);
+	}
+
+	/*
+	 * Loads a row of a reservations, cancellations or stays file into the system.
+	 * If the reservation of the row is already in the system, only its bills (and
+	 * stay) are updated as these are the only parts that change after booking
+	 * 
+	 * @param hotelName the name of the hotel of the row
+	 * 
+	 * @param dataRow the values of the row
+	 * 
+	 * @param reservationOrCancellation true if it is a reservation, false if
+	 * cancellation
+	 * 
+	 * @param hotelStay true if its a hotelStay, but since a hotelStay is based on a
+	 * reservation, reservationOrCancellation should also be true
+	 */
+	private void loadRow(String hotelName, String[] dataRow, boolean reservationOrCancellation, boolean hotelStay) {
+		int number = Integer.parseInt(dataRow[1]);
+		int numOfRooms = Integer.parseInt(dataRow[7]);
+		Reservation r = this.findReservation(reservationOrCancellation, hotelName, number);
+		if (r == null && !hotelStay) {
+			if (!reservationOrCancellation) {
+				r = this.findReservation(true, hotelName, number); // cancelled but the removal from reservations is still to come
+			}
+			if (r == null) {
+				r = this.parseReservation(hotelName, dataRow);
+			}
+			this.addReservationToHotel(reservationOrCancellation, hotelName, r);
+		}
+		if (r != null) {
+			int lastCol = 8 + numOfRooms;
+			while (dataRow[lastCol].equals("")) {
+				lastCol++;
+			}
+			r.setTotalCostCents(Money.parse(dataRow[lastCol++]));
+			r.setDepositCents(Money.parse(dataRow[lastCol]));
+			if (hotelStay) {
+				lastCol++;
+				boolean checkedIn = Boolean.parseBoolean(dataRow[lastCol++]);
+				String[] start = dataRow[lastCol++].split("-");
+				LocalDate startDate = LocalDate.of(Integer.parseInt(start[0]), Integer.parseInt(start[1]),
+						Integer.parseInt(start[2]));
+				String[] end = dataRow[lastCol].split("-");
+				LocalDate endDate = LocalDate.of(Integer.parseInt(end[0]), Integer.parseInt(end[1]),
+						Integer.parseInt(end[2]));
+				HotelStay stay = this.findHotelStay(hotelName, r);
+				if (stay == null) {
+					stay = new HotelStay(r);
+					this.addStayToHotel(hotelName, stay);
 				}
+				stay.setCheckedIn(checkedIn);
+				stay.setStayStart(startDate);
+				stay.setStayEnd(endDate);
+				this.stayNumbers.get(hotelName).update(stay);
 			}
 		}
 	}
+
+	/*
+	 * Removes the row of the reservation with the given number from the
+	 * reservations, cancellations or stays of the hotel
+	 * 
+	 * @param type type can be Reservations, Cancellations or Stays
+	 * 
+	 * @param hotelName the name of the hotel of the row
+	 * 
+	 * @param number the reservation number
+	 */
+	private void unloadRow(String type, String hotelName, int number) {
+		if (type.equals("Reservations") || type.equals("Cancellations")) {
+			boolean reservationOrCancellation = type.equals("Reservations");
+			Reservation r = this.findReservation(reservationOrCancellation, hotelName, number);
+			if (r != null) {
+				this.removeReservationFromHotel(reservationOrCancellation, hotelName, r);
+			}
+		} else if (type.equals("Stays")) {
+			HotelStay stay = this.findHotelStay(hotelName, this.findReservation(true, hotelName, number));
+			if (stay != null) {
+				this.removeStayFromHotel(hotelName, stay);
+			}
+		}
+	}
+
+	/*
+	 * Applies a record read back from the journal to the system
+	 * 
+	 * @param record the values of the journal record
+	 * 
+	 * @throws RuntimeException if the record is malformed
+	 */
+	private void replayRecord(String[] record) {
+		String type = record[0];
+		String[] dataRow = java.util.Arrays.copyOfRange(record, 2, record.length);
+		if (!type.equals("Reservations") && !type.equals("Cancellations") && !type.equals("Stays")) {
+			throw new IllegalArgumentException("Unknown table " + type);
+		} else if (record[1].equals("+")) {
+			this.loadRow(dataRow[0], dataRow, !type.equals("Cancellations"), type.equals("Stays"));
+		} else if (record[1].equals("-")) {
+			this.unloadRow(type, dataRow[0], Integer.parseInt(dataRow[1]));
+		} else {
+			throw new IllegalArgumentException("Unknown change " + record[1]);
+		}
+	}
 }
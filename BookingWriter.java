@@ -0,0 +1,140 @@
+import java.util.ArrayList;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A class to write the booking system to disk on a background thread, so that the callers changing it don't wait on
+ * the disk. Callers ask for files to be flushed through a bounded queue, and the writer takes every request waiting in
+ * the queue at once and flushes the files they name together, so many requests made while a flush is running cost a
+ * single flush between them. Each request can either be left to the writer or waited on until its files are on disk
+ */
+public class BookingWriter {
+	/*
+	 * A request to flush a file, completed once the flush it was part of has finished
+	 */
+	private static class Request {
+		private String file; //The file to flush, or null to only flush what is already due
+		private CompletableFuture<Void> done;
+
+		/*
+		 * @param file the file to flush, or null to only flush what is already due
+		 */
+		private Request(String file) {
+			this.file = file;
+			this.done = new CompletableFuture<Void>();
+		}
+	}
+
+	private static final Request STOP = new Request(null); //Put on the queue to stop the writer once it is drained
+
+	private ArrayBlockingQueue<Request> queue;
+	private Consumer<TreeSet<String>> flusher;
+	private long idleFlushMillis;
+	private Thread thread;
+	private boolean closed; //Guarded by this
+
+	/**
+	 * Creates a BookingWriter and starts its thread
+	 * @param capacity the most requests that can wait in the queue before callers are held up
+	 * @param idleFlushMillis how often in milliseconds the flusher is called with no files while there are no
+	 *        requests, e.g. to force records written since the last flush to disk
+	 * @param flusher called on the writer's thread with the names of the files asked for since the last flush, which
+	 *        may be empty
+	 */
+	public BookingWriter(int capacity, long idleFlushMillis, Consumer<TreeSet<String>> flusher) {
+		this.queue = new ArrayBlockingQueue<Request>(capacity);
+		this.flusher = flusher;
+		this.idleFlushMillis = idleFlushMillis;
+		this.thread = new Thread(this::run, "booking-writer");
+		this.thread.setDaemon(true); // close flushes anything left before the system stops
+		this.thread.start();
+	}
+
+	/*
+	 * Takes every waiting request at once, flushes their files together and completes them, until stopped
+	 */
+	private void run() {
+		ArrayList<Request> batch = new ArrayList<Request>();
+		boolean stopping = false;
+		while (!stopping) {
+			try {
+				Request first = this.queue.poll(this.idleFlushMillis, TimeUnit.MILLISECONDS);
+				if (first != null) {
+					batch.add(first);
+					this.queue.drainTo(batch);
+				}
+			} catch (InterruptedException e) {
+				stopping = true;
+			}
+			TreeSet<String> files = new TreeSet<String>();
+			for (Request r : batch) {
+				if (r == STOP) {
+					stopping = true;
+				} else if (r.file != null) {
+					files.add(r.file);
+				}
+			}
+			try {
+				this.flusher.accept(files);
+				for (Request r : batch) {
+					r.done.complete(null);
+				}
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+				for (Request r : batch) {
+					r.done.completeExceptionally(e);
+				}
+			}
+			batch.clear();
+		}
+	}
+
+	/**
+	 * Asks for a file to be flushed by the writer. If the queue is full the caller waits for room in it. Once the
+	 * writer is closed the file is flushed on the caller's thread instead
+	 * @param file the name of the file, or null to only flush what is already due
+	 * @param waitForFlush true to return once the file is on disk, false to return as soon as the request is queued
+	 */
+	public void flush(String file, boolean waitForFlush) {
+		Request request = new Request(file);
+		try {
+			synchronized (this) { // so that no request is queued behind STOP
+				if (this.closed) {
+					TreeSet<String> files = new TreeSet<String>();
+					if (file != null) {
+						files.add(file);
+					}
+					this.flusher.accept(files);
+					return;
+				}
+				this.queue.put(request);
+			}
+			if (waitForFlush) {
+				request.done.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Flushes every request in the queue and stops the writer's thread
+	 */
+	public void close() {
+		try {
+			synchronized (this) {
+				if (this.closed) {
+					return;
+				}
+				this.closed = true;
+				this.queue.put(STOP);
+			}
+			this.thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
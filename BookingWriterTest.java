@@ -0,0 +1,216 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A test of the BookingWriter. The writer is first run on its own with a slow flusher while several threads ask for
+ * files to be flushed and it is closed under them, checking every file is flushed and no caller is left waiting. The
+ * booking system is then stopped dead straight after batches of reservations were confirmed, and every one of them
+ * must be there when it is started again. Run with "java BookingWriterTest" from the folder holding data
+ */
+public class BookingWriterTest {
+	private static final int THREADS = 8; //Threads asking for flushes, or booking batches
+	private static final int REQUESTS = 200; //Flushes each thread asks for
+	private static final int BATCHES = 10; //Batches of reservations each thread books
+
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0) {
+			bookBatches(args[0].equals("crash"));
+			return;
+		}
+		checkClose();
+		checkCrashAfterBatches();
+		TestSupport.finish();
+	}
+
+	/*
+	 * Asks for flushes from several threads through a small queue while the flusher is slow, so that the callers are
+	 * held up, and closes the writer while they are still asking
+	 */
+	private static void checkClose() throws InterruptedException {
+		List<String> flushed = Collections.synchronizedList(new ArrayList<String>());
+		AtomicInteger flushes = new AtomicInteger();
+		AtomicInteger lateFlushes = new AtomicInteger(); // flushes run on the writer's thread after close returned
+		AtomicInteger unflushed = new AtomicInteger(); // waited on flushes that returned before their file was flushed
+		boolean[] closeReturned = new boolean[1];
+		BookingWriter writer = new BookingWriter(4, 10, files -> {
+			flushes.incrementAndGet();
+			synchronized (closeReturned) {
+				if (closeReturned[0] && Thread.currentThread().getName().equals("booking-writer")) {
+					lateFlushes.incrementAndGet();
+				}
+			}
+			try {
+				Thread.sleep(2);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			flushed.addAll(files);
+		});
+		ArrayList<Thread> callers = new ArrayList<Thread>();
+		for (int t = 0; t < THREADS; t++) {
+			String caller = "caller" + t;
+			Thread thread = new Thread(() -> {
+				for (int i = 0; i < REQUESTS; i++) {
+					String file = caller + "-" + i;
+					boolean wait = i % 3 == 0;
+					writer.flush(file, wait);
+					if (wait && !flushed.contains(file)) {
+						unflushed.incrementAndGet();
+					}
+				}
+			});
+			callers.add(thread);
+			thread.start();
+		}
+		while (flushed.size() < THREADS * REQUESTS / 4) {
+			Thread.sleep(1);
+		}
+		writer.close();
+		synchronized (closeReturned) {
+			closeReturned[0] = true;
+		}
+		boolean finished = true;
+		for (Thread caller : callers) {
+			caller.join(TimeUnit.SECONDS.toMillis(30));
+			finished &= !caller.isAlive();
+		}
+		TestSupport.check(finished, "no caller is left waiting once the writer is closed");
+		HashSet<String> files = new HashSet<String>(flushed);
+		boolean all = true;
+		for (int t = 0; t < THREADS; t++) {
+			for (int i = 0; i < REQUESTS; i++) {
+				all &= files.contains("caller" + t + "-" + i);
+			}
+		}
+		TestSupport.check(all, "every file asked for before or after the writer was closed is flushed");
+		TestSupport.check(unflushed.get() == 0, "a flush waited on has finished by the time it returns");
+		TestSupport.check(lateFlushes.get() == 0, "flushes asked for after close are run on the caller's thread");
+		TestSupport.check(flushes.get() < THREADS * REQUESTS, "requests waiting together are flushed together, "
+				+ flushes.get() + " flushes for " + THREADS * REQUESTS + " requests");
+	}
+
+	/*
+	 * Books batches of reservations from several threads and stops the JVM dead as soon as the last is confirmed,
+	 * then checks every confirmed reservation is loaded when the system is started again, and that a batch booked
+	 * alone loads the same as when the system was closed. Stopping the JVM loses what it holds but not what it wrote
+	 * to the journal, so this shows no confirmed batch was left in memory, while that it was forced to disk rests on
+	 * the waited on flushes checked by checkClose
+	 */
+	private static void checkCrashAfterBatches() throws Exception {
+		File reference = TestSupport.copyOfData();
+		TestSupport.check(TestSupport.runJava(reference, "BookingWriterTest", "close") == 0,
+				"the batch is booked and closed");
+		String expected = TestSupport.csvStateOf(reference);
+		TestSupport.delete(reference);
+
+		File crashed = TestSupport.copyOfData();
+		TestSupport.check(TestSupport.runJava(crashed, "BookingWriterTest", "crash") == 0,
+				"the batches are booked and the system stopped dead");
+		List<String> confirmed = Files.readAllLines(confirmed(crashed).toPath(), StandardCharsets.UTF_8);
+		BookingSystem system = new BookingSystem(crashed.getPath());
+		try {
+			boolean all = confirmed.size() == THREADS * BATCHES * 2 + 2;
+			for (String line : confirmed) {
+				String[] values = line.split(",");
+				LinkedHashMap<Integer, Reservation> hotel = system.getReservations().get(values[0]);
+				Reservation r = hotel.get(Integer.parseInt(values[1]));
+				all &= r != null && r.getName().equals(values[2]);
+			}
+			TestSupport.check(all, "every one of the " + confirmed.size()
+					+ " reservations confirmed before the crash is loaded");
+		} finally {
+			system.close();
+		}
+		String state = TestSupport.csvStateOf(crashed);
+		String alone = state.replaceAll("(?m)^(Rooms |.*Batch ).*\n", ""); // the rooms free include the other batches
+		TestSupport.check(alone.equals(expected.replaceAll("(?m)^Rooms .*\n", "")),
+				"the batch booked alone loads the same as when the system was closed");
+		TestSupport.delete(crashed);
+	}
+
+	/*
+	 * Books a batch of two reservations in the copy of data the JVM was started in, and when crashing, batches from
+	 * several threads after it, writing each reservation to confirmed.txt once addReservations has returned. Then
+	 * either closes the system or stops the JVM dead
+	 *
+	 * @param crash true to book from several threads and stop the JVM without closing the system
+	 */
+	private static void bookBatches(boolean crash) throws Exception {
+		BookingSystem system = new BookingSystem();
+		LocalDate checkin = LocalDate.now().plusDays(10);
+		File confirmed = confirmed(new File(System.getProperty("user.dir")));
+		confirm(confirmed, "5-star", system.addReservations("5-star",
+				Arrays.asList(TestSupport.reservation(system, "5-star", "Di Test", checkin, "Deluxe Single"),
+						TestSupport.reservation(system, "5-star", "Ed Test", checkin.plusDays(1), "Penthouse", "Deluxe Family"))));
+		if (!crash) {
+			system.close();
+			return;
+		}
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < THREADS; t++) {
+			String hotelName = t % 2 == 0 ? "5-star" : "3-star";
+			String roomType = t % 2 == 0 ? "Deluxe Double" : "Classic Double";
+			int thread = t;
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < BATCHES; i++) {
+					LocalDate day = checkin.plusDays(i * 3);
+					confirm(confirmed, hotelName, system.addReservations(hotelName, Arrays.asList(
+							TestSupport.reservation(system, hotelName, "Batch " + thread + "-" + i, day, roomType),
+							TestSupport.reservation(system, hotelName, "Batch " + thread + "-" + i + "b", day, roomType))));
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		Runtime.getRuntime().halt(0); // straight after the last batch was confirmed
+	}
+
+	/*
+	 * Writes each reservation of a confirmed batch to the end of the file as hotel,number,name
+	 *
+	 * @param file the file of confirmed reservations
+	 *
+	 * @param hotelName the name of the hotel
+	 *
+	 * @param batch the reservations addReservations returned
+	 */
+	private static synchronized void confirm(File file, String hotelName, List<Reservation> batch) {
+		StringBuilder lines = new StringBuilder();
+		for (Reservation r : batch) {
+			lines.append(hotelName).append(',').append(r.getNumber()).append(',').append(r.getName()).append('\n');
+		}
+		try {
+			Files.write(file.toPath(), lines.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+					StandardOpenOption.APPEND);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/*
+	 * Finds the file of confirmed reservations of a copy of data
+	 *
+	 * @param directory the directory holding the copy
+	 *
+	 * @return the file
+	 */
+	private static File confirmed(File directory) {
+		return new File(directory, "confirmed.txt");
+	}
+}
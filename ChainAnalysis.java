@@ -0,0 +1,123 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A class to run the data analysis for every hotel in the chain at once. Each hotel is analysed by its own task in a
+ * ForkJoinPool, and within a hotel the stays are split up and merged again by DataAnalysis, so the reports are
+ * produced in parallel while each hotel's files stay the same as if its Supervisor had requested them
+ */
+public class ChainAnalysis {
+	private BookingSystem system;
+	private ForkJoinPool pool;
+
+	/**
+	 * Creates a ChainAnalysis object which runs on the common ForkJoinPool
+	 * @param system the system holding the hotels to analyse
+	 */
+	public ChainAnalysis(BookingSystem system) {
+		this(system, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a ChainAnalysis object which runs on the given pool
+	 * @param system the system holding the hotels to analyse
+	 * @param pool the pool to run the analysis of each hotel on
+	 */
+	public ChainAnalysis(BookingSystem system, ForkJoinPool pool) {
+		this.system = system;
+		this.pool = pool;
+	}
+
+	/*
+	 * A task which writes the report of a single hotel
+	 */
+	private static class HotelReport extends RecursiveTask<String> {
+		private static final long serialVersionUID = 1L;
+		private DataAnalysis analyzer;
+		private LocalDate start;
+		private LocalDate end;
+		private TreeMap<Room, Integer> hotelRooms;
+		private int reportType; //0 for income, 1 for occupant numbers, 2 for room numbers
+
+		/*
+		 * @param analyzer the data analysis of the hotel
+		 *
+		 * @param start the start date of the period
+		 *
+		 * @param end the end date of the period
+		 *
+		 * @param hotelRooms the rooms of the hotel
+		 *
+		 * @param reportType 0 for income, 1 for occupant numbers, 2 for room numbers
+		 */
+		private HotelReport(DataAnalysis analyzer, LocalDate start, LocalDate end, TreeMap<Room, Integer> hotelRooms, int reportType) {
+			this.analyzer = analyzer;
+			this.start = start;
+			this.end = end;
+			this.hotelRooms = hotelRooms;
+			this.reportType = reportType;
+		}
+
+		@Override
+		protected String compute() {
+			if (this.reportType == 0) {
+				return this.analyzer.requestIncomeInformation(this.start, this.end);
+			} else {
+				return this.analyzer.requestOccupantInformation(this.start, this.end, this.hotelRooms, this.reportType == 1);
+			}
+		}
+	}
+
+	/*
+	 * Forks one report task per hotel and waits for all of them
+	 *
+	 * @param start the start date of the period
+	 *
+	 * @param end the end date of the period
+	 *
+	 * @param reportType 0 for income, 1 for occupant numbers, 2 for room numbers
+	 *
+	 * @return the names of the files written, in order of hotel name
+	 */
+	private ArrayList<String> runReports(LocalDate start, LocalDate end, int reportType) {
+		List<HotelReport> tasks = new ArrayList<HotelReport>();
+		for (String hotelName : this.system.getAllRooms().keySet()) {
+			DataAnalysis analyzer = new DataAnalysis(hotelName, this.system);
+			tasks.add(new HotelReport(analyzer, start, end, this.system.getAllRooms().get(hotelName), reportType));
+		}
+		for (HotelReport task : tasks) {
+			this.pool.execute(task);
+		}
+		ArrayList<String> fileNames = new ArrayList<String>();
+		for (HotelReport task : tasks) {
+			fileNames.add(task.join());
+		}
+		return fileNames;
+	}
+
+	/**
+	 * Requests the income information of every hotel in the chain for all the days of the date period
+	 * @param start the start date of the period
+	 * @param end the end date of the period
+	 * @return the names of the files the information of each hotel was stored to
+	 */
+	public ArrayList<String> requestIncomeInformation(LocalDate start, LocalDate end) {
+		return this.runReports(start, end, 0);
+	}
+
+	/**
+	 * Requests the occupancy information of every hotel in the chain for all the days of the date period
+	 * @param start the start date of the period
+	 * @param end the end date of the period
+	 * @param numberOfOccupants true if you want to retrieve number of occupants, false if you want to retrieve number of
+	 *        rooms booked
+	 * @return the names of the files the information of each hotel was stored to
+	 */
+	public ArrayList<String> requestOccupantInformation(LocalDate start, LocalDate end, boolean numberOfOccupants) {
+		return this.runReports(start, end, numberOfOccupants ? 1 : 2);
+	}
+}
@@ -0,0 +1,181 @@
+import java.io.File;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A test of booking the same rooms of a hotel from many threads at once. In each round every thread tries to book
+ * 5-star's Deluxe Single and Penthouse rooms on the same nights at the same moment, singly or in a batch, and then
+ * cancels most of what it got so the next round races for them again. No night may ever have more of a room booked
+ * than the hotel has, every reservation number must be unique and, once the rounds are over, the rooms free must
+ * match the reservations held. Run with "java ConcurrentBookingTest" from the folder holding data
+ */
+public class ConcurrentBookingTest {
+	private static final int THREADS = 16; //Threads booking at once, more than the Deluxe Single rooms
+	private static final int ROUNDS = 1000; //Times the threads race for the rooms
+	private static final int NIGHTS = 20; //Nights the rounds check in over, starting 10 days from today
+	private static final String HOTEL = "5-star";
+	private static final String[] ROOM_TYPES = { "Deluxe Single", "Penthouse" }; //10 rooms and 1 room
+
+	/*
+	 * The rooms of each type booked on each night by the threads, counted once a booking has returned and uncounted
+	 * before its cancellation is asked for, so it is never more than the system holds
+	 */
+	private static AtomicIntegerArray booked = new AtomicIntegerArray(ROOM_TYPES.length * (NIGHTS + 2));
+	private static AtomicBoolean overbooked = new AtomicBoolean();
+
+	public static void main(String[] args) throws Exception {
+		File copy = TestSupport.copyOfData();
+		BookingSystem system = new BookingSystem(copy.getPath());
+		LocalDate first = LocalDate.now().plusDays(10);
+		List<Reservation> made = Collections.synchronizedList(new ArrayList<Reservation>());
+		List<Reservation> kept = Collections.synchronizedList(new ArrayList<Reservation>());
+		CyclicBarrier round = new CyclicBarrier(THREADS); // so that every thread books at the same moment
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < THREADS; t++) {
+			int thread = t;
+			threads.add(new Thread(() -> {
+				Random random = new Random(thread);
+				try {
+					for (int i = 0; i < ROUNDS; i++) {
+						round.await();
+						List<Reservation> got = book(system, first.plusDays(i % NIGHTS), "Guest " + thread + "-" + i, random);
+						for (Reservation r : got) {
+							count(system, first, r, 1);
+						}
+						made.addAll(got);
+						round.await(); // every booking of the round is made before any is cancelled
+						for (Reservation r : got) {
+							if (random.nextInt(10) == 0) {
+								kept.add(r);
+							} else {
+								count(system, first, r, -1);
+								system.cancelReservation(HOTEL, r);
+							}
+						}
+					}
+				} catch (InterruptedException | BrokenBarrierException e) {
+					e.printStackTrace();
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		TestSupport.check(made.size() < THREADS * ROUNDS && !kept.isEmpty(), made.size() + " reservations were booked in "
+				+ THREADS * ROUNDS + " attempts and " + kept.size() + " of them kept");
+		TestSupport.check(!overbooked.get(), "no night ever had more of a room booked than the hotel has");
+		HashSet<Integer> numbers = new HashSet<Integer>();
+		for (Reservation r : made) {
+			numbers.add(r.getNumber());
+		}
+		TestSupport.check(numbers.size() == made.size(), "every reservation booked has its own number");
+		boolean held = true;
+		for (Reservation r : kept) {
+			held &= system.getReservation(HOTEL, r.getNumber()) == r;
+		}
+		TestSupport.check(held, "every reservation kept is held by the system");
+		checkRooms(system, first);
+		String state = TestSupport.stateOf(system);
+		system.close();
+		TestSupport.check(TestSupport.csvStateOf(copy).equals(state),
+				"the bookings are written to the csv files as they were held");
+		TestSupport.delete(copy);
+		TestSupport.finish();
+	}
+
+	/*
+	 * Tries to book a room checking in on the night given, or a batch of two with the second checking in a night later
+	 *
+	 * @param system the system
+	 *
+	 * @param checkin the check-in date
+	 *
+	 * @param name the name of the guest, made unique by the caller
+	 *
+	 * @param random chooses the rooms
+	 *
+	 * @return the reservations booked, none if there weren't enough rooms free
+	 */
+	private static List<Reservation> book(BookingSystem system, LocalDate checkin, String name, Random random) {
+		if (random.nextInt(4) == 0) { // both or neither are booked
+			List<Reservation> batch = system.addReservations(HOTEL, Arrays.asList(
+					TestSupport.reservation(system, HOTEL, name, checkin, ROOM_TYPES[random.nextInt(2)]),
+					TestSupport.reservation(system, HOTEL, name + "b", checkin.plusDays(1), ROOM_TYPES[0], ROOM_TYPES[1])));
+			return batch == null ? Collections.<Reservation>emptyList() : batch;
+		}
+		Reservation r = system.addReservation(HOTEL, TestSupport.reservation(system, HOTEL, name, checkin,
+				ROOM_TYPES[random.nextInt(2)]));
+		return r == null ? Collections.<Reservation>emptyList() : Collections.singletonList(r);
+	}
+
+	/*
+	 * Counts or uncounts the rooms of a reservation booked by the threads, noting if any night then has more of a room
+	 * booked than the hotel has
+	 *
+	 * @param system the system
+	 *
+	 * @param first the first night reservations were booked on
+	 *
+	 * @param r the reservation
+	 *
+	 * @param change 1 once it is booked, -1 before it is cancelled
+	 */
+	private static void count(BookingSystem system, LocalDate first, Reservation r, int change) {
+		int firstNight = (int) (r.getCheckinDate().toEpochDay() - first.toEpochDay());
+		for (RoomBooking booking : r.getRooms()) {
+			int type = Arrays.asList(ROOM_TYPES).indexOf(booking.getRoom().getType());
+			for (int night = firstNight; night < firstNight + r.getNumberOfNights(); night++) {
+				int count = booked.addAndGet(type * (NIGHTS + 2) + night, change);
+				if (count > system.getAllRooms().get(HOTEL).get(booking.getRoom())) {
+					overbooked.set(true);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Counts the rooms of each type booked on each night by the reservations the system holds, and checks none is
+	 * booked more times than the hotel has it and that the rooms the system says are free make up the rest
+	 *
+	 * @param system the system
+	 *
+	 * @param first the first night reservations were booked on
+	 */
+	private static void checkRooms(BookingSystem system, LocalDate first) {
+		TreeMap<Room, Integer> hotelRooms = system.getAllRooms().get(HOTEL);
+		boolean overbooked = false;
+		boolean matches = true;
+		for (int night = 0; night < NIGHTS + 2; night++) {
+			LocalDate date = first.plusDays(night);
+			for (String type : ROOM_TYPES) {
+				Room room = system.getRoom(HOTEL, type);
+				int count = 0;
+				for (Reservation r : system.getReservations().get(HOTEL).values()) {
+					if (!r.getCheckinDate().isAfter(date) && r.getCheckoutDate().isAfter(date)) {
+						for (RoomBooking booking : r.getRooms()) {
+							count += booking.getRoom().getType().equals(type) ? 1 : 0;
+						}
+					}
+				}
+				Integer free = system.getCurrentRooms(HOTEL, date, date.plusDays(1)).get(room);
+				overbooked |= count > hotelRooms.get(room);
+				matches &= (free == null ? 0 : free) == hotelRooms.get(room) - count;
+			}
+		}
+		TestSupport.check(!overbooked, "no night is left with more of a room booked than the hotel has");
+		TestSupport.check(matches, "the rooms free on each night are those the reservations leave");
+	}
+}
@@ -0,0 +1,59 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+/**
+ * A class to read csv files in a single pass, handing each row on as soon as it has been read
+ */
+public class CsvReader {
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Reads the file at filePath one line at a time and passes the values of each line to rowHandler
+	 * @param filePath the path to the file
+	 * @param rowHandler called with the values of each row in the order they appear in the file
+	 * @return true if the file exists and was read, false if not
+	 */
+	public static boolean read(String filePath, Consumer<String[]> rowHandler) {
+		File file = new File(filePath);
+		if (!file.exists()) {
+			return false;
+		}
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				rowHandler.accept(split(line));
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return true;
+	}
+
+	/**
+	 * Splits a line of a csv file into its values. Like line.split(","), empty values at the end of the line are
+	 * dropped, but no regular expression is used
+	 * @param line the line to split
+	 * @return the values of the line
+	 */
+	public static String[] split(String line) {
+		ArrayList<String> values = new ArrayList<String>();
+		int start = 0;
+		int comma;
+		while ((comma = line.indexOf(',', start)) != -1) {
+			values.add(line.substring(start, comma));
+			start = comma + 1;
+		}
+		values.add(line.substring(start));
+		int size = values.size();
+		while (size > 1 && values.get(size - 1).equals("")) {
+			size--;
+		}
+		return values.subList(0, size).toArray(new String[size]);
+	}
+}
@@ -1,3 +1,5 @@
+import java.util.function.Consumer;
+
 public interface CsvTools {
 	/**
 	 * Writes data stored in an object matrix to a file
@@ -12,4 +14,13 @@ public interface CsvTools {
 	 * @return a string data matrix
  	 */
 	public abstract String[][] readDataFromFile(String filePath);
+	
+	/**
+	 * Reads info from a file one row at a time, passing each row on as soon as it is read rather than holding the
+	 * whole file in memory
+	 * @param filePath the path to the file containing the data
+	 * @param rowHandler called with the values of each row in the order they appear in the file
+	 * @return true if the file exists and was read, false if not
+	 */
+	public abstract boolean readDataFromFile(String filePath, Consumer<String[]> rowHandler);
 }
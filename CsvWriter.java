@@ -0,0 +1,284 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A class to write csv files one value at a time, straight from the numbers being reported, so that no matrix of the
+ * whole file has to be built first. The file is written to a temporary file next to it and only moved into place by
+ * commit, so a failed write never leaves the file half written. Commit forces the file and the move to disk before it
+ * returns, so the file can be relied on once it has been committed
+ */
+public class CsvWriter implements AutoCloseable {
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private File file;
+	private File temp;
+	private FileChannel channel; //The channel to the temporary file, closed along with out
+	private Writer out;
+	private char[] buffer; //The characters waiting to be written
+	private int length; //The number of characters in buffer
+	private boolean rowStarted; //true if a value has been written on the current row
+	private boolean committed;
+
+	/**
+	 * Creates a CsvWriter which writes the file at filePath when it is committed
+	 * @param filePath the path to the file
+	 * @throws IOException if the temporary file could not be created
+	 */
+	public CsvWriter(String filePath) throws IOException {
+		this.file = new File(filePath);
+		this.temp = new File(filePath + ".tmp");
+		this.channel = FileChannel.open(this.temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		this.out = Channels.newWriter(this.channel, StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE);
+		this.buffer = new char[BUFFER_SIZE];
+	}
+
+	/*
+	 * Makes room for a number of characters in the buffer, writing it out if it is too full
+	 *
+	 * @param count the number of characters about to be added
+	 */
+	private void reserve(int count) throws IOException {
+		if (this.length + count > this.buffer.length) {
+			this.out.write(this.buffer, 0, this.length);
+			this.length = 0;
+			if (count > this.buffer.length) {
+				this.buffer = new char[count];
+			}
+		}
+	}
+
+	/*
+	 * Separates the next value from the one before it on the same row
+	 */
+	private void separate() throws IOException {
+		if (this.rowStarted) {
+			this.reserve(1);
+			this.buffer[this.length++] = ',';
+		}
+		this.rowStarted = true;
+	}
+
+	/*
+	 * Adds text to the buffer without a separator
+	 *
+	 * @param text the text
+	 */
+	private void append(String text) throws IOException {
+		this.reserve(text.length());
+		text.getChars(0, text.length(), this.buffer, this.length);
+		this.length += text.length();
+	}
+
+	/*
+	 * Adds the digits of a number to the buffer without a separator
+	 *
+	 * @param value the number
+	 */
+	private void append(long value) throws IOException {
+		if (value == Long.MIN_VALUE) {
+			this.append(Long.toString(value));
+			return;
+		}
+		this.reserve(20);
+		if (value < 0) {
+			this.buffer[this.length++] = '-';
+			value = -value;
+		}
+		int digits = 1;
+		for (long rest = value / 10; rest > 0; rest /= 10) {
+			digits++;
+		}
+		for (int i = this.length + digits - 1; i >= this.length; i--) {
+			this.buffer[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+		this.length += digits;
+	}
+
+	/*
+	 * Adds a number of hundredths to the buffer with two decimal places, e.g. 56250 as 562.50
+	 *
+	 * @param hundredths the number of hundredths
+	 */
+	private void appendDecimal(long hundredths) throws IOException {
+		if (hundredths < 0) {
+			this.append("-");
+		}
+		long part = Math.abs(hundredths % 100);
+		this.append(Math.abs(hundredths / 100));
+		this.append(part < 10 ? ".0" : ".");
+		this.append(part);
+	}
+
+	/**
+	 * Writes a value as it is
+	 * @param value the value, written as null if it is null
+	 * @throws IOException if the value could not be written
+	 */
+	public void write(String value) throws IOException {
+		this.separate();
+		this.append(String.valueOf(value));
+	}
+
+	/**
+	 * Writes a whole number
+	 * @param value the number
+	 * @throws IOException if the value could not be written
+	 */
+	public void write(long value) throws IOException {
+		this.separate();
+		this.append(value);
+	}
+
+	/**
+	 * Writes text followed by a whole number, e.g. "Total: " and 12 as Total: 12
+	 * @param label the text before the number, may be empty
+	 * @param value the number
+	 * @throws IOException if the value could not be written
+	 */
+	public void write(String label, long value) throws IOException {
+		this.separate();
+		this.append(label);
+		this.append(value);
+	}
+
+	/**
+	 * Writes a whole number out of another, separated by a backslash, e.g. 3 out of 10 as 3\10
+	 * @param part the number out of whole
+	 * @param whole the number part is out of
+	 * @throws IOException if the value could not be written
+	 */
+	public void writeRatio(long part, long whole) throws IOException {
+		this.separate();
+		this.append(part);
+		this.append("\\");
+		this.append(whole);
+	}
+
+	/**
+	 * Writes text followed by a number in the same form as Double.toString
+	 * @param label the text before the number, may be empty
+	 * @param value the number
+	 * @throws IOException if the value could not be written
+	 */
+	public void writeDouble(String label, double value) throws IOException {
+		this.separate();
+		this.append(label);
+		this.append(Double.toString(value));
+	}
+
+	/**
+	 * Writes text followed by an amount of money in the same form as Money.format, e.g. "Total: " and 56250 as
+	 * Total: $562.50
+	 * @param label the text before the amount, may be empty
+	 * @param cents the amount in cents
+	 * @throws IOException if the value could not be written
+	 */
+	public void writeMoney(String label, long cents) throws IOException {
+		this.separate();
+		this.append(label);
+		this.append("$");
+		this.appendDecimal(cents);
+	}
+
+	/**
+	 * Writes text followed by a number rounded half up to two decimal places in the same way as "%.02f"
+	 * @param label the text before the number, may be empty
+	 * @param value the number
+	 * @throws IOException if the value could not be written
+	 */
+	public void writeFixed(String label, double value) throws IOException {
+		this.separate();
+		this.append(label);
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			this.append(Double.toString(value));
+		} else {
+			this.appendDecimal(BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue());
+		}
+	}
+
+	/**
+	 * Writes a number of empty values
+	 * @param count the number of empty values
+	 * @throws IOException if the values could not be written
+	 */
+	public void skip(int count) throws IOException {
+		for (int i = 0; i < count; i++) {
+			this.write("");
+		}
+	}
+
+	/**
+	 * Writes every value of a row and ends it
+	 * @param values the values of the row
+	 * @throws IOException if the row could not be written
+	 */
+	public void writeRow(Object... values) throws IOException {
+		for (Object value : values) {
+			this.write(String.valueOf(value));
+		}
+		this.endRow();
+	}
+
+	/**
+	 * Ends the current row
+	 * @throws IOException if the row could not be written
+	 */
+	public void endRow() throws IOException {
+		this.append(System.lineSeparator());
+		this.rowStarted = false;
+	}
+
+	/**
+	 * Writes out everything written so far, forces it to disk and moves the file into place, forcing the move to disk
+	 * too, so that after a power cut the file is either the old one or the whole new one
+	 * @throws IOException if the file could not be written
+	 */
+	public void commit() throws IOException {
+		this.out.write(this.buffer, 0, this.length);
+		this.length = 0;
+		this.out.flush();
+		this.channel.force(true);
+		this.out.close();
+		Files.move(this.temp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		this.committed = true;
+		forceDirectory(this.file.getAbsoluteFile().getParentFile());
+	}
+
+	/*
+	 * Forces the entries of a directory to disk, such as a file just moved into it
+	 *
+	 * @param directory the directory
+	 */
+	private static void forceDirectory(File directory) throws IOException {
+		try (FileChannel dir = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+			dir.force(true);
+		} catch (IOException e) {
+			if (!System.getProperty("os.name").startsWith("Windows")) {
+				throw e;
+			} // Windows can't open a directory to force it, its moves are written through by the file system
+		}
+	}
+
+	/**
+	 * Closes the file. If it was not committed the temporary file is removed and the file is left as it was
+	 * @throws IOException if the file could not be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!this.committed) {
+			this.out.close();
+			Files.deleteIfExists(this.temp.toPath());
+		}
+	}
+}
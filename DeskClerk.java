@@ -15,21 +15,10 @@ public class DeskClerk extends User {
 	/**
 	 * Checks users into the hotel
 	 * @param reservation the reservation to check in
-	 * @return whether the check in was successful, false if the reservation doesn't exist
+	 * @return whether the check in was successful, false if the reservation doesn't exist or is already checked in
 	 */
 	public boolean checkIn(Reservation reservation) {
-		if (reservation == null) {
-			return false;
-		} else {
-			if (!this.system.isStayed(this.hotelName, reservation)) { //if reservation is already a stay no point checking in
-				HotelStay stay = new HotelStay(reservation);
-				reservation.getDeposit().setBilledDate(reservation.getCheckinDate()); //billed on arrival
-				this.system.addHotelStay(this.hotelName, stay);
-				System.out.println("Your deposit payable is:\n" + reservation.getDeposit());
-				return true;
-			}
-			return false;
-		}
+		return reservation != null && this.system.checkIn(this.hotelName, reservation);
 	}
 	
 	/**
@@ -38,22 +27,7 @@ public class DeskClerk extends User {
 	 * @return whether the check out was successful, false if the reservation doesn't exist or it's not even checked in
 	 */
 	public boolean checkOut(Reservation reservation) {
-		HotelStay stay = this.system.getHotelStay(this.hotelName, reservation);
-		if (stay == null) {
-			return false;
-		} else {
-			System.out.println("Your bill(incl. deposit) is:\n" + reservation.getTotalCost());
-			reservation.getTotalCost().setBilledDate(reservation.getCheckoutDate()); //set the billable date as the checkout
-			Bill totalExclDeposit = reservation.getTotalCost();
-			totalExclDeposit.setAmountDue(reservation.getTotalCost().getAmountDue() - 75);
-			System.out.println("Your bill(excl. deposit) is:\n" + totalExclDeposit);
-			stay.setCheckedIn(false);
-			stay.setStayStart(reservation.getCheckinDate()); 
-			stay.setStayEnd(reservation.getCheckoutDate());
-			this.system.updateFiles("Reservation"); 
-			this.system.updateFiles("Stays");
-			return true;
-		}
+		return reservation != null && this.system.checkOut(this.hotelName, reservation);
 	}
 	
 	/**
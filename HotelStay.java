@@ -69,6 +69,14 @@ public class HotelStay {
 		this.totalIncome.setAmountDue(income);
 	}
 	
+	/**
+	 * Sets income from hotel stay in cents
+	 * @param income amount of income from hotel stay in cents
+	 */
+	public void setTotalIncomeCents(long income) {
+		this.totalIncome.setAmountDueCents(income);
+	}
+	
 	/**
 	 * gets start date of hotel stay
 	 * @return LocalDate Start date of hotel stay
@@ -110,11 +118,18 @@ public class HotelStay {
 			return false;
 		} else if (obj == this) {
 			return true;
-		} else if (obj.hashCode() == this.hashCode()) {
-			return true;
 		} else {
 			HotelStay comp = (HotelStay)obj;
 			return this.reservation.equals(comp.reservation);//If reservations are the same no need to check stayStart or endStart as these would be set with the same dates. Don't check if checkIn are equals because this can change from true to false if they checkin or checkout and still be the same hotel stay
 		}
 	}
+
+	/**
+	 * Overriding the hashCode method of Object so that it agrees with equals. A stay is identified by its reservation
+	 * @return the hash code of this hotel stay
+	 */
+	@Override
+	public int hashCode() {
+		return this.reservation.hashCode();
+	}
 }
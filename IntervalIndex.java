@@ -0,0 +1,205 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Random;
+
+/**
+ * A class to index values by a period of epoch days [start, end) so that every value overlapping a period can be found
+ * in O(log n + k) time for k values found. It is an interval tree kept balanced as a treap, ordered by start day, where
+ * each node also holds the latest end day below it so that subtrees which end before the period can be skipped
+ * @param <T> the type of value indexed
+ */
+public class IntervalIndex<T> {
+	private Node<T> root;
+	private IdentityHashMap<T, Node<T>> nodes; //Finds the node of a value so that it can be removed
+	private long nextId; //Breaks ties between values starting on the same day
+	private Random random;
+
+	/*
+	 * A node of the tree, holding one value and its period
+	 */
+	private static class Node<T> {
+		private long start;
+		private long end;
+		private long id;
+		private int priority;
+		private long maxEnd; //The latest end of this node and all nodes below it
+		private T value;
+		private Node<T> left;
+		private Node<T> right;
+	}
+
+	/**
+	 * Creates an empty IntervalIndex
+	 */
+	public IntervalIndex() {
+		this.nodes = new IdentityHashMap<T, Node<T>>();
+		this.random = new Random();
+	}
+
+	/**
+	 * Adds the value for the days from start up to but not including end
+	 * @param start the epoch day the period starts on
+	 * @param end the epoch day after the period ends
+	 * @param value the value to add
+	 * @return true if it was added, false if the value is already in the index
+	 */
+	public boolean add(long start, long end, T value) {
+		if (this.nodes.containsKey(value)) {
+			return false;
+		}
+		Node<T> node = new Node<T>();
+		node.start = start;
+		node.end = end;
+		node.maxEnd = end;
+		node.id = this.nextId++;
+		node.priority = this.random.nextInt();
+		node.value = value;
+		Node<T>[] parts = this.split(this.root, start, node.id);
+		this.root = this.merge(this.merge(parts[0], node), parts[1]);
+		this.nodes.put(value, node);
+		return true;
+	}
+
+	/**
+	 * Removes the value from the index
+	 * @param value the value to remove
+	 * @return true if it was removed, false if it wasn't in the index
+	 */
+	public boolean remove(T value) {
+		Node<T> node = this.nodes.remove(value);
+		if (node == null) {
+			return false;
+		}
+		Node<T>[] before = this.split(this.root, node.start, node.id);
+		Node<T>[] after = this.split(before[1], node.start, node.id + 1);
+		this.root = this.merge(before[0], after[1]);
+		return true;
+	}
+
+	/**
+	 * Finds every value whose period overlaps the days from from up to but not including to
+	 * @param from the first epoch day of the period
+	 * @param to the epoch day after the period
+	 * @return the values overlapping the period, in order of start day
+	 */
+	public ArrayList<T> overlapping(long from, long to) {
+		ArrayList<T> found = new ArrayList<T>();
+		this.collect(this.root, from, to, found);
+		return found;
+	}
+
+	/**
+	 * Finds every value whose period overlaps the days from from up to but not including to
+	 * @param from the first day of the period
+	 * @param to the day after the period
+	 * @return the values overlapping the period, in order of start day
+	 */
+	public ArrayList<T> overlapping(LocalDate from, LocalDate to) {
+		return this.overlapping(from.toEpochDay(), to.toEpochDay());
+	}
+
+	/**
+	 * Returns the number of values in the index
+	 * @return the number of values
+	 */
+	public int size() {
+		return this.nodes.size();
+	}
+
+	/*
+	 * Adds the values of the subtree overlapping [from, to) to found in order
+	 *
+	 * @param node the root of the subtree
+	 *
+	 * @param from the first epoch day of the period
+	 *
+	 * @param to the epoch day after the period
+	 *
+	 * @param found the list to add to
+	 */
+	private void collect(Node<T> node, long from, long to, ArrayList<T> found) {
+		if (node == null || node.maxEnd <= from) {
+			return; // everything below ends before the period starts
+		}
+		this.collect(node.left, from, to, found);
+		if (node.start < to) {
+			if (node.end > from) {
+				found.add(node.value);
+			}
+			this.collect(node.right, from, to, found); // nodes on the right start later so only look if this one starts in time
+		}
+	}
+
+	/*
+	 * Splits the subtree into the nodes ordered before (start, id) and the rest
+	 *
+	 * @param node the root of the subtree
+	 *
+	 * @param start the start day to split at
+	 *
+	 * @param id the id to split at among nodes starting on that day
+	 *
+	 * @return the two subtrees, before and from the split
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private Node<T>[] split(Node<T> node, long start, long id) {
+		if (node == null) {
+			return new Node[2];
+		}
+		if (node.start < start || (node.start == start && node.id < id)) {
+			Node<T>[] parts = this.split(node.right, start, id);
+			node.right = parts[0];
+			this.update(node);
+			parts[0] = node;
+			return parts;
+		} else {
+			Node<T>[] parts = this.split(node.left, start, id);
+			node.left = parts[1];
+			this.update(node);
+			parts[1] = node;
+			return parts;
+		}
+	}
+
+	/*
+	 * Joins two subtrees where every node of left is ordered before every node of right
+	 *
+	 * @param left the first subtree
+	 *
+	 * @param right the second subtree
+	 *
+	 * @return the root of the joined tree
+	 */
+	private Node<T> merge(Node<T> left, Node<T> right) {
+		if (left == null) {
+			return right;
+		} else if (right == null) {
+			return left;
+		} else if (left.priority > right.priority) {
+			left.right = this.merge(left.right, right);
+			this.update(left);
+			return left;
+		} else {
+			right.left = this.merge(left, right.left);
+			this.update(right);
+			return right;
+		}
+	}
+
+	/*
+	 * Recalculates the latest end below the node after its children changed
+	 *
+	 * @param node the node to update
+	 */
+	private void update(Node<T> node) {
+		long maxEnd = node.end;
+		if (node.left != null && node.left.maxEnd > maxEnd) {
+			maxEnd = node.left.maxEnd;
+		}
+		if (node.right != null && node.right.maxEnd > maxEnd) {
+			maxEnd = node.right.maxEnd;
+		}
+		node.maxEnd = maxEnd;
+	}
+}
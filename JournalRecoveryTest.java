@@ -0,0 +1,165 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A test of the recovery of the BookingJournal. The same changes are made to copies of the data folder, once closing
+ * the system normally to give the state the csv files should hold, and otherwise stopping the JVM dead with
+ * Runtime.halt once the journal has been forced to disk. Each crashed copy is then damaged the way a crash could
+ * damage it and reloaded, and must come back with the same bookings as the copy that was closed. Run with
+ * "java JournalRecoveryTest" from the folder holding data
+ */
+public class JournalRecoveryTest {
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0) {
+			makeChanges(args[0].equals("crash"));
+			return;
+		}
+		File reference = TestSupport.copyOfData();
+		TestSupport.check(TestSupport.runJava(reference, "JournalRecoveryTest", "close") == 0, "the changes are made and closed");
+		String expected = TestSupport.csvStateOf(reference);
+		TestSupport.check(expected.contains("Cancellation 3-star") && expected.contains("Reservation name: Cy Test")
+				&& expected.contains("Reservation name: Ed Test"), "the csv files hold the changes made");
+		TestSupport.delete(reference);
+
+		File crashed = crashedCopy();
+		TestSupport.check(journal(crashed).length() > 0, "the crash leaves the changes in the journal");
+		TestSupport.check(stateOf(crashed).equals(expected), "replaying the journal after a crash gives the bookings of a clean close");
+		TestSupport.check(TestSupport.csvStateOf(crashed).equals(expected), "the replayed bookings are written to the csv files");
+		TestSupport.delete(crashed);
+
+		checkTornRecord(expected);
+		checkPartlyCompacted(expected, false);
+		checkPartlyCompacted(expected, true);
+		checkMalformedRecord();
+		TestSupport.finish();
+	}
+
+	/*
+	 * Makes the changes in the copy of data the JVM was started in and either closes the system or forces the journal
+	 * to disk and stops the JVM dead
+	 *
+	 * @param crash true to stop the JVM without closing the system
+	 */
+	private static void makeChanges(boolean crash) {
+		BookingSystem system = new BookingSystem();
+		TestSupport.makeChanges(system);
+		if (crash) {
+			system.sync();
+			Runtime.getRuntime().halt(0);
+		}
+		system.close();
+	}
+
+	/*
+	 * Checks a record only partly written when the system stopped is dropped from the journal and the rest replayed
+	 *
+	 * @param expected the bookings the closed copy holds
+	 */
+	private static void checkTornRecord(String expected) throws Exception {
+		File torn = crashedCopy();
+		Files.write(journal(torn).toPath(), "Reservations,+,5-star,2000,Torn Test,S".getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.APPEND);
+		BookingSystem system = new BookingSystem(torn.getPath());
+		try {
+			TestSupport.check(TestSupport.stateOf(system).equals(expected), "the records before a torn last record are replayed");
+			String records = new String(Files.readAllBytes(journal(torn).toPath()), StandardCharsets.UTF_8);
+			TestSupport.check(!records.contains("Torn Test") && (records.isEmpty() || records.endsWith("\n")),
+					"the torn last record is cut off the journal");
+		} finally {
+			system.close();
+		}
+		TestSupport.delete(torn);
+	}
+
+	/*
+	 * Checks the journal can be replayed again over csv files it was already written to, as when the system stops
+	 * after compacting the journal into the csv files but before emptying it
+	 *
+	 * @param expected the bookings the closed copy holds
+	 *
+	 * @param partly true if only reservations.csv was rewritten before the system stopped, false if every csv file
+	 *        and the snapshot were
+	 */
+	private static void checkPartlyCompacted(String expected, boolean partly) throws Exception {
+		File compacted = crashedCopy();
+		File bookingInfo = new File(compacted, "data/bookingInfo");
+		byte[] records = Files.readAllBytes(journal(compacted).toPath());
+		byte[] cancellations = Files.readAllBytes(new File(bookingInfo, "cancellations.csv").toPath());
+		byte[] stays = Files.readAllBytes(new File(bookingInfo, "stays.csv").toPath());
+		new BookingSystem(compacted.getPath()).close(); // replays the journal into the csv files and empties it
+		Files.write(journal(compacted).toPath(), records);
+		if (partly) {
+			Files.write(new File(bookingInfo, "cancellations.csv").toPath(), cancellations);
+			Files.write(new File(bookingInfo, "stays.csv").toPath(), stays);
+		}
+		TestSupport.check(stateOf(compacted).equals(expected), "replaying the journal again over "
+				+ (partly ? "some of the csv files" : "the csv files and snapshot") + " it was written to changes nothing");
+		TestSupport.delete(compacted);
+	}
+
+	/*
+	 * Checks a complete record that can't be applied stops the system from starting and leaves the journal alone, so
+	 * the changes after it are not lost
+	 */
+	private static void checkMalformedRecord() throws Exception {
+		File malformed = crashedCopy();
+		String records = new String(Files.readAllBytes(journal(malformed).toPath()), StandardCharsets.UTF_8);
+		byte[] damaged = records.replaceFirst("\n", "\nReservations,+,5-star,not a number\n").getBytes(StandardCharsets.UTF_8);
+		Files.write(journal(malformed).toPath(), damaged);
+		boolean started;
+		try {
+			new BookingSystem(malformed.getPath()).close();
+			started = true;
+		} catch (IllegalStateException e) {
+			started = false;
+		}
+		TestSupport.check(!started, "a malformed record in the middle of the journal stops the system starting");
+		TestSupport.check(Arrays.equals(Files.readAllBytes(journal(malformed).toPath()), damaged),
+				"the journal is left as it was for the malformed record to be fixed");
+		TestSupport.delete(malformed);
+	}
+
+	/*
+	 * Makes the changes in a new copy of data and stops the JVM dead once the journal has been forced
+	 *
+	 * @return the directory holding the copy
+	 */
+	private static File crashedCopy() throws IOException, InterruptedException {
+		File crashed = TestSupport.copyOfData();
+		if (TestSupport.runJava(crashed, "JournalRecoveryTest", "crash") != 0) {
+			throw new IOException("The changes could not be made in " + crashed);
+		}
+		return crashed;
+	}
+
+	/*
+	 * Loads the system of a copy of data as it would be started after a crash and describes it
+	 *
+	 * @param directory the directory holding the copy
+	 *
+	 * @return the description of its bookings
+	 */
+	private static String stateOf(File directory) {
+		BookingSystem system = new BookingSystem(directory.getPath());
+		try {
+			return TestSupport.stateOf(system);
+		} finally {
+			system.close();
+		}
+	}
+
+	/*
+	 * Finds the journal of a copy of data
+	 *
+	 * @param directory the directory holding the copy
+	 *
+	 * @return the journal file
+	 */
+	private static File journal(File directory) {
+		return new File(directory, "data/bookingInfo/journal.log");
+	}
+}
@@ -1,5 +1,82 @@
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 public class L4System {
 	public static void main(String[] args) {
-		new TextUI().run();
+		if (args.length > 0 && args[0].equals("server")) {
+			runServer(args.length > 1 ? Integer.parseInt(args[1]) : 8080,
+					args.length > 2 ? args[2] : System.getProperty("user.dir"));
+		} else if (args.length > 2 && args[0].equals("router")) {
+			ArrayList<URI> shards = new ArrayList<URI>();
+			for (int i = 2; i < args.length; i++) {
+				shards.add(URI.create(args[i]));
+			}
+			runRouter(Integer.parseInt(args[1]), shards);
+		} else {
+			new TextUI().run();
+		}
 	}
-}
\ No newline at end of file
+
+	/*
+	 * Serves the booking system over HTTP until the JVM is stopped, writing the
+	 * journal to the csv files on the way out. No-shows are swept in the
+	 * background every hour, which only does any work on the first sweep of a day,
+	 * old stays are archived once a day and the latencies of the hot paths are
+	 * printed every quarter of an hour. Run as a shard of the chain, each server
+	 * is given its own directory holding the data folder of its hotels
+	 * 
+	 * @param port the port to listen on
+	 * 
+	 * @param directory the directory holding the data folder
+	 */
+	private static void runServer(int port, String directory) {
+		BookingSystem system = new BookingSystem(directory);
+		try {
+			BookingServer server = new BookingServer(system, port);
+			ScheduledExecutorService background = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "booking-background");
+				thread.setDaemon(true);
+				return thread;
+			});
+			background.scheduleWithFixedDelay(system::sweepNoShows, 0, 1, TimeUnit.HOURS);
+			background.scheduleWithFixedDelay(system::archiveStays, 1, 1, TimeUnit.DAYS);
+			background.scheduleAtFixedRate(() -> System.out.println(Metrics.dump()), 15, 15, TimeUnit.MINUTES);
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				background.shutdown();
+				server.stop(1);
+				system.close();
+				System.out.println(Metrics.dump());
+			}));
+			server.start();
+			System.out.println("Serving bookings on port " + server.getPort());
+		} catch (IOException e) {
+			e.printStackTrace();
+			system.close();
+		}
+	}
+
+	/*
+	 * Routes the requests for each hotel to the shard owning it until the JVM is
+	 * stopped. The shards must be running first, as they are asked for their
+	 * hotels on start up
+	 * 
+	 * @param port the port to listen on
+	 * 
+	 * @param shards the base URI of each shard, e.g. http://localhost:8081
+	 */
+	private static void runRouter(int port, ArrayList<URI> shards) {
+		try {
+			ShardRouter router = new ShardRouter(shards, port);
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> router.stop(1)));
+			router.start();
+			System.out.println("Routing " + router.getOwners().size() + " hotels to " + shards.size() + " shards on port "
+					+ router.getPort());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,146 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A class to count the runs of an operation and how long each took. Like an HdrHistogram, times are counted in
+ * buckets which are exact below 32ns and then split each power of two into 16, so any time is known to within about 6%
+ * from a fixed array of counts however many runs are recorded. Recording is lock free, so it can be left on in the hot
+ * paths of the system
+ */
+public class LatencyHistogram implements LatencyHistogramMXBean {
+	private static final int SUB_BUCKETS = 16; //Buckets per power of two above the exact buckets
+	private static final int EXACT = 2 * SUB_BUCKETS; //Times below this are counted exactly
+	private static final int BUCKETS = (Long.SIZE - 5) * SUB_BUCKETS + EXACT;
+
+	private String operation;
+	private AtomicLongArray counts; //counts[bucket] = the runs whose time in nanoseconds fell in that bucket
+	private LongAdder count;
+	private LongAdder total; //The sum of every time in nanoseconds
+	private LongAccumulator max;
+
+	/**
+	 * Creates an empty LatencyHistogram for an operation
+	 * @param operation the name of the operation
+	 */
+	public LatencyHistogram(String operation) {
+		this.operation = operation;
+		this.counts = new AtomicLongArray(BUCKETS);
+		this.count = new LongAdder();
+		this.total = new LongAdder();
+		this.max = new LongAccumulator(Long::max, 0);
+	}
+
+	/*
+	 * Finds the bucket of a time
+	 *
+	 * @param nanos the time in nanoseconds, at least 0
+	 *
+	 * @return the bucket
+	 */
+	private static int bucketOf(long nanos) {
+		if (nanos < EXACT) {
+			return (int) nanos;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(nanos) - 4; //keeps the top 5 bits, 16 to 31
+		return shift * SUB_BUCKETS + (int) (nanos >>> shift);
+	}
+
+	/*
+	 * Returns the highest time counted in a bucket
+	 *
+	 * @param bucket the bucket
+	 *
+	 * @return the time in nanoseconds
+	 */
+	private static long highestIn(int bucket) {
+		if (bucket < EXACT) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long top = bucket % SUB_BUCKETS + SUB_BUCKETS;
+		return ((top + 1) << shift) - 1;
+	}
+
+	/**
+	 * Records a run of the operation
+	 * @param nanos the time it took in nanoseconds
+	 */
+	public void record(long nanos) {
+		nanos = Math.max(nanos, 0);
+		this.counts.incrementAndGet(bucketOf(nanos));
+		this.count.increment();
+		this.total.add(nanos);
+		this.max.accumulate(nanos);
+	}
+
+	/**
+	 * Records a run of the operation which started at the given time, e.g. from a finally block
+	 * @param startNanos the value of System.nanoTime() when the run started
+	 */
+	public void recordSince(long startNanos) {
+		this.record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Returns the name of the operation
+	 * @return the name
+	 */
+	public String getOperation() {
+		return this.operation;
+	}
+
+	/**
+	 * Returns the time a given percentage of the runs finished within
+	 * @param percentile the percentage of runs, e.g. 99.9
+	 * @return the time in nanoseconds, 0 if nothing has been recorded
+	 */
+	public long percentile(double percentile) {
+		long[] snapshot = new long[BUCKETS];
+		long recorded = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = this.counts.get(i);
+			recorded += snapshot[i];
+		}
+		long target = Math.max(1, (long) Math.ceil(percentile / 100 * recorded));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= target) {
+				return Math.min(highestIn(i), this.max.get());
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public long getCount() {
+		return this.count.sum();
+	}
+
+	@Override
+	public double getMeanMicros() {
+		long runs = this.count.sum();
+		return runs == 0 ? 0 : this.total.sum() / (double) runs / 1000;
+	}
+
+	@Override
+	public double getP50Micros() {
+		return this.percentile(50) / 1000.0;
+	}
+
+	@Override
+	public double getP99Micros() {
+		return this.percentile(99) / 1000.0;
+	}
+
+	@Override
+	public double getP999Micros() {
+		return this.percentile(99.9) / 1000.0;
+	}
+
+	@Override
+	public double getMaxMicros() {
+		return this.max.get() / 1000.0;
+	}
+}
@@ -0,0 +1,40 @@
+/**
+ * The view of a LatencyHistogram published over JMX, with every time in microseconds
+ */
+public interface LatencyHistogramMXBean {
+	/**
+	 * Returns the number of times the operation has run
+	 * @return the count
+	 */
+	public abstract long getCount();
+
+	/**
+	 * Returns the mean time the operation took
+	 * @return the mean in microseconds
+	 */
+	public abstract double getMeanMicros();
+
+	/**
+	 * Returns the time half of the runs of the operation finished within
+	 * @return the median in microseconds
+	 */
+	public abstract double getP50Micros();
+
+	/**
+	 * Returns the time 99% of the runs of the operation finished within
+	 * @return the 99th percentile in microseconds
+	 */
+	public abstract double getP99Micros();
+
+	/**
+	 * Returns the time 99.9% of the runs of the operation finished within
+	 * @return the 99.9th percentile in microseconds
+	 */
+	public abstract double getP999Micros();
+
+	/**
+	 * Returns the longest time the operation took
+	 * @return the maximum in microseconds
+	 */
+	public abstract double getMaxMicros();
+}
@@ -0,0 +1,62 @@
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * A class to hold the latency histogram of every instrumented operation of the system. Each histogram is published
+ * as an MXBean named HotelBooking:type=Operation,name=operation, so it can be watched with jconsole or any JMX client,
+ * and all of them can be dumped as a text table
+ */
+public class Metrics {
+	private static final String DOMAIN = "HotelBooking";
+
+	private static ConcurrentSkipListMap<String, LatencyHistogram> operations = new ConcurrentSkipListMap<String, LatencyHistogram>();
+
+	/**
+	 * Returns the histogram of an operation, creating and publishing it the first time it is asked for. Callers are
+	 * expected to keep the histogram, e.g. in a static field, rather than look it up on every run
+	 * @param operation the name of the operation, e.g. BookingSystem.addReservation
+	 * @return the histogram
+	 */
+	public static LatencyHistogram histogram(String operation) {
+		return operations.computeIfAbsent(operation, name -> {
+			LatencyHistogram histogram = new LatencyHistogram(name);
+			try {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(histogram,
+						new ObjectName(DOMAIN + ":type=Operation,name=" + name));
+			} catch (JMException e) {
+				e.printStackTrace();
+			}
+			return histogram;
+		});
+	}
+
+	/**
+	 * Returns every operation and its histogram
+	 * @return the histograms by operation name, in order of name
+	 */
+	public static Map<String, LatencyHistogram> getHistograms() {
+		return operations;
+	}
+
+	/**
+	 * Formats the count and latencies of every operation which has run as a text table
+	 * @return the table, one line per operation
+	 */
+	public static String dump() {
+		String format = "%-40s %10s %12s %12s %12s %12s %12s";
+		StringBuilder table = new StringBuilder(String.format(format, "Operation", "count", "mean us", "p50 us", "p99 us",
+				"p99.9 us", "max us"));
+		for (LatencyHistogram h : operations.values()) {
+			if (h.getCount() > 0) {
+				table.append(System.lineSeparator());
+				table.append(String.format("%-40s %10d %12.1f %12.1f %12.1f %12.1f %12.1f", h.getOperation(), h.getCount(),
+						h.getMeanMicros(), h.getP50Micros(), h.getP99Micros(), h.getP999Micros(), h.getMaxMicros()));
+			}
+		}
+		return table.toString();
+	}
+}
@@ -0,0 +1,75 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * A class with tools for working with amounts of money held as a whole number of cents in a long, so that prices can
+ * be added up and discounted exactly. Amounts are only turned into text, or read back from it, at the edges of the
+ * system such as the csv files and the screen
+ */
+public class Money {
+	/**
+	 * Converts an amount in dollars to cents, rounding half up to the nearest cent in the same way as "%.02f" and
+	 * CsvWriter.writeFixed. The shortest decimal that reads back as the amount is rounded rather than its exact binary
+	 * value, so 1.005 is 101 cents
+	 * @param amount the amount in dollars
+	 * @return the amount in cents
+	 */
+	public static long cents(double amount) {
+		return BigDecimal.valueOf(amount).setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue();
+	}
+
+	/**
+	 * Converts an amount in cents to dollars, for places that still need a double such as averages
+	 * @param cents the amount in cents
+	 * @return the amount in dollars
+	 */
+	public static double dollars(long cents) {
+		return cents / 100.0;
+	}
+
+	/**
+	 * Takes a fraction off an amount, rounding the amount left half up to the nearest cent
+	 * @param cents the amount in cents
+	 * @param fraction the fraction to take off, e.g. 0.05 for 5%
+	 * @return the discounted amount in cents
+	 */
+	public static long discount(long cents, double fraction) {
+		BigDecimal remaining = BigDecimal.ONE.subtract(BigDecimal.valueOf(fraction));
+		return BigDecimal.valueOf(cents).multiply(remaining).setScale(0, RoundingMode.HALF_UP).longValue();
+	}
+
+	/**
+	 * Formats an amount as dollars and cents without the dollar sign, e.g. 56250 as 562.50
+	 * @param cents the amount in cents
+	 * @return the formatted amount
+	 */
+	public static String toDecimal(long cents) {
+		long whole = Math.abs(cents / 100);
+		long part = Math.abs(cents % 100);
+		return (cents < 0 ? "-" : "") + whole + (part < 10 ? ".0" : ".") + part;
+	}
+
+	/**
+	 * Formats an amount as it is written to the csv files and the screen, e.g. 56250 as $562.50
+	 * @param cents the amount in cents
+	 * @return the formatted amount
+	 */
+	public static String format(long cents) {
+		return "$" + toDecimal(cents);
+	}
+
+	/**
+	 * Reads an amount written by format, or any decimal amount with an optional leading dollar sign, without going
+	 * through a double
+	 * @param amount the amount, e.g. $562.50
+	 * @return the amount in cents
+	 * @throws NumberFormatException if the amount is not a number
+	 */
+	public static long parse(String amount) {
+		String value = amount.trim();
+		if (value.startsWith("$")) {
+			value = value.substring(1);
+		}
+		return new BigDecimal(value).setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue();
+	}
+}
@@ -0,0 +1,67 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A class to keep track of the reservations of a single hotel which are still waiting for their guests to arrive,
+ * bucketed by check-in day, so that the no-shows can be found without looking at any other reservation
+ */
+public class NoShowSweeper {
+	private TreeMap<Long, ArrayList<Reservation>> arrivals; //Maps each check-in epoch day to the reservations not yet checked in on it
+	private long lastSweep; //The epoch day of the last sweep
+
+	/**
+	 * Creates an empty NoShowSweeper which has never swept
+	 */
+	public NoShowSweeper() {
+		this.arrivals = new TreeMap<Long, ArrayList<Reservation>>();
+		this.lastSweep = Long.MIN_VALUE;
+	}
+
+	/**
+	 * Adds a reservation whose guests are expected on its check-in date
+	 * @param reservation the reservation
+	 */
+	public void expect(Reservation reservation) {
+		long day = reservation.getCheckinDate().toEpochDay();
+		ArrayList<Reservation> bucket = this.arrivals.get(day);
+		if (bucket == null) {
+			bucket = new ArrayList<Reservation>();
+			this.arrivals.put(day, bucket);
+		}
+		bucket.add(reservation);
+	}
+
+	/**
+	 * Stops expecting a reservation, because its guests have checked in or it has been removed
+	 * @param reservation the reservation
+	 */
+	public void forget(Reservation reservation) {
+		long day = reservation.getCheckinDate().toEpochDay();
+		ArrayList<Reservation> bucket = this.arrivals.get(day);
+		if (bucket != null && bucket.remove(reservation) && bucket.isEmpty()) {
+			this.arrivals.remove(day);
+		}
+	}
+
+	/**
+	 * Takes out every reservation whose check-in date is before today and whose guests never arrived. Only the first
+	 * sweep of each day looks for no-shows, later sweeps on the same day find none
+	 * @param today the current date
+	 * @return the no-shows, in order of check-in date
+	 */
+	public ArrayList<Reservation> sweep(LocalDate today) {
+		ArrayList<Reservation> noShows = new ArrayList<Reservation>();
+		long day = today.toEpochDay();
+		if (day <= this.lastSweep) {
+			return noShows;
+		}
+		this.lastSweep = day;
+		Map.Entry<Long, ArrayList<Reservation>> first;
+		while ((first = this.arrivals.firstEntry()) != null && first.getKey() < day) {
+			noShows.addAll(this.arrivals.pollFirstEntry().getValue());
+		}
+		return noShows;
+	}
+}
@@ -0,0 +1,261 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A class to hold the income, occupants and rooms booked of each room type of a hotel on each day of a date period.
+ * It is filled in a single pass over the hotel stays, or from the running totals of a RevenueCube, and every figure
+ * of the data analysis is derived from it
+ */
+public class OccupancyMatrix {
+	private LocalDate start;
+	private long startDay; //epoch day of column 0
+	private int numberOfDays;
+	private TreeMap<Room, Integer> roomIndexes; //Maps each room type to its row
+	private ArrayList<long[]> income; //income.get(room)[day] = the income in cents from rooms of that type on that day
+	private ArrayList<int[]> occupants; //occupants.get(room)[day] = the people staying in rooms of that type on that day
+	private ArrayList<int[]> roomsBooked; //roomsBooked.get(room)[day] = the rooms of that type booked on that day
+	private int[] bookings; //bookings[room] = the room bookings of that type which overlap the period, grown as rows are added
+
+	/**
+	 * Creates an empty OccupancyMatrix for the days from start up to but not including end, or just start if the two
+	 * dates are equal
+	 * @param start the start date of the period
+	 * @param end the end date of the period
+	 */
+	public OccupancyMatrix(LocalDate start, LocalDate end) {
+		this.start = start;
+		this.startDay = start.toEpochDay();
+		this.numberOfDays = start.equals(end) ? 1 : (int)(end.toEpochDay() - this.startDay);
+		this.roomIndexes = new TreeMap<Room, Integer>();
+		this.income = new ArrayList<long[]>();
+		this.occupants = new ArrayList<int[]>();
+		this.roomsBooked = new ArrayList<int[]>();
+		this.bookings = new int[8];
+	}
+
+	/*
+	 * Returns the row of the room, adding a new empty row if the room has not been seen yet
+	 *
+	 * @param room the room
+	 *
+	 * @return the row index of the room
+	 */
+	private int rowOf(Room room) {
+		Integer index = this.roomIndexes.get(room);
+		if (index == null) {
+			index = this.income.size();
+			this.roomIndexes.put(room, index);
+			this.income.add(new long[this.numberOfDays]);
+			this.occupants.add(new int[this.numberOfDays]);
+			this.roomsBooked.add(new int[this.numberOfDays]);
+			if (index == this.bookings.length) {
+				this.bookings = Arrays.copyOf(this.bookings, index * 2);
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Adds every room booked in the stay to each day of the period the stay covers
+	 * @param stay the hotel stay to add
+	 */
+	public void add(HotelStay stay) {
+		Reservation r = stay.getReservation();
+		for (RoomBooking rb : r.getRooms()) {
+			this.add(rb.getRoom(), r.getCheckinDate().toEpochDay(), r.getNumberOfNights(),
+					rb.getOccupancy()[0] + rb.getOccupancy()[1]);
+		}
+	}
+
+	/**
+	 * Adds the room booking the cursor is on to each day of the period it covers
+	 * @param archived the cursor over the archived stays
+	 */
+	public void add(StayArchive.Cursor archived) {
+		this.add(archived.getRoom(), archived.getCheckinDay(), archived.getNights(),
+				archived.getAdults() + archived.getChildren());
+	}
+
+	/*
+	 * Adds a single room booking to each day of the period it covers
+	 *
+	 * @param room the room booked
+	 *
+	 * @param checkin the epoch day of the first night
+	 *
+	 * @param nights the number of nights
+	 *
+	 * @param people the number of people staying in the room
+	 */
+	private void add(Room room, long checkin, int nights, int people) {
+		int from = (int)Math.max(checkin - this.startDay, 0);
+		int to = (int)Math.min(checkin + nights - this.startDay, this.numberOfDays);
+		if (from >= to) {
+			return; //the booking doesn't overlap the period
+		}
+		RateCalendar calendar = room.getCalendar();
+		int row = this.rowOf(room);
+		long[] roomIncome = this.income.get(row);
+		int[] roomOccupants = this.occupants.get(row);
+		int[] roomCount = this.roomsBooked.get(row);
+		for (int day = from; day < to; day++) {
+			roomIncome[day] += calendar.nightly(this.startDay + day);
+			roomOccupants[day] += people;
+			roomCount[day]++;
+		}
+		this.bookings[row]++;
+	}
+
+	/**
+	 * Adds figures already totalled elsewhere, e.g. in a RevenueCube, to a single day of a room type
+	 * @param room the room type
+	 * @param day the column of the day
+	 * @param income the income in cents to add
+	 * @param occupants the number of occupants to add
+	 * @param rooms the number of rooms booked to add
+	 */
+	public void add(Room room, int day, long income, int occupants, int rooms) {
+		int row = this.rowOf(room);
+		this.income.get(row)[day] += income;
+		this.occupants.get(row)[day] += occupants;
+		this.roomsBooked.get(row)[day] += rooms;
+	}
+
+	/**
+	 * Adds to the number of room bookings of a room type which overlap the period
+	 * @param room the room type
+	 * @param bookings the number of room bookings to add
+	 */
+	public void addBookings(Room room, int bookings) {
+		int row = this.rowOf(room);
+		this.bookings[row] += bookings;
+	}
+
+	/**
+	 * Adds every stay in the collection
+	 * @param stays the hotel stays to add, can be null
+	 */
+	public void addAll(Collection<HotelStay> stays) {
+		if (stays != null) {
+			for (HotelStay stay : stays) {
+				this.add(stay);
+			}
+		}
+	}
+
+	/**
+	 * Adds the figures of another matrix over the same period to this one, so that stays can be split up, added to
+	 * separate matrices and combined afterwards
+	 * @param other the matrix to add, must cover the same period as this matrix
+	 */
+	public void merge(OccupancyMatrix other) {
+		if (other.startDay != this.startDay || other.numberOfDays != this.numberOfDays) {
+			throw new IllegalArgumentException("The matrices cover different periods");
+		}
+		for (Map.Entry<Room, Integer> e : other.roomIndexes.entrySet()) {
+			int row = this.rowOf(e.getKey());
+			int otherRow = e.getValue();
+			long[] roomIncome = this.income.get(row);
+			int[] roomOccupants = this.occupants.get(row);
+			int[] roomCount = this.roomsBooked.get(row);
+			long[] otherIncome = other.income.get(otherRow);
+			int[] otherOccupants = other.occupants.get(otherRow);
+			int[] otherCount = other.roomsBooked.get(otherRow);
+			for (int day = 0; day < this.numberOfDays; day++) {
+				roomIncome[day] += otherIncome[day];
+				roomOccupants[day] += otherOccupants[day];
+				roomCount[day] += otherCount[day];
+			}
+			this.bookings[row] += other.bookings[otherRow];
+		}
+	}
+
+	/**
+	 * Returns the column of the date in this matrix
+	 * @param date the date
+	 * @return the column of the date, or -1 if the date is outside the period
+	 */
+	public int dayOf(LocalDate date) {
+		long day = date.toEpochDay() - this.startDay;
+		return day >= 0 && day < this.numberOfDays ? (int)day : -1;
+	}
+
+	/**
+	 * Gets the rooms that were booked at some point in the period, in the order of the rooms
+	 * @return the rooms mapped to their row in the matrix
+	 */
+	public TreeMap<Room, Integer> getRooms() {
+		return this.roomIndexes;
+	}
+
+	/**
+	 * Gets the income from rooms of the type in the row on the day in the column
+	 * @param row the row of the room
+	 * @param day the column of the day
+	 * @return the income in cents
+	 */
+	public long getIncome(int row, int day) {
+		return this.income.get(row)[day];
+	}
+
+	/**
+	 * Gets the number of people staying in rooms of the type in the row on the day in the column
+	 * @param row the row of the room
+	 * @param day the column of the day
+	 * @return the number of occupants
+	 */
+	public int getOccupants(int row, int day) {
+		return this.occupants.get(row)[day];
+	}
+
+	/**
+	 * Gets the number of rooms of the type in the row booked on the day in the column
+	 * @param row the row of the room
+	 * @param day the column of the day
+	 * @return the number of rooms booked
+	 */
+	public int getRoomsBooked(int row, int day) {
+		return this.roomsBooked.get(row)[day];
+	}
+
+	/**
+	 * Gets the number of room bookings of the type in the row that overlap the period
+	 * @param row the row of the room
+	 * @return the number of room bookings
+	 */
+	public int getBookings(int row) {
+		return this.bookings[row];
+	}
+
+	/**
+	 * Gets the number of room bookings of each room type that overlap the period
+	 * @return a TreeMap of each room mapped to its number of bookings
+	 */
+	public TreeMap<Room, Integer> getBookingCounts() {
+		TreeMap<Room, Integer> counts = new TreeMap<Room, Integer>();
+		for (Map.Entry<Room, Integer> e : this.roomIndexes.entrySet()) {
+			counts.put(e.getKey(), this.bookings[e.getValue()]);
+		}
+		return counts;
+	}
+
+	/**
+	 * Gets the start date of the period
+	 * @return the date of column 0
+	 */
+	public LocalDate getStart() {
+		return this.start;
+	}
+
+	/**
+	 * Gets the number of days in the period
+	 * @return the number of columns
+	 */
+	public int getNumberOfDays() {
+		return this.numberOfDays;
+	}
+}
@@ -0,0 +1,171 @@
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A class to price the nights of a single room type. The weekly rates are held as prefix sums over the days of the
+ * week, so the price of any number of nights is found from the number of whole weeks and one partial week without
+ * walking the dates. Prices for particular dates, e.g. for a season or an event, can be set on top of the weekly rates
+ * and are held as prefix sums of their difference from the weekly rate, so they only add a binary search to a quote
+ */
+public class RateCalendar {
+	private static final int EPOCH_DAY_OF_WEEK = 3; //1970-01-01, epoch day 0, was a Thursday
+
+	private long[] rates; //rates[day] = the price in cents of a night on that day of the week, 0 = Monday
+	private long[] weekPrefix; //weekPrefix[day] = the price in cents of the nights from Monday up to but not including day
+	private TreeMap<Long, Long> overrides; //Maps each epoch day with its own price to that price in cents
+	private volatile Overrides lookup; //The overrides as arrays, replaced whenever an override changes
+
+	/*
+	 * The overrides sorted by day, with the running total of their difference from the weekly rate
+	 */
+	private static class Overrides {
+		private long[] days; //the epoch days with their own price, in order
+		private long[] prefix; //prefix[i] = the total difference from the weekly rate of the first i days
+		private long[] differences; //differences[i] = the difference from the weekly rate on days[i]
+	}
+
+	/**
+	 * Creates a RateCalendar for the weekly rates of a room
+	 * @param rates the rates in whole dollars, with index 0 representing monday rates, index 1 representing tuesday and so on
+	 */
+	public RateCalendar(int[] rates) {
+		this.rates = new long[7];
+		this.weekPrefix = new long[8];
+		for (int day = 0; day < 7; day++) {
+			this.rates[day] = day < rates.length ? rates[day] * 100L : 0;
+			this.weekPrefix[day + 1] = this.weekPrefix[day] + this.rates[day];
+		}
+		this.overrides = new TreeMap<Long, Long>();
+		this.lookup = build(this.overrides, this.rates);
+	}
+
+	/*
+	 * Returns the day of the week of an epoch day
+	 *
+	 * @param epochDay the epoch day
+	 *
+	 * @return 0 for Monday, 1 for Tuesday etc
+	 */
+	private static int dayOfWeek(long epochDay) {
+		return (int) Math.floorMod(epochDay + EPOCH_DAY_OF_WEEK, 7L);
+	}
+
+	/*
+	 * Builds the arrays of the overrides
+	 *
+	 * @param overrides the price of each day with its own price
+	 *
+	 * @param rates the weekly rates
+	 *
+	 * @return the arrays
+	 */
+	private static Overrides build(TreeMap<Long, Long> overrides, long[] rates) {
+		Overrides built = new Overrides();
+		built.days = new long[overrides.size()];
+		built.differences = new long[overrides.size()];
+		built.prefix = new long[overrides.size() + 1];
+		int i = 0;
+		for (Map.Entry<Long, Long> e : overrides.entrySet()) {
+			built.days[i] = e.getKey();
+			built.differences[i] = e.getValue() - rates[dayOfWeek(e.getKey())];
+			built.prefix[i + 1] = built.prefix[i] + built.differences[i];
+			i++;
+		}
+		return built;
+	}
+
+	/**
+	 * Sets the price of a night on the given date, replacing the weekly rate for that date
+	 * @param date the date of the night
+	 * @param rate the price of the night in whole dollars
+	 */
+	public synchronized void setRate(LocalDate date, int rate) {
+		this.overrides.put(date.toEpochDay(), rate * 100L);
+		this.lookup = build(this.overrides, this.rates);
+	}
+
+	/**
+	 * Sets the price of every night from first to last, both included
+	 * @param first the date of the first night
+	 * @param last the date of the last night
+	 * @param rate the price of each night in whole dollars
+	 */
+	public synchronized void setRate(LocalDate first, LocalDate last, int rate) {
+		for (long day = first.toEpochDay(); day <= last.toEpochDay(); day++) {
+			this.overrides.put(day, rate * 100L);
+		}
+		this.lookup = build(this.overrides, this.rates);
+	}
+
+	/**
+	 * Goes back to the weekly rate for the night on the given date
+	 * @param date the date of the night
+	 */
+	public synchronized void clearRate(LocalDate date) {
+		if (this.overrides.remove(date.toEpochDay()) != null) {
+			this.lookup = build(this.overrides, this.rates);
+		}
+	}
+
+	/**
+	 * Returns the price of the night on an epoch day
+	 * @param epochDay the epoch day of the night
+	 * @return the price in cents
+	 */
+	public long nightly(long epochDay) {
+		Overrides current = this.lookup;
+		int index = Arrays.binarySearch(current.days, epochDay);
+		return this.rates[dayOfWeek(epochDay)] + (index >= 0 ? current.differences[index] : 0);
+	}
+
+	/**
+	 * Returns the price of the night on a date
+	 * @param date the date of the night
+	 * @return the price in cents
+	 */
+	public long nightly(LocalDate date) {
+		return this.nightly(date.toEpochDay());
+	}
+
+	/**
+	 * Returns the price of a stay of a number of nights from the check-in date
+	 * @param checkin the date of the first night
+	 * @param nights the number of nights
+	 * @return the price in cents, 0 if there are no nights
+	 */
+	public long price(LocalDate checkin, int nights) {
+		if (nights <= 0) {
+			return 0;
+		}
+		long start = checkin.toEpochDay();
+		int first = dayOfWeek(start);
+		int rest = nights % 7;
+		long price = (nights / 7) * this.weekPrefix[7];
+		if (first + rest <= 7) {
+			price += this.weekPrefix[first + rest] - this.weekPrefix[first];
+		} else {
+			price += this.weekPrefix[7] - this.weekPrefix[first] + this.weekPrefix[first + rest - 7];
+		}
+		Overrides current = this.lookup;
+		if (current.days.length > 0) {
+			price += current.prefix[lowerBound(current.days, start + nights)] - current.prefix[lowerBound(current.days, start)];
+		}
+		return price;
+	}
+
+	/*
+	 * Finds the number of days in the sorted array before the given day
+	 *
+	 * @param days the sorted days
+	 *
+	 * @param day the day to look for
+	 *
+	 * @return the index of the first day not before day
+	 */
+	private static int lowerBound(long[] days, long day) {
+		int index = Arrays.binarySearch(days, day);
+		return index >= 0 ? index : -index - 1;
+	}
+}
@@ -1,12 +1,16 @@
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A class to represent the reservation for a hotel room(s)
  *
  */
 public class Reservation {
-	private static int lastBookingNumber = 999; //Keeps track of what the last booking number was and sets the next reservation to the one above it. Initialised as 999 so the very first reservation will have 1000 as its number
+	public static final long DEPOSIT = 7500; //The deposit charged on every reservation, in cents
+	public static final long BREAKFAST = 1400; //The cost of breakfast per person per night, in cents
+	public static final double AP_DISCOUNT = 0.05; //The discount given on the rooms of an advanced purchase
+	private static final AtomicInteger lastBookingNumber = new AtomicInteger(999); //Keeps track of what the last booking number was and sets the next reservation to the one above it. Initialised as 999 so the very first reservation will have 1000 as its number. Atomic so that reservations created at the same time never share a number
 	
 	private int number;
 	private String name;
@@ -30,7 +34,7 @@ public class Reservation {
 	 * @param rooms the rooms to add to the reservation
 	 */
 	public Reservation(String name, String type, LocalDate checkinDate, int numberOfNights, int numberOfPeople, int numberOfRooms, ArrayList<RoomBooking> rooms) {
-		this.number = ++lastBookingNumber;
+		this.number = lastBookingNumber.incrementAndGet();
 		this.name = name;
 		this.type = type;
 		this.checkinDate = checkinDate;
@@ -39,7 +43,7 @@ public class Reservation {
 		this.numberOfRooms = numberOfRooms;
 		this.rooms = rooms;
 		this.totalCost = new Bill("Total Cost", checkinDate); //For both bills choose a more suitable date
-		this.deposit = new Bill("Deposit", checkinDate, 75.00); //May change the price later
+		this.deposit = new Bill("Deposit", checkinDate, DEPOSIT); //May change the price later
 	}
 	
 	/**
@@ -63,7 +67,7 @@ public class Reservation {
 		this.numberOfRooms = numberOfRooms;
 		this.rooms = rooms;
 		this.totalCost = new Bill("Total Cost", checkinDate);
-		this.deposit = new Bill("Deposit", checkinDate, 75.00);
+		this.deposit = new Bill("Deposit", checkinDate, DEPOSIT);
 	}
 
 	/**
@@ -79,7 +83,7 @@ public class Reservation {
 	 * @param lastBookingNumber the last booking number you want to subsequent reservation to take
 	 */
 	public static void setLastBookingNumber(int lastBookingNumber) {
-		Reservation.lastBookingNumber = lastBookingNumber;
+		Reservation.lastBookingNumber.set(lastBookingNumber);
 	}
 	
 	/**
@@ -87,16 +91,17 @@ public class Reservation {
 	 * @return last booking number
 	 */
 	public static int getLastBookingNumber() {
-		return lastBookingNumber;
+		return lastBookingNumber.get();
 	}
 	
 	/*
-	 * Sets the new reservation number, particularly useful for when reading in a new reservation from data in a file
+	 * Sets the new reservation number, particularly useful for when reading in a new reservation from data in a file.
+	 * The last booking number is moved up to the number if it is below it so that new reservations never reuse it
 	 * @param number the reservation number
 	 */
 	private void setNumber(int number) {
 		this.number = number;
-		lastBookingNumber++;
+		lastBookingNumber.accumulateAndGet(number, Math::max);
 	}
 	
 	/**
@@ -171,6 +176,14 @@ public class Reservation {
 		this.totalCost.setAmountDue(amount);
 	}
 	
+	/**
+	 * Sets the total cost bill amount due to the amount specified in cents
+	 * @param amount the amount to be paid in cents
+	 */
+	public void setTotalCostCents(long amount) {
+		this.totalCost.setAmountDueCents(amount);
+	}
+	
 	/**
 	 * Sets the deposit in the deposit bill associated with this object to the amount specified
 	 * @param amount the amount to set the deposit to
@@ -179,6 +192,14 @@ public class Reservation {
 		this.deposit.setAmountDue(amount);
 	}
 	
+	/**
+	 * Sets the deposit in the deposit bill associated with this object to the amount specified in cents
+	 * @param amount the amount in cents to set the deposit to
+	 */
+	public void setDepositCents(long amount) {
+		this.deposit.setAmountDueCents(amount);
+	}
+	
 	/**
 	 * Returns the current Bill TotalCost without calculating the amount to pay for each room for each night
 	 * @return the total cost bill
@@ -187,23 +208,32 @@ public class Reservation {
 		return this.totalCost;
 	}
 	
-	/*
-	 * Calculates the cost of breakfast for this reservation
-	 * @return the cost of breakfast calculated per night per person
+	/**
+	 * Prices a stay in the rooms given, which is how both the quote shown before booking and the bill of a reservation
+	 * are worked out. Each room is priced by its rate calendar, an advanced purchase takes AP_DISCOUNT off the rooms,
+	 * and breakfast and the deposit are added on
+	 * @param rooms the rooms booked
+	 * @param type the type of booking S/AP
+	 * @param checkinDate the date of check-in
+	 * @param numberOfNights the number of nights
+	 * @param deposit the deposit in cents
+	 * @return the total cost in cents
 	 */
-	private double calculateBreakfastCost() {
-		double breakfastCost = 14.00;
-		double calculated = 0.00;
-		
-		for (RoomBooking rb : this.rooms) {
-			for (int i = 0; i < this.numberOfNights; i++) {
+	public static long quote(ArrayList<RoomBooking> rooms, String type, LocalDate checkinDate, int numberOfNights, long deposit) {
+		long total = 0;
+		long breakfast = 0;
+		if (numberOfNights > 0) {
+			for (RoomBooking rb : rooms) {
+				total += rb.getRoom().getCalendar().price(checkinDate, numberOfNights);
 				if (rb.isBreakfastIncluded()) {
-					calculated += breakfastCost * (rb.getOccupancy()[0] + rb.getOccupancy()[1]);
+					breakfast += BREAKFAST * (rb.getOccupancy()[0] + rb.getOccupancy()[1]) * numberOfNights;
 				}
 			}
 		}
-		
-		return calculated;
+		if ("AP".equals(type)) {
+			total = Money.discount(total, AP_DISCOUNT);
+		}
+		return total + deposit + breakfast;
 	}
 	
 	/**
@@ -213,21 +243,9 @@ public class Reservation {
 	 * @return a Bill object representing the total cost
 	 */
 	public Bill getTotalCostCalculated() {
-		int dayOfWeek;
-		double total = 0.00;
-		for (int i = 0; i < this.numberOfNights; i++) {
-			dayOfWeek = this.checkinDate.plusDays(i).getDayOfWeek().getValue() - 1; //Our rates array from room is indexed from 0 to 6 and getDayOfWeek().getValue() returns a number 1-7
-			for (RoomBooking rb : this.rooms) {
-				Room r = rb.getRoom();
-				total += r.getRate(dayOfWeek);
-			}
-		}
-		if (this.type.equals("AP")) {
-			total -= total * 0.05;
-		}
-		total += this.getDeposit().getAmountDue(); //Maybe after checkout, return the deposit???
-		total += this.calculateBreakfastCost();
-		this.totalCost.setAmountDue(total);
+		//Maybe after checkout, return the deposit???
+		long total = quote(this.rooms, this.type, this.checkinDate, this.numberOfNights, this.getDeposit().getAmountDueCents());
+		this.totalCost.setAmountDueCents(total);
 		return this.totalCost;
 	}
 
@@ -252,28 +270,34 @@ public class Reservation {
 	}
 	
 	/**
-	 * Overriding the equals method of Object 
+	 * Overriding the equals method of Object. Reservations are equal if they have the same number and booking details
 	 * @param obj the object to check against
 	 */
 	@Override
 	public boolean equals(Object obj) {
-		if (!(obj instanceof Reservation)) {
-			//if obj is not an instance of Reservation, it is definitely not equal
-			return false;
-		} else if (this == obj) {
+		if (this == obj) {
 			//if the reference of obj is equal to this reference, they're the same object
 			return true;
-		} else if (this.hashCode() == obj.hashCode()) {
-			//if the hashCodes match, they are equal objects
-			return true;
+		} else if (!(obj instanceof Reservation)) {
+			//if obj is not an instance of Reservation, it is definitely not equal
+			return false;
 		} else {
 			Reservation comp = (Reservation)obj;
-			return comp.name.equals(this.name) && this.number == comp.number && this.type.equals(comp.type) 
+			return this.number == comp.number && comp.name.equals(this.name) && this.type.equals(comp.type) 
 				 && this.checkinDate.equals(comp.checkinDate) && this.numberOfNights == comp.numberOfNights 
 				 && this.numberOfRooms == comp.numberOfRooms; //This is enough to check equality for now
 		}
 	}
 	
+	/**
+	 * Overriding the hashCode method of Object so that it agrees with equals. The reservation number identifies a reservation
+	 * @return the hash code of this reservation
+	 */
+	@Override
+	public int hashCode() {
+		return Integer.hashCode(this.number);
+	}
+	
 	private String roomsBookedAsString() {
 		String returned = "";
 		for (RoomBooking rb : this.rooms) {
@@ -288,7 +312,7 @@ public class Reservation {
 	 * @return formatted reservation 
 	 */
 	public String format() {
-		return String.format("Reservation name: %s\nReservation type: %s\nResrvation number: %d\nCheck-in Date: %s\nNumber of nights: %d\nNumber of rooms: %d\nRooms Booked:\n%sTotal Cost (incl. deposit): $%.02f\nDeposit: $%.02f", this.name, this.type, this.number, this.checkinDate.toString(), this.numberOfNights, this.numberOfRooms, roomsBookedAsString(), this.getTotalCost().getAmountDue(), this.deposit.getAmountDue());
+		return String.format("Reservation name: %s\nReservation type: %s\nResrvation number: %d\nCheck-in Date: %s\nNumber of nights: %d\nNumber of rooms: %d\nRooms Booked:\n%sTotal Cost (incl. deposit): %s\nDeposit: %s", this.name, this.type, this.number, this.checkinDate.toString(), this.numberOfNights, this.numberOfRooms, roomsBookedAsString(), Money.format(this.getTotalCost().getAmountDueCents()), Money.format(this.deposit.getAmountDueCents()));
 	}
 	
 	/**
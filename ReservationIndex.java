@@ -0,0 +1,138 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.TreeMap;
+
+/**
+ * A class to index the reservations of a single hotel by the name of the guest and by their check-in and checkout
+ * days, so that the desk clerk can look reservations up without looking at any reservation that does not match.
+ * Names are kept in order ignoring case, so every name starting with a prefix is found together
+ */
+public class ReservationIndex {
+	private TreeMap<String, ArrayList<Reservation>> names; //Maps each name in lower case to the reservations made under it
+	private TreeMap<Long, ArrayList<Reservation>> arrivals; //Maps each check-in epoch day to the reservations checking in on it
+	private TreeMap<Long, ArrayList<Reservation>> departures; //Maps each checkout epoch day to the reservations checking out on it
+
+	/**
+	 * Creates an empty ReservationIndex
+	 */
+	public ReservationIndex() {
+		this.names = new TreeMap<String, ArrayList<Reservation>>();
+		this.arrivals = new TreeMap<Long, ArrayList<Reservation>>();
+		this.departures = new TreeMap<Long, ArrayList<Reservation>>();
+	}
+
+	/**
+	 * Adds a reservation to the index
+	 * @param reservation the reservation
+	 */
+	public void add(Reservation reservation) {
+		add(this.names, reservation.getName().toLowerCase(), reservation);
+		add(this.arrivals, reservation.getCheckinDate().toEpochDay(), reservation);
+		add(this.departures, reservation.getCheckoutDate().toEpochDay(), reservation);
+	}
+
+	/**
+	 * Removes a reservation from the index
+	 * @param reservation the reservation
+	 */
+	public void remove(Reservation reservation) {
+		remove(this.names, reservation.getName().toLowerCase(), reservation);
+		remove(this.arrivals, reservation.getCheckinDate().toEpochDay(), reservation);
+		remove(this.departures, reservation.getCheckoutDate().toEpochDay(), reservation);
+	}
+
+	/**
+	 * Returns the first reservation made under exactly the given name checking in on the date
+	 * @param name the name of the guest
+	 * @param checkin the check-in date
+	 * @return the reservation, or null if there is none
+	 */
+	public Reservation find(String name, LocalDate checkin) {
+		ArrayList<Reservation> bucket = this.names.get(name.toLowerCase());
+		if (bucket != null) {
+			for (Reservation r : bucket) {
+				if (r.getName().equals(name) && r.getCheckinDate().isEqual(checkin)) {
+					return r;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns every reservation made under a name starting with the prefix, ignoring case
+	 * @param prefix the start of the name, or an empty string for every reservation
+	 * @return the reservations, in order of name
+	 */
+	public ArrayList<Reservation> withNameStarting(String prefix) {
+		String from = prefix.toLowerCase();
+		ArrayList<Reservation> found = new ArrayList<Reservation>();
+		for (ArrayList<Reservation> bucket : this.names.subMap(from, from + Character.MAX_VALUE).values()) {
+			found.addAll(bucket);
+		}
+		return found;
+	}
+
+	/**
+	 * Returns every reservation checking in on the date
+	 * @param date the check-in date
+	 * @return the reservations, in the order they were added
+	 */
+	public ArrayList<Reservation> arriving(LocalDate date) {
+		return copyOf(this.arrivals.get(date.toEpochDay()));
+	}
+
+	/**
+	 * Returns every reservation checking out on the date
+	 * @param date the checkout date
+	 * @return the reservations, in the order they were added
+	 */
+	public ArrayList<Reservation> departing(LocalDate date) {
+		return copyOf(this.departures.get(date.toEpochDay()));
+	}
+
+	/*
+	 * Adds a reservation to the bucket of its key, creating the bucket if needed
+	 *
+	 * @param buckets the buckets
+	 *
+	 * @param key the key of the reservation
+	 *
+	 * @param reservation the reservation
+	 */
+	private static <K> void add(TreeMap<K, ArrayList<Reservation>> buckets, K key, Reservation reservation) {
+		ArrayList<Reservation> bucket = buckets.get(key);
+		if (bucket == null) {
+			bucket = new ArrayList<Reservation>();
+			buckets.put(key, bucket);
+		}
+		bucket.add(reservation);
+	}
+
+	/*
+	 * Removes a reservation from the bucket of its key, dropping the bucket once it is empty
+	 *
+	 * @param buckets the buckets
+	 *
+	 * @param key the key of the reservation
+	 *
+	 * @param reservation the reservation
+	 */
+	private static <K> void remove(TreeMap<K, ArrayList<Reservation>> buckets, K key, Reservation reservation) {
+		ArrayList<Reservation> bucket = buckets.get(key);
+		if (bucket != null && bucket.remove(reservation) && bucket.isEmpty()) {
+			buckets.remove(key);
+		}
+	}
+
+	/*
+	 * Copies a bucket so that callers can keep it after the hotel's lock is released
+	 *
+	 * @param bucket the bucket, or null if there is none
+	 *
+	 * @return the copy, empty if there is no bucket
+	 */
+	private static ArrayList<Reservation> copyOf(ArrayList<Reservation> bucket) {
+		return bucket == null ? new ArrayList<Reservation>() : new ArrayList<Reservation>(bucket);
+	}
+}
@@ -0,0 +1,451 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A class to keep running daily totals of the hotel stays of a single hotel: for each room type and day, the rooms
+ * sold, the people staying in them and the income from them, along with the number of room bookings starting and
+ * ending on each day. The totals are changed as stays are added and removed, so the occupancy of any date period can
+ * be found by summing the days of the period rather than walking every stay. The bookings starting and ending are
+ * kept in Fenwick trees, so the bookings in a period are counted from two sums that each take O(log days). The totals of every hotel can be saved
+ * to a binary file which, like the BookingSnapshot, is only loaded if the files it was built from have not changed
+ */
+public class RevenueCube {
+	private static final int MAGIC = 0x4C345243; //"L4RC"
+	private static final int VERSION = 3; //2 saved running counts of bookings, 1 and 3 the daily counts
+	private static final int SLACK = 64; //Extra days added when a row grows, so rows don't grow a day at a time
+
+	/*
+	 * The daily totals of a single room type, over a range of days which grows as stays are added outside it
+	 */
+	private static class Row {
+		private long firstDay; //the epoch day of index 0
+		private long[] income; //income[day] = the income in cents from rooms of this type on that day
+		private int[] occupants; //occupants[day] = the people staying in rooms of this type on that day
+		private int[] sold; //sold[day] = the rooms of this type booked on that day
+		private DayCounts arrivals; //the room bookings of this type whose first night is on each day
+		private DayCounts departures; //the room bookings of this type checking out on each day
+
+		/*
+		 * @param firstDay the epoch day of index 0
+		 *
+		 * @param length the number of days in the row
+		 */
+		private Row(long firstDay, int length) {
+			this.firstDay = firstDay;
+			this.income = new long[length];
+			this.occupants = new int[length];
+			this.sold = new int[length];
+			this.arrivals = new DayCounts(new int[length]);
+			this.departures = new DayCounts(new int[length]);
+		}
+
+		/*
+		 * Grows the row so that it covers every day from first to last
+		 *
+		 * @param first the first epoch day to cover
+		 *
+		 * @param last the last epoch day to cover
+		 */
+		private void cover(long first, long last) {
+			long lastDay = this.firstDay + this.income.length - 1;
+			if (first >= this.firstDay && last <= lastDay) {
+				return;
+			}
+			long newFirst = first < this.firstDay ? first - SLACK : this.firstDay;
+			long newLast = last > lastDay ? last + SLACK : lastDay;
+			int length = (int) (newLast - newFirst + 1);
+			int offset = (int) (this.firstDay - newFirst);
+			this.income = grow(this.income, length, offset);
+			this.occupants = grow(this.occupants, length, offset);
+			this.sold = grow(this.sold, length, offset);
+			this.arrivals = new DayCounts(grow(this.arrivals.toDays(), length, offset));
+			this.departures = new DayCounts(grow(this.departures.toDays(), length, offset));
+			this.firstDay = newFirst;
+		}
+
+		/*
+		 * Counts the room bookings which have at least one night between from and to
+		 *
+		 * @param from the epoch day of the first night of the period
+		 *
+		 * @param to the epoch day the period ends at (not included)
+		 *
+		 * @return the number of room bookings, those starting before to less those which ended by from
+		 */
+		private int bookingsOverlapping(long from, long to) {
+			return this.countTo(this.arrivals, to - 1) - this.countTo(this.departures, from);
+		}
+
+		/*
+		 * Sums the counts of every day of the row up to and including a day, which may be outside the row
+		 *
+		 * @param counts the counts to sum
+		 *
+		 * @param day the epoch day
+		 *
+		 * @return the sum, 0 before the row and the sum of the whole row after it
+		 */
+		private int countTo(DayCounts counts, long day) {
+			long index = day - this.firstDay;
+			return index < 0 ? 0 : counts.sumTo((int) Math.min(index, this.income.length - 1));
+		}
+	}
+
+	/*
+	 * Counts for each day of a row held as a Fenwick tree, so that the count of a day can be changed and the counts of
+	 * the days up to a day summed without going through every day
+	 */
+	private static class DayCounts {
+		private int[] tree; //tree[i] = the sum of the counts of the days from i - (i & -i) up to but not including i
+
+		/*
+		 * @param days days[day] = the count of that day
+		 */
+		private DayCounts(int[] days) {
+			this.tree = new int[days.length + 1];
+			System.arraycopy(days, 0, this.tree, 1, days.length);
+			for (int i = 1; i < this.tree.length; i++) {
+				int parent = i + (i & -i);
+				if (parent < this.tree.length) {
+					this.tree[parent] += this.tree[i];
+				}
+			}
+		}
+
+		/*
+		 * Adds to the count of a day
+		 *
+		 * @param day the index of the day
+		 *
+		 * @param change the amount to add
+		 */
+		private void add(int day, int change) {
+			for (int i = day + 1; i < this.tree.length; i += i & -i) {
+				this.tree[i] += change;
+			}
+		}
+
+		/*
+		 * Sums the counts of the days up to and including a day
+		 *
+		 * @param day the index of the last day to count
+		 *
+		 * @return the sum
+		 */
+		private int sumTo(int day) {
+			int sum = 0;
+			for (int i = day + 1; i > 0; i -= i & -i) {
+				sum += this.tree[i];
+			}
+			return sum;
+		}
+
+		/*
+		 * Returns the count of each day, undoing the sums of the tree
+		 *
+		 * @return a new array of the counts, days[day] = the count of that day
+		 */
+		private int[] toDays() {
+			int[] days = Arrays.copyOfRange(this.tree, 1, this.tree.length);
+			for (int i = days.length; i > 0; i--) {
+				int parent = i + (i & -i);
+				if (parent <= days.length) {
+					days[parent - 1] -= days[i - 1];
+				}
+			}
+			return days;
+		}
+	}
+
+	private TreeMap<Room, Row> rows; //Maps each room type to its daily totals, in the order of the rooms
+
+	/**
+	 * Creates a RevenueCube with no stays
+	 */
+	public RevenueCube() {
+		this.rows = new TreeMap<Room, Row>();
+	}
+
+	/*
+	 * Copies an array into a longer one
+	 *
+	 * @param array the array to copy
+	 *
+	 * @param length the length of the new array
+	 *
+	 * @param offset the index of the new array to copy the first value to
+	 *
+	 * @return the new array
+	 */
+	private static long[] grow(long[] array, int length, int offset) {
+		long[] grown = new long[length];
+		System.arraycopy(array, 0, grown, offset, array.length);
+		return grown;
+	}
+
+	/*
+	 * Copies an array into a longer one
+	 *
+	 * @param array the array to copy
+	 *
+	 * @param length the length of the new array
+	 *
+	 * @param offset the index of the new array to copy the first value to
+	 *
+	 * @return the new array
+	 */
+	private static int[] grow(int[] array, int length, int offset) {
+		int[] grown = new int[length];
+		System.arraycopy(array, 0, grown, offset, array.length);
+		return grown;
+	}
+
+	/**
+	 * Adds every room booked in the stay to the totals of each night of the stay, at the nightly rate of the room
+	 * @param stay the hotel stay to add
+	 */
+	public void add(HotelStay stay) {
+		this.change(stay.getReservation(), 1);
+	}
+
+	/**
+	 * Takes every room booked in the stay back out of the totals of each night of the stay
+	 * @param stay the hotel stay to remove, which must have been added
+	 */
+	public void remove(HotelStay stay) {
+		this.change(stay.getReservation(), -1);
+	}
+
+	/*
+	 * Adds or takes away the rooms of a reservation from the totals of its nights
+	 *
+	 * @param r the reservation of the stay
+	 *
+	 * @param sign 1 to add the rooms, -1 to take them away
+	 */
+	private void change(Reservation r, int sign) {
+		for (RoomBooking rb : r.getRooms()) {
+			this.change(rb.getRoom(), r.getCheckinDate().toEpochDay(), r.getNumberOfNights(),
+					rb.getOccupancy()[0] + rb.getOccupancy()[1], sign);
+		}
+	}
+
+	/**
+	 * Adds the room booking the cursor is on to the totals of each of its nights
+	 * @param archived the cursor over the archived stays
+	 */
+	public void add(StayArchive.Cursor archived) {
+		this.change(archived.getRoom(), archived.getCheckinDay(), archived.getNights(),
+				archived.getAdults() + archived.getChildren(), 1);
+	}
+
+	/*
+	 * Adds or takes away a single room booking from the totals of its nights
+	 *
+	 * @param room the room booked
+	 *
+	 * @param checkin the epoch day of the first night
+	 *
+	 * @param nights the number of nights
+	 *
+	 * @param people the number of people staying in the room
+	 *
+	 * @param sign 1 to add the booking, -1 to take it away
+	 */
+	private void change(Room room, long checkin, int nights, int people, int sign) {
+		if (nights <= 0) {
+			return;
+		}
+		RateCalendar calendar = room.getCalendar();
+		Row row = this.rows.get(room);
+		if (row == null) {
+			row = new Row(checkin, nights + 1 + SLACK);
+			this.rows.put(room, row);
+		}
+		row.cover(checkin, checkin + nights);
+		int first = (int) (checkin - row.firstDay);
+		for (int night = 0; night < nights; night++) {
+			row.income[first + night] += sign * calendar.nightly(checkin + night);
+			row.occupants[first + night] += sign * people;
+			row.sold[first + night] += sign;
+		}
+		row.arrivals.add(first, sign);
+		row.departures.add(first + nights, sign);
+	}
+
+	/**
+	 * Sums the totals of each room type over the days from start up to but not including end, or just start if the
+	 * two dates are equal. Only the rooms with a booking in the period are in the matrix, as if every stay had been
+	 * added to it
+	 * @param start the start date of the period
+	 * @param end the end date of the period
+	 * @return the occupancy matrix of the period
+	 */
+	public OccupancyMatrix occupancy(LocalDate start, LocalDate end) {
+		OccupancyMatrix matrix = new OccupancyMatrix(start, end);
+		long from = start.toEpochDay();
+		long to = from + matrix.getNumberOfDays();
+		for (Map.Entry<Room, Row> e : this.rows.entrySet()) {
+			Row row = e.getValue();
+			int bookings = row.bookingsOverlapping(from, to);
+			if (bookings > 0) {
+				matrix.addBookings(e.getKey(), bookings);
+				long first = Math.max(from, row.firstDay);
+				long last = Math.min(to, row.firstDay + row.income.length);
+				for (long day = first; day < last; day++) {
+					int index = (int) (day - row.firstDay);
+					matrix.add(e.getKey(), (int) (day - from), row.income[index], row.occupants[index], row.sold[index]);
+				}
+			}
+		}
+		return matrix;
+	}
+
+	/**
+	 * Writes the totals of every hotel to the file at filePath. It is written to a temporary file first and moved into
+	 * place so that a crash never leaves a half written file behind
+	 * @param filePath the path to the file
+	 * @param sources the files the totals were built from, which must not change for the file to be loaded
+	 * @param cubes the totals of each hotel
+	 * @return true if the file was written
+	 */
+	public static boolean write(String filePath, File[] sources, TreeMap<String, RevenueCube> cubes) {
+		File file = new File(filePath);
+		File temp = new File(filePath + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(sources.length);
+			for (File source : sources) {
+				out.writeLong(source.length());
+				out.writeLong(source.lastModified());
+			}
+			out.writeInt(cubes.size());
+			for (Map.Entry<String, RevenueCube> hotel : cubes.entrySet()) {
+				writeString(out, hotel.getKey());
+				out.writeInt(hotel.getValue().rows.size());
+				for (Map.Entry<Room, Row> e : hotel.getValue().rows.entrySet()) {
+					Row row = e.getValue();
+					writeString(out, e.getKey().getType());
+					out.writeLong(row.firstDay);
+					out.writeInt(row.income.length);
+					for (long value : row.income) {
+						out.writeLong(value);
+					}
+					for (int[] column : new int[][] { row.occupants, row.sold, row.arrivals.toDays(), row.departures.toDays() }) {
+						for (int value : column) {
+							out.writeInt(value);
+						}
+					}
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			temp.delete();
+			return false;
+		}
+		try {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Loads the totals of every hotel from the file at filePath. Nothing is loaded if the file is missing, was written
+	 * by another version, any of the sources have changed since it was written or it names a room that isn't in the
+	 * catalog
+	 * @param filePath the path to the file
+	 * @param sources the files the totals must have been built from, in the order they were written
+	 * @param catalog the rooms of every hotel
+	 * @return the totals of each hotel, or null if they must be built from the stays instead
+	 */
+	public static TreeMap<String, RevenueCube> load(String filePath, File[] sources, RoomCatalog catalog) {
+		File file = new File(filePath);
+		if (!file.exists()) {
+			return null;
+		}
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (in.remaining() < 12 || in.getInt() != MAGIC || in.getInt() != VERSION || in.getInt() != sources.length) {
+				return null;
+			}
+			for (File source : sources) {
+				if (in.getLong() != source.length() || in.getLong() != source.lastModified()) {
+					return null; // the stays were changed without the totals
+				}
+			}
+			TreeMap<String, RevenueCube> cubes = new TreeMap<String, RevenueCube>();
+			int hotels = in.getInt();
+			for (int h = 0; h < hotels; h++) {
+				String hotelName = readString(in);
+				RevenueCube cube = new RevenueCube();
+				int rooms = in.getInt();
+				for (int i = 0; i < rooms; i++) {
+					Room room = catalog.getRoom(hotelName, readString(in));
+					if (room == null) {
+						return null;
+					}
+					Row row = new Row(in.getLong(), in.getInt());
+					in.asLongBuffer().get(row.income);
+					in.position(in.position() + row.income.length * Long.BYTES);
+					int[] arrivals = new int[row.income.length];
+					int[] departures = new int[row.income.length];
+					for (int[] column : new int[][] { row.occupants, row.sold, arrivals, departures }) {
+						in.asIntBuffer().get(column);
+						in.position(in.position() + column.length * Integer.BYTES);
+					}
+					row.arrivals = new DayCounts(arrivals);
+					row.departures = new DayCounts(departures);
+					cube.rows.put(room, row);
+				}
+				cubes.put(hotelName, cube);
+			}
+			return cubes;
+		} catch (IOException | RuntimeException e) {
+			e.printStackTrace(); // the totals can still be built from the stays instead
+			return null;
+		}
+	}
+
+	/*
+	 * Writes a string as its length followed by its UTF-8 bytes
+	 *
+	 * @param out the stream to write to
+	 *
+	 * @param s the string
+	 */
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/*
+	 * Reads a string written by writeString
+	 *
+	 * @param in the buffer to read from
+	 *
+	 * @return the string
+	 */
+	private static String readString(ByteBuffer in) {
+		byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -1,11 +1,17 @@
+import java.util.Comparator;
+import java.util.Objects;
+
 /**
  * A class to represent a room of a hotel
  *
  */
 public class Room implements Comparable<Room> {
+	private int id; //The room's index in the RoomCatalog, -1 if it is not in one
+	private String hotelName; //The hotel the room belongs to, null if it is not in a RoomCatalog
 	private String type;
 	private int[] occupancy; //occupancy[0] = Adult min occupancy[1] = child min, occupancy[2] = adult max, occupancy[3] = child max
 	private int[] rates; //indexed 0 - 6 0 = Mon, 1 = Tues, 2 = Wed etc
+	private RateCalendar calendar; //Prices the nights of this room from the rates and any dates with their own price
 	
 	/**
 	 * No-arg constructor which creates a default room object
@@ -21,9 +27,40 @@ public class Room implements Comparable<Room> {
 	 * @param rates the rates with index 0 representing monday rates, index 1 representing tuesday and so on
 	 */
 	public Room(String type, int[] occupancy, int[] rates) {
+		this(-1, null, type, occupancy, rates);
+	}
+	
+	/**
+	 * Constructor which creates a room object with the id given to it by a RoomCatalog
+	 * @param id the dense id of the room, unique across the hotel chain
+	 * @param hotelName the name of the hotel the room belongs to
+	 * @param type The room type e.g. Deluxe Double
+	 * @param occupancy the occupancy in the form occupancy[0] = adult minimum, occupancy[1] = child minimum, occupancy[2] = adult maximum, occupancy[3] = child maximum
+	 * @param rates the rates with index 0 representing monday rates, index 1 representing tuesday and so on
+	 */
+	public Room(int id, String hotelName, String type, int[] occupancy, int[] rates) {
+		this.id = id;
+		this.hotelName = hotelName;
 		this.type = type;
 		this.occupancy = occupancy;
 		this.rates = rates;
+		this.calendar = new RateCalendar(rates);
+	}
+	
+	/**
+	 * Gets the id of the room, which can be used to index arrays of rooms
+	 * @return the id given to the room by its RoomCatalog, -1 if it has none
+	 */
+	public int getId() {
+		return this.id;
+	}
+	
+	/**
+	 * Gets the name of the hotel the room belongs to
+	 * @return the hotel name, null if the room is not in a RoomCatalog
+	 */
+	public String getHotelName() {
+		return this.hotelName;
 	}
 	
 	/**
@@ -64,6 +101,14 @@ public class Room implements Comparable<Room> {
 		return this.rates;
 	}
 
+	/**
+	 * Gets the rate calendar which prices the nights of this room, including dates with their own price
+	 * @return the rate calendar
+	 */
+	public RateCalendar getCalendar() {
+		return this.calendar;
+	}
+
 	/**
 	* Returns the rate for the specified day
 	* @param day 0 = Monday, 1 = Tuesday, 2 = Wednesday etc
@@ -77,12 +122,13 @@ public class Room implements Comparable<Room> {
 	}
 	
 	/**
-	* Provides the capability for rooms to be compared
+	* Provides the capability for rooms to be compared, by hotel and then by type so the rooms of one hotel keep the order of their types
 	* @param other the room to compare to
 	* @return the int value representing the comparison**/
 	@Override
 	public int compareTo(Room other) {
-		return this.type.compareTo(other.type);
+		int hotels = Objects.compare(this.hotelName, other.hotelName, Comparator.nullsFirst(Comparator.<String>naturalOrder()));
+		return hotels != 0 ? hotels : this.type.compareTo(other.type);
 	}
 	
 	/**
@@ -95,21 +141,25 @@ public class Room implements Comparable<Room> {
 	}
 	
 	/**
-	 * Overriding object equals method
+	 * Overriding object equals method, rooms are equal if they have the same hotel and type so that equals agrees with compareTo
 	 */
 	@Override
 	public boolean equals(Object obj) {
-		if (!(obj instanceof Room)) {
-			return false;
-		}
-		
 		if (this == obj) {
 			return true;
-		} else if (this.hashCode() == obj.hashCode()) {
-			return true;
+		} else if (!(obj instanceof Room)) {
+			return false;
 		} else {
 			Room comp = (Room)obj;
-			return comp.type.equals(this.type);
+			return Objects.equals(comp.hotelName, this.hotelName) && Objects.equals(comp.type, this.type);
 		}
 	}
+	
+	/**
+	 * Overriding object hashCode method so that equal rooms have equal hash codes
+	 */
+	@Override
+	public int hashCode() {
+		return Objects.hash(this.hotelName, this.type);
+	}
 }
@@ -0,0 +1,67 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A class to hold every room of the hotel chain, each created once and given a dense id, so that a room can be found
+ * by its hotel and type with a hash lookup and per room counts can be kept in arrays indexed by id
+ */
+public class RoomCatalog {
+	private HashMap<String, HashMap<String, Room>> hotels; //Maps each hotel name to its rooms by type
+	private ArrayList<Room> rooms; //rooms.get(id) = the room with that id
+
+	/**
+	 * Creates an empty RoomCatalog
+	 */
+	public RoomCatalog() {
+		this.hotels = new HashMap<String, HashMap<String, Room>>();
+		this.rooms = new ArrayList<Room>();
+	}
+
+	/**
+	 * Creates a room of the hotel with the next id. If the hotel already has a room of that type it is replaced
+	 * @param hotelName the name of the hotel
+	 * @param type the room type e.g. Deluxe Double
+	 * @param occupancy the occupancy in the form occupancy[0] = adult minimum, occupancy[1] = child minimum, occupancy[2] = adult maximum, occupancy[3] = child maximum
+	 * @param rates the rates with index 0 representing monday rates, index 1 representing tuesday and so on
+	 * @return the new room
+	 */
+	public Room addRoom(String hotelName, String type, int[] occupancy, int[] rates) {
+		Room room = new Room(this.rooms.size(), hotelName, type, occupancy, rates);
+		this.rooms.add(room);
+		HashMap<String, Room> hotelRooms = this.hotels.get(hotelName);
+		if (hotelRooms == null) {
+			hotelRooms = new HashMap<String, Room>();
+			this.hotels.put(hotelName, hotelRooms);
+		}
+		hotelRooms.put(type, room);
+		return room;
+	}
+
+	/**
+	 * Finds the room of the hotel with the given type
+	 * @param hotelName the name of the hotel
+	 * @param type the room type
+	 * @return the room, or null if the hotel or room type is not in the catalog
+	 */
+	public Room getRoom(String hotelName, String type) {
+		HashMap<String, Room> hotelRooms = this.hotels.get(hotelName);
+		return hotelRooms == null ? null : hotelRooms.get(type);
+	}
+
+	/**
+	 * Finds the room with the given id
+	 * @param id the id of the room
+	 * @return the room, or null if no room has that id
+	 */
+	public Room getRoom(int id) {
+		return id >= 0 && id < this.rooms.size() ? this.rooms.get(id) : null;
+	}
+
+	/**
+	 * Returns the number of rooms in the catalog, which is one more than the highest id
+	 * @return the number of rooms
+	 */
+	public int size() {
+		return this.rooms.size();
+	}
+}
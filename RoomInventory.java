@@ -0,0 +1,199 @@
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A class to keep track of how many rooms of each type are booked on each night in a single hotel
+ */
+public class RoomInventory {
+	private static final int INITIAL_DAYS = 366; //Start off with room for a year of nights and grow when needed
+	private static final int MAX_DAYS = Integer.MAX_VALUE - 8; //The most days an array of nights can hold
+
+	private int[] roomIndexes; //roomIndexes[room id] = the row of the room in booked, -1 if the hotel doesn't have it
+	private int[][] booked; //booked[room][day] = number of rooms of that type booked on the night of firstDay + day
+	private long firstDay; //The epoch day represented by column 0 of booked
+
+	/**
+	 * Creates an empty RoomInventory for the rooms of a hotel
+	 * @param rooms the rooms the hotel has
+	 */
+	public RoomInventory(Collection<Room> rooms) {
+		int maxId = -1;
+		for (Room r : rooms) {
+			maxId = Math.max(maxId, r.getId());
+		}
+		this.roomIndexes = new int[maxId + 1];
+		Arrays.fill(this.roomIndexes, -1);
+		int row = 0;
+		for (Room r : rooms) {
+			if (r.getId() >= 0) {
+				this.roomIndexes[r.getId()] = row++;
+			}
+		}
+		this.booked = new int[row][INITIAL_DAYS];
+		this.firstDay = LocalDate.now().toEpochDay();
+	}
+
+	/*
+	 * Finds the row of the room in booked
+	 *
+	 * @param room the room
+	 *
+	 * @return the row, or -1 if the hotel doesn't have the room
+	 */
+	private int rowOf(Room room) {
+		if (room == null || room.getId() < 0 || room.getId() >= this.roomIndexes.length) {
+			return -1;
+		}
+		return this.roomIndexes[room.getId()];
+	}
+
+	/*
+	 * Grows the booked matrix so that the nights from startDay up to but not including endDay can be indexed
+	 *
+	 * @param startDay the epoch day of the first night needed
+	 *
+	 * @param endDay the epoch day after the last night needed
+	 *
+	 * @throws IllegalArgumentException if the nights needed span more days than an array can hold
+	 */
+	private void ensureCapacity(long startDay, long endDay) {
+		int days = this.booked.length == 0 ? 0 : this.booked[0].length;
+		long lastDay = this.firstDay + days;
+		if (startDay >= this.firstDay && endDay <= lastDay) {
+			return;
+		}
+		long newFirstDay = Math.min(this.firstDay, startDay);
+		long newLastDay = Math.max(lastDay, endDay);
+		if (newLastDay - newFirstDay > MAX_DAYS) {
+			throw new IllegalArgumentException("The nights from " + LocalDate.ofEpochDay(newFirstDay) + " to "
+					+ LocalDate.ofEpochDay(newLastDay) + " span too many days to be counted");
+		}
+		int newDays = (int)Math.min(Math.max(newLastDay - newFirstDay, days * 2L), MAX_DAYS); //double it so that reservations further out don't cause a copy every time
+		int offset = (int)(this.firstDay - newFirstDay);
+		for (int i = 0; i < this.booked.length; i++) {
+			int[] grown = new int[newDays];
+			System.arraycopy(this.booked[i], 0, grown, offset, days);
+			this.booked[i] = grown;
+		}
+		this.firstDay = newFirstDay;
+	}
+
+	/*
+	 * Adds change to the count of each room in the reservation for each night of the reservation
+	 *
+	 * @param reservation the reservation to count
+	 *
+	 * @param change 1 if the rooms are being booked, -1 if they are being released
+	 */
+	private void adjust(Reservation reservation, int change) {
+		long start = reservation.getCheckinDate().toEpochDay();
+		long end = start + reservation.getNumberOfNights();
+		if (end <= start) {
+			return;
+		}
+		this.ensureCapacity(start, end);
+		int from = (int)(start - this.firstDay);
+		int to = (int)(end - this.firstDay);
+		for (RoomBooking rb : reservation.getRooms()) {
+			int index = this.rowOf(rb.getRoom());
+			if (index != -1) {
+				int[] nights = this.booked[index];
+				for (int day = from; day < to; day++) {
+					nights[day] += change;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Counts the rooms of the reservation as booked for every night of the reservation
+	 * @param reservation the reservation being added
+	 */
+	public void book(Reservation reservation) {
+		this.adjust(reservation, 1);
+	}
+
+	/**
+	 * Frees up the rooms of the reservation for every night of the reservation
+	 * @param reservation the reservation being removed
+	 */
+	public void release(Reservation reservation) {
+		this.adjust(reservation, -1);
+	}
+
+	/**
+	 * Checks in one pass if every reservation of a batch can be booked together, counting the rooms the batch books
+	 * against each other as well as against the rooms already booked. The inventory is left as it was
+	 * @param reservations the reservations of the batch
+	 * @param hotelRooms the rooms of the hotel and how many of each there are
+	 * @return true if no room type would be booked more times than the hotel has on any night
+	 */
+	public boolean canBook(Collection<Reservation> reservations, TreeMap<Room, Integer> hotelRooms) {
+		int adjusted = 0;
+		try {
+			for (Reservation r : reservations) {
+				this.adjust(r, 1);
+				adjusted++;
+			}
+			for (Reservation r : reservations) {
+				for (RoomBooking rb : r.getRooms()) {
+					Integer numberOfRooms = rb.getRoom() == null ? null : hotelRooms.get(rb.getRoom()); // rooms the hotel doesn't have are not checked
+					if (numberOfRooms != null && this.mostBooked(rb.getRoom(), r.getCheckinDate(), r.getCheckoutDate()) > numberOfRooms) {
+						return false;
+					}
+				}
+			}
+			return true;
+		} finally {
+			for (Reservation r : reservations) {
+				if (adjusted-- == 0) {
+					break; // only release what was counted if one of them could not be
+				}
+				this.adjust(r, -1);
+			}
+		}
+	}
+
+	/**
+	 * Returns the highest number of rooms of the given type booked on any one night between from and to
+	 * @param room the room to check
+	 * @param from the first night of the period
+	 * @param to the date the period ends at (not included)
+	 * @return the most rooms of that type booked on a single night in the period
+	 */
+	public int mostBooked(Room room, LocalDate from, LocalDate to) {
+		int index = this.rowOf(room);
+		if (index == -1) {
+			return 0;
+		}
+		int[] nights = this.booked[index];
+		long start = Math.max(from.toEpochDay(), this.firstDay);
+		long end = Math.min(to.toEpochDay(), this.firstDay + nights.length);
+		int most = 0;
+		for (long day = start; day < end; day++) {
+			int count = nights[(int)(day - this.firstDay)];
+			if (count > most) {
+				most = count;
+			}
+		}
+		return most;
+	}
+
+	/**
+	 * Returns the number of rooms of each type that are free on every night between from and to
+	 * @param hotelRooms the rooms of the hotel and how many of each there are
+	 * @param from the first night of the period
+	 * @param to the date the period ends at (not included)
+	 * @return a new TreeMap of the rooms and how many of them are available for the whole period
+	 */
+	public TreeMap<Room, Integer> available(TreeMap<Room, Integer> hotelRooms, LocalDate from, LocalDate to) {
+		TreeMap<Room, Integer> availableRooms = new TreeMap<Room, Integer>();
+		for (Map.Entry<Room, Integer> e : hotelRooms.entrySet()) {
+			availableRooms.put(e.getKey(), e.getValue() - this.mostBooked(e.getKey(), from, to));
+		}
+		return availableRooms;
+	}
+}
@@ -0,0 +1,320 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A class to front a chain whose hotels are split between several shards, each a BookingServer with its own
+ * BookingSystem and data folder. On start up each shard is asked which hotels it owns, then every request for a hotel
+ * is passed on unchanged to its shard, so clients see the same API as a single BookingServer. That includes the
+ * Supervisor's discounts and reports of a hotel, which are run by the shard owning it. The chain wide requests are
+ * scattered to the shards and their answers gathered:
+ * <ul>
+ * <li>GET /hotels - the names of the hotels of every shard</li>
+ * <li>GET /occupancy?from=yyyy-mm-dd&amp;to=yyyy-mm-dd - the occupancy of every hotel, asked of their shards at
+ * once</li>
+ * <li>GET /reports/{report}?from=yyyy-mm-dd&amp;to=yyyy-mm-dd - the income, occupants or rooms report of every
+ * hotel, each written by its shard at once</li>
+ * </ul>
+ */
+public class ShardRouter {
+	private static final int BACKLOG = 1024; //Connections queued by the OS while waiting to be accepted
+	private static final Duration TIMEOUT = Duration.ofSeconds(30); //Longest wait for a shard to answer
+
+	private TreeMap<String, URI> owners; //Maps each hotel to the base URI of the shard owning it
+	private HttpClient client;
+	private HttpServer server;
+	private ExecutorService executor;
+
+	/**
+	 * Creates a ShardRouter for the given shards which will listen on the given port once started
+	 * @param shards the base URI of each shard, e.g. http://localhost:8081
+	 * @param port the port to listen on
+	 * @throws IOException if a shard could not be asked for its hotels, two shards own the same hotel or the port
+	 *         could not be bound
+	 */
+	public ShardRouter(List<URI> shards, int port) throws IOException {
+		this.executor = BookingServer.newExecutor();
+		this.client = HttpClient.newBuilder().connectTimeout(TIMEOUT).executor(this.executor).build();
+		this.owners = new TreeMap<String, URI>();
+		for (URI shard : shards) {
+			for (String hotelName : this.hotelsOf(shard)) {
+				URI owner = this.owners.put(hotelName, shard);
+				if (owner != null) {
+					throw new IOException(hotelName + " is owned by both " + owner + " and " + shard);
+				}
+			}
+		}
+		this.server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+		this.server.setExecutor(this.executor);
+		this.server.createContext("/hotels", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				ShardRouter.this.handle(exchange);
+			}
+		});
+		this.server.createContext("/occupancy", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				ShardRouter.this.gather(exchange, "/occupancy");
+			}
+		});
+		this.server.createContext("/reports", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				String path = exchange.getRequestURI().getRawPath();
+				if (path.matches("/reports/[^/]+")) {
+					ShardRouter.this.gather(exchange, path);
+				} else {
+					try {
+						ShardRouter.this.respond(exchange, 404, BookingServer.error("Nothing at " + path));
+					} finally {
+						exchange.close();
+					}
+				}
+			}
+		});
+	}
+
+	/*
+	 * Asks a shard for the names of its hotels
+	 *
+	 * @param shard the base URI of the shard
+	 *
+	 * @return the names of the hotels
+	 */
+	private List<String> hotelsOf(URI shard) throws IOException {
+		HttpResponse<String> response;
+		try {
+			response = this.client.send(HttpRequest.newBuilder(shard.resolve("/hotels")).timeout(TIMEOUT).GET().build(),
+					HttpResponse.BodyHandlers.ofString());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while asking " + shard + " for its hotels");
+		}
+		if (response.statusCode() != 200) {
+			throw new IOException(shard + " answered " + response.statusCode() + " when asked for its hotels");
+		}
+		return parseNames(response.body());
+	}
+
+	/*
+	 * Parses a JSON array of strings, such as the hotels of a shard
+	 *
+	 * @param json the array
+	 *
+	 * @return the strings in order
+	 */
+	private static List<String> parseNames(String json) throws IOException {
+		ArrayList<String> names = new ArrayList<String>();
+		StringBuilder name = null;
+		for (int i = 0; i < json.length(); i++) {
+			char c = json.charAt(i);
+			if (name == null) {
+				if (c == '"') {
+					name = new StringBuilder();
+				}
+			} else if (c == '"') {
+				names.add(name.toString());
+				name = null;
+			} else if (c == '\\' && i + 1 < json.length()) {
+				char escaped = json.charAt(++i);
+				if (escaped == 'u' && i + 4 < json.length()) {
+					name.append((char) Integer.parseInt(json.substring(i + 1, i + 5), 16));
+					i += 4;
+				} else {
+					name.append(escaped);
+				}
+			} else {
+				name.append(c);
+			}
+		}
+		if (name != null) {
+			throw new IOException("Unterminated hotel name in " + json);
+		}
+		return names;
+	}
+
+	/**
+	 * Starts accepting requests
+	 */
+	public void start() {
+		this.server.start();
+	}
+
+	/**
+	 * Stops accepting requests, waiting up to the given number of seconds for requests being passed on to finish
+	 * @param delay the most seconds to wait
+	 */
+	public void stop(int delay) {
+		this.server.stop(delay);
+		this.executor.shutdown();
+	}
+
+	/**
+	 * Returns the port the router is listening on
+	 * @return the port
+	 */
+	public int getPort() {
+		return this.server.getAddress().getPort();
+	}
+
+	/**
+	 * Returns every hotel of the chain and the shard owning it
+	 * @return the base URI of the shard of each hotel, in order of hotel name
+	 */
+	public TreeMap<String, URI> getOwners() {
+		return this.owners;
+	}
+
+	/*
+	 * Passes a request for a hotel on to the shard owning it and its response back, or answers GET /hotels itself
+	 *
+	 * @param exchange the request and response
+	 */
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			String path = exchange.getRequestURI().getPath();
+			if (path.matches("/hotels/?") && exchange.getRequestMethod().equals("GET")) {
+				StringBuilder json = new StringBuilder("[");
+				for (String hotelName : this.owners.keySet()) {
+					json.append(json.length() == 1 ? "" : ",").append(BookingServer.quote(hotelName));
+				}
+				this.respond(exchange, 200, json.append("]").toString());
+				return;
+			}
+			String[] hotelPath = path.startsWith("/hotels/") ? path.substring("/hotels/".length()).split("/") : new String[] { "" };
+			String hotelName = URLDecoder.decode(hotelPath[0], StandardCharsets.UTF_8);
+			URI owner = this.owners.get(hotelName);
+			if (owner == null) {
+				this.respond(exchange, 404, BookingServer.error("No hotel called " + hotelName));
+				return;
+			}
+			String target = exchange.getRequestURI().getRawPath();
+			if (exchange.getRequestURI().getRawQuery() != null) {
+				target += "?" + exchange.getRequestURI().getRawQuery();
+			}
+			byte[] body = readBody(exchange);
+			HttpRequest.Builder request = HttpRequest.newBuilder(owner.resolve(target)).timeout(TIMEOUT).method(
+					exchange.getRequestMethod(), body.length == 0 ? HttpRequest.BodyPublishers.noBody()
+							: HttpRequest.BodyPublishers.ofByteArray(body));
+			String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+			if (contentType != null) {
+				request.header("Content-Type", contentType);
+			}
+			HttpResponse<String> response = this.client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+			this.respond(exchange, response.statusCode(), response.body());
+		} catch (IOException e) {
+			this.respond(exchange, 502, BookingServer.error("The hotel's shard could not be reached"));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			this.respond(exchange, 503, BookingServer.error("The router is stopping"));
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			this.respond(exchange, 500, BookingServer.error("The request could not be completed"));
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/*
+	 * Asks the shard of every hotel for the hotel's answer to a chain wide request at once, such as its occupancy
+	 * over the period, and responds with all of them in order of hotel name. If any shard fails its response is
+	 * passed back instead
+	 *
+	 * @param exchange the request and response
+	 *
+	 * @param hotelPath the path asked of each hotel under /hotels/{hotel}, e.g. /occupancy
+	 */
+	private void gather(HttpExchange exchange, String hotelPath) throws IOException {
+		try {
+			if (!exchange.getRequestMethod().equals("GET")) {
+				this.respond(exchange, 405, BookingServer.error(exchange.getRequestMethod() + " is not supported on "
+						+ exchange.getRequestURI().getPath()));
+				return;
+			}
+			String query = exchange.getRequestURI().getRawQuery() == null ? "" : "?" + exchange.getRequestURI().getRawQuery();
+			TreeMap<String, CompletableFuture<HttpResponse<String>>> answers = new TreeMap<String, CompletableFuture<HttpResponse<String>>>();
+			for (Map.Entry<String, URI> e : this.owners.entrySet()) {
+				URI hotelAnswer = e.getValue().resolve("/hotels/"
+						+ URLEncoder.encode(e.getKey(), StandardCharsets.UTF_8).replace("+", "%20") + hotelPath + query);
+				answers.put(e.getKey(), this.client.sendAsync(HttpRequest.newBuilder(hotelAnswer).timeout(TIMEOUT).GET()
+						.build(), HttpResponse.BodyHandlers.ofString()));
+			}
+			StringBuilder json = new StringBuilder("[");
+			for (CompletableFuture<HttpResponse<String>> answer : answers.values()) {
+				HttpResponse<String> response = answer.join();
+				if (response.statusCode() != 200) {
+					this.respond(exchange, response.statusCode(), response.body());
+					return;
+				}
+				json.append(json.length() == 1 ? "" : ",").append(response.body());
+			}
+			this.respond(exchange, 200, json.append("]").toString());
+		} catch (CompletionException e) {
+			this.respond(exchange, 502, BookingServer.error("A shard could not be reached"));
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			this.respond(exchange, 500, BookingServer.error("The request could not be completed"));
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/*
+	 * Writes the JSON response with the status code
+	 *
+	 * @param exchange the request and response
+	 *
+	 * @param status the HTTP status code
+	 *
+	 * @param json the body of the response
+	 */
+	private void respond(HttpExchange exchange, int status, String json) throws IOException {
+		byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	/*
+	 * Reads the whole body of the request
+	 *
+	 * @param exchange the request
+	 *
+	 * @return the body
+	 */
+	private static byte[] readBody(HttpExchange exchange) throws IOException {
+		try (InputStream in = exchange.getRequestBody()) {
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				body.write(buffer, 0, read);
+			}
+			return body.toByteArray();
+		}
+	}
+}
@@ -0,0 +1,269 @@
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A test of the ShardRouter against two shards, each run as its own process with "java L4System server" in a
+ * directory holding only its own hotels, and the router run as a third process in front of them. It checks that the
+ * requests for a hotel, including a Supervisor's discount and reports, are carried out by the shard owning the hotel,
+ * and that the chain wide occupancy and reports are gathered from both shards. Run with "java ShardRouterTest" from
+ * the folder holding data
+ */
+public class ShardRouterTest {
+	private static final Duration TIMEOUT = Duration.ofSeconds(30); //Longest wait for a process to start or answer
+
+	private static HttpClient client = HttpClient.newBuilder().connectTimeout(TIMEOUT).build();
+
+	public static void main(String[] args) throws Exception {
+		File shardA = shardOf("5-star");
+		File shardB = shardOf("4-star", "3-star");
+		URI a = URI.create("http://localhost:" + freePort());
+		URI b = URI.create("http://localhost:" + freePort());
+		URI router = URI.create("http://localhost:" + freePort());
+		ArrayList<Process> processes = new ArrayList<Process>();
+		try {
+			processes.add(start(shardA, "server", String.valueOf(a.getPort()), shardA.getPath()));
+			processes.add(start(shardB, "server", String.valueOf(b.getPort()), shardB.getPath()));
+			waitUntilServing(a);
+			waitUntilServing(b);
+			processes.add(start(shardA, "router", String.valueOf(router.getPort()), a.toString(), b.toString()));
+			waitUntilServing(router);
+			checkRouting(router, a, b, shardA, shardB);
+		} finally {
+			for (Process process : processes) {
+				process.destroy(); // lets the shards close their systems
+				if (!process.waitFor(TIMEOUT.getSeconds(), TimeUnit.SECONDS)) {
+					process.destroyForcibly();
+				}
+			}
+			TestSupport.delete(shardA);
+			TestSupport.delete(shardB);
+		}
+		TestSupport.finish();
+	}
+
+	/*
+	 * Makes the requests of the test through the router and checks where they were carried out
+	 *
+	 * @param router the base URI of the router
+	 *
+	 * @param a the base URI of the shard owning 5-star
+	 *
+	 * @param b the base URI of the shard owning 4-star and 3-star
+	 *
+	 * @param shardA the directory of the shard owning 5-star
+	 *
+	 * @param shardB the directory of the shard owning 4-star and 3-star
+	 */
+	private static void checkRouting(URI router, URI a, URI b, File shardA, File shardB) throws Exception {
+		LocalDate today = LocalDate.now();
+		String period = "?from=" + today + "&to=" + today.plusDays(3);
+		TestSupport.check(send("GET", router, "/hotels", null).body().equals("[\"3-star\",\"4-star\",\"5-star\"]"),
+				"the router lists the hotels of both shards");
+		for (String hotel : new String[] { "3-star", "4-star", "5-star" }) {
+			HttpResponse<String> availability = send("GET", router, "/hotels/" + hotel + "/availability" + period, null);
+			TestSupport.check(availability.statusCode() == 200 && availability.body().contains("\"hotel\":\"" + hotel + "\""),
+					"the router passes on the availability of " + hotel);
+		}
+		TestSupport.check(send("GET", a, "/hotels/3-star/availability" + period, null).statusCode() == 404,
+				"the shard owning 5-star does not serve 3-star");
+
+		HttpResponse<String> booked = send("POST", router, "/hotels/3-star/reservations",
+				"name=Ann+Shard&type=S&checkin=" + today + "&nights=2&room=Classic+Double:1:0");
+		TestSupport.check(booked.statusCode() == 201, "a reservation is booked in 3-star through the router");
+		String number = field(booked.body(), "number");
+		String reservation = "/hotels/3-star/reservations/" + number;
+		TestSupport.check(send("GET", b, reservation, null).body().contains("\"name\":\"Ann Shard\""),
+				"the reservation is held by the shard owning 3-star");
+		TestSupport.check(send("GET", a, reservation, null).statusCode() == 404,
+				"the reservation is not held by the other shard");
+
+		TestSupport.check(send("POST", router, reservation + "/check-in", "").statusCode() == 200,
+				"the reservation is checked in through the router");
+		double cost = Double.parseDouble(field(send("GET", b, reservation, null).body(), "totalCost"));
+		HttpResponse<String> discounted = send("POST", router, reservation + "/discount", "discount=10");
+		TestSupport.check(discounted.statusCode() == 200, "a Supervisor's discount is applied through the router");
+		double discountedCost = Double.parseDouble(field(send("GET", b, reservation, null).body(), "totalCost"));
+		TestSupport.check(Math.abs(discountedCost - cost * 0.9) < 0.01,
+				"the shard owning 3-star took 10% off " + cost + " to " + discountedCost);
+
+		HttpResponse<String> occupancy = send("GET", router, "/occupancy" + period, null);
+		TestSupport.check(occupancy.statusCode() == 200 && occupancy.body().contains("\"hotel\":\"3-star\"")
+				&& occupancy.body().contains("\"hotel\":\"4-star\"") && occupancy.body().contains("\"hotel\":\"5-star\""),
+				"the occupancy of every hotel is gathered from both shards");
+		TestSupport.check(occupancy.body().contains("{\"type\":\"Classic Double\",\"bookings\":1,"),
+				"the gathered occupancy counts the reservation booked in 3-star");
+
+		HttpResponse<String> income = send("GET", router, "/reports/income" + period, null);
+		String report = "_billing_" + today + "_to_" + today.plusDays(3) + ".csv";
+		TestSupport.check(income.statusCode() == 200 && income.body().contains("\"file\":\"3-star" + report + "\"")
+				&& income.body().contains("\"file\":\"5-star" + report + "\""),
+				"the income report of every hotel is gathered from both shards");
+		TestSupport.check(analysis(shardB, "3-star" + report).exists() && analysis(shardB, "4-star" + report).exists()
+				&& !analysis(shardB, "5-star" + report).exists(), "the shard owning 3-star and 4-star wrote only their reports");
+		TestSupport.check(analysis(shardA, "5-star" + report).exists() && !analysis(shardA, "3-star" + report).exists(),
+				"the shard owning 5-star wrote only its report");
+
+		HttpResponse<String> occupants = send("GET", router, "/hotels/5-star/reports/occupants" + period, null);
+		TestSupport.check(occupants.statusCode() == 200 && occupants.body().contains("\"hotel\":\"5-star\""),
+				"a Supervisor's occupants report of 5-star is passed on by the router");
+		TestSupport.check(send("GET", router, "/reports/nights" + period, null).statusCode() == 400,
+				"the shards' answer to a report that doesn't exist is passed back");
+	}
+
+	/*
+	 * Makes the directory of a shard, holding a copy of the data folder with only the given hotels in its hotels file
+	 * and booking files
+	 *
+	 * @param hotels the hotels of the shard
+	 *
+	 * @return the directory
+	 */
+	private static File shardOf(String... hotels) throws IOException {
+		List<String> owned = Arrays.asList(hotels);
+		File directory = TestSupport.copyOfData();
+		Path hotelsFile = new File(directory, "data/hotels/l4Hotels.csv").toPath();
+		ArrayList<String> kept = new ArrayList<String>();
+		String hotel = null;
+		for (String line : Files.readAllLines(hotelsFile, StandardCharsets.UTF_8)) {
+			String first = line.substring(0, Math.max(line.indexOf(','), 0));
+			if (kept.size() < 2) {
+				kept.add(line); // the two header rows
+			} else {
+				hotel = first.equals("") ? hotel : first; // a hotel's name is only on its first room
+				if (owned.contains(hotel)) {
+					kept.add(line);
+				}
+			}
+		}
+		Files.write(hotelsFile, kept, StandardCharsets.UTF_8);
+		for (String bookings : new String[] { "reservations", "cancellations", "stays" }) {
+			Path bookingsFile = new File(directory, "data/bookingInfo/" + bookings + ".csv").toPath();
+			ArrayList<String> rows = new ArrayList<String>();
+			for (String line : Files.readAllLines(bookingsFile, StandardCharsets.UTF_8)) {
+				if (rows.isEmpty() || owned.contains(line.substring(0, Math.max(line.indexOf(','), 0)))) {
+					rows.add(line);
+				}
+			}
+			Files.write(bookingsFile, rows, StandardCharsets.UTF_8);
+		}
+		return directory;
+	}
+
+	/*
+	 * Finds a port nobody is listening on
+	 *
+	 * @return the port
+	 */
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+	/*
+	 * Starts L4System in a new JVM on the same class path as this one
+	 *
+	 * @param directory the directory to run it in and write its output to
+	 *
+	 * @param args the arguments of L4System
+	 *
+	 * @return the process
+	 */
+	private static Process start(File directory, String... args) throws IOException {
+		ArrayList<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add("L4System");
+		command.addAll(Arrays.asList(args));
+		return new ProcessBuilder(command).directory(directory).redirectErrorStream(true)
+				.redirectOutput(ProcessBuilder.Redirect.appendTo(new File(directory, args[0] + ".log"))).start();
+	}
+
+	/*
+	 * Waits for a server to answer GET /hotels
+	 *
+	 * @param server the base URI of the server
+	 *
+	 * @throws IOException if it has not answered within TIMEOUT
+	 */
+	private static void waitUntilServing(URI server) throws IOException, InterruptedException {
+		long giveUp = System.nanoTime() + TIMEOUT.toNanos();
+		while (System.nanoTime() < giveUp) {
+			try {
+				if (send("GET", server, "/hotels", null).statusCode() == 200) {
+					return;
+				}
+			} catch (IOException e) {
+				Thread.sleep(100); // not listening yet
+			}
+		}
+		throw new IOException(server + " did not start serving within " + TIMEOUT.getSeconds() + " seconds");
+	}
+
+	/*
+	 * Sends a request and waits for its response
+	 *
+	 * @param method the HTTP method
+	 *
+	 * @param server the base URI of the server
+	 *
+	 * @param path the path and query of the request
+	 *
+	 * @param form the form body, or null to send none
+	 *
+	 * @return the response
+	 */
+	private static HttpResponse<String> send(String method, URI server, String path, String form)
+			throws IOException, InterruptedException {
+		HttpRequest.Builder request = HttpRequest.newBuilder(server.resolve(path)).timeout(TIMEOUT).method(method,
+				form == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(form));
+		if (form != null) {
+			request.header("Content-Type", "application/x-www-form-urlencoded");
+		}
+		return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+	}
+
+	/*
+	 * Finds the value of a number field of a JSON object
+	 *
+	 * @param json the JSON object
+	 *
+	 * @param name the name of the field
+	 *
+	 * @return the value, or null if the object has no such field
+	 */
+	private static String field(String json, String name) {
+		Matcher value = Pattern.compile("\"" + name + "\":(-?[0-9.]+)").matcher(json);
+		return value.find() ? value.group(1) : null;
+	}
+
+	/*
+	 * Finds a report file in the data analysis folder of a shard
+	 *
+	 * @param shard the directory of the shard
+	 *
+	 * @param fileName the name of the report file
+	 *
+	 * @return the file
+	 */
+	private static File analysis(File shard, String fileName) {
+		return new File(shard, "data/dataAnalysis/" + fileName);
+	}
+}
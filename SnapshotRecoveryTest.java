@@ -0,0 +1,221 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+/**
+ * A test of the BookingSnapshot written when the system is closed. The same changes are made to copies of the data
+ * folder and the system closed, and each copy is then started again from its snapshot, after a crash following the
+ * snapshot, after its csv files were edited or after its snapshot was damaged, and must come back with the bookings
+ * the csv files hold. Run with "java SnapshotRecoveryTest" from the folder holding data
+ */
+public class SnapshotRecoveryTest {
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0) {
+			makeChanges(args[0].equals("crash"), Integer.parseInt(args[1]));
+			return;
+		}
+		File reference = closedCopy();
+		String expected = TestSupport.csvStateOf(reference);
+		TestSupport.check(TestSupport.runJava(reference, "SnapshotRecoveryTest", "close", "13") == 0,
+				"the changes are made again later and closed");
+		String expectedTwice = TestSupport.csvStateOf(reference);
+		TestSupport.delete(reference);
+
+		File snapshotted = closedCopy();
+		TestSupport.check(snapshot(snapshotted).exists(), "closing the system writes a snapshot");
+		TestSupport.check(stateOf(snapshotted).equals(expected), "loading the snapshot gives the bookings of the csv files");
+		TestSupport.delete(snapshotted);
+
+		checkSnapshotLoaded(expected);
+		checkCrashAfterSnapshot(expectedTwice);
+		checkEditedCsv(expected);
+		checkRemovedRow(expected);
+		checkDamagedSnapshot(expected, "cut short", 0.5, false);
+		checkDamagedSnapshot(expected, "with a byte changed in its middle", 0.5, true);
+		checkDamagedSnapshot(expected, "emptied", 0, false);
+		checkTemporarySnapshot(expected);
+		TestSupport.finish();
+	}
+
+	/*
+	 * Makes the changes in the copy of data the JVM was started in and either closes the system or forces the journal
+	 * to disk and stops the JVM dead
+	 *
+	 * @param crash true to stop the JVM without closing the system
+	 *
+	 * @param daysAhead how many days from today the bookings check in
+	 */
+	private static void makeChanges(boolean crash, int daysAhead) {
+		BookingSystem system = new BookingSystem();
+		TestSupport.makeChanges(system, daysAhead);
+		if (crash) {
+			system.sync();
+			Runtime.getRuntime().halt(0);
+		}
+		system.close();
+	}
+
+	/*
+	 * Checks the snapshot is loaded in place of the csv files while they are unchanged, by changing a guest's name in
+	 * reservations.csv without changing its size or last modified time
+	 *
+	 * @param expected the bookings the csv files hold
+	 */
+	private static void checkSnapshotLoaded(String expected) throws Exception {
+		File copy = closedCopy();
+		Path reservations = new File(copy, "data/bookingInfo/reservations.csv").toPath();
+		FileTime modified = Files.getLastModifiedTime(reservations);
+		replace(reservations, "Ann Test", "Ann Xxxx");
+		Files.setLastModifiedTime(reservations, modified);
+		TestSupport.check(stateOf(copy).equals(expected), "the snapshot is loaded in place of csv files it matches");
+		TestSupport.delete(copy);
+	}
+
+	/*
+	 * Checks changes made after the snapshot was written and only held in the journal when the system stopped are
+	 * replayed over the snapshot
+	 *
+	 * @param expectedTwice the bookings the csv files hold once the changes are made twice
+	 */
+	private static void checkCrashAfterSnapshot(String expectedTwice) throws Exception {
+		File copy = closedCopy();
+		TestSupport.check(TestSupport.runJava(copy, "SnapshotRecoveryTest", "crash", "13") == 0 && snapshot(copy).exists(),
+				"the changes are made again later and the system stopped dead with the snapshot in place");
+		TestSupport.check(stateOf(copy).equals(expectedTwice), "the journal is replayed over the snapshot after a crash");
+		TestSupport.check(TestSupport.csvStateOf(copy).equals(expectedTwice),
+				"the replayed bookings are written to the csv files");
+		TestSupport.delete(copy);
+	}
+
+	/*
+	 * Checks the snapshot is not loaded once a row of reservations.csv was edited, even if its size is unchanged
+	 *
+	 * @param expected the bookings the csv files held before the edit
+	 */
+	private static void checkEditedCsv(String expected) throws Exception {
+		File copy = closedCopy();
+		replace(new File(copy, "data/bookingInfo/reservations.csv").toPath(), "Ann Test", "Ann Edit");
+		String state = stateOf(copy);
+		TestSupport.check(state.equals(expected.replace("Ann Test", "Ann Edit")),
+				"a row edited in reservations.csv is loaded over the snapshot");
+		TestSupport.delete(copy);
+	}
+
+	/*
+	 * Checks the snapshot is not loaded once a row was removed from reservations.csv
+	 *
+	 * @param expected the bookings the csv files held before the row was removed
+	 */
+	private static void checkRemovedRow(String expected) throws Exception {
+		File copy = closedCopy();
+		Path reservations = new File(copy, "data/bookingInfo/reservations.csv").toPath();
+		String rows = new String(Files.readAllBytes(reservations), StandardCharsets.UTF_8);
+		Files.write(reservations, rows.replaceAll("(?m)^.*Di Test.*\n", "").getBytes(StandardCharsets.UTF_8));
+		String state = stateOf(copy);
+		TestSupport.check(!state.contains("Di Test") && TestSupport.csvStateOf(copy).equals(state),
+				"a row removed from reservations.csv is not loaded from the snapshot");
+		TestSupport.check(state.replaceAll("(?m)^Rooms .*\n", "")
+				.equals(expected.replaceAll("(?m)^(Rooms |Reservation .*Di Test).*\n", "")), "the other bookings are all loaded");
+		TestSupport.delete(copy);
+	}
+
+	/*
+	 * Checks the csv files are read in place of a snapshot damaged on disk
+	 *
+	 * @param expected the bookings the csv files hold
+	 *
+	 * @param damage how the snapshot was damaged
+	 *
+	 * @param keep the part of the snapshot to keep
+	 *
+	 * @param flip true to change the byte after the part kept rather than cut the snapshot there
+	 */
+	private static void checkDamagedSnapshot(String expected, String damage, double keep, boolean flip) throws Exception {
+		File copy = closedCopy();
+		byte[] bytes = Files.readAllBytes(snapshot(copy).toPath());
+		int at = (int) (bytes.length * keep);
+		if (flip) {
+			bytes[at] ^= 1;
+		} else {
+			bytes = Arrays.copyOf(bytes, at);
+		}
+		Files.write(snapshot(copy).toPath(), bytes);
+		TestSupport.check(stateOf(copy).equals(expected), "a snapshot " + damage + " is read from the csv files instead");
+		TestSupport.delete(copy);
+	}
+
+	/*
+	 * Checks a temporary snapshot left behind by a crash while the snapshot was written is not loaded, and is
+	 * replaced by the next snapshot
+	 *
+	 * @param expected the bookings the csv files hold
+	 */
+	private static void checkTemporarySnapshot(String expected) throws Exception {
+		File copy = closedCopy();
+		File temp = new File(snapshot(copy).getPath() + ".tmp");
+		Files.write(temp.toPath(), "half a snapshot".getBytes(StandardCharsets.UTF_8));
+		snapshot(copy).delete();
+		TestSupport.check(stateOf(copy).equals(expected), "a temporary snapshot left by a crash is not loaded");
+		TestSupport.check(snapshot(copy).exists() && !temp.exists(), "the next close replaces it with a whole snapshot");
+		TestSupport.delete(copy);
+	}
+
+	/*
+	 * Makes the changes in a new copy of data, checking in 10 days from today, and closes the system, writing a
+	 * snapshot
+	 *
+	 * @return the directory holding the copy
+	 */
+	private static File closedCopy() throws IOException, InterruptedException {
+		File copy = TestSupport.copyOfData();
+		if (TestSupport.runJava(copy, "SnapshotRecoveryTest", "close", "10") != 0) {
+			throw new IOException("The changes could not be made in " + copy);
+		}
+		return copy;
+	}
+
+	/*
+	 * Loads the system of a copy of data, from its snapshot if it can be, and describes it
+	 *
+	 * @param directory the directory holding the copy
+	 *
+	 * @return the description of its bookings
+	 */
+	private static String stateOf(File directory) {
+		BookingSystem system = new BookingSystem(directory.getPath());
+		try {
+			return TestSupport.stateOf(system);
+		} finally {
+			system.close();
+		}
+	}
+
+	/*
+	 * Replaces every occurrence of a string in a file
+	 *
+	 * @param file the file
+	 *
+	 * @param target the string to replace
+	 *
+	 * @param replacement the string to replace it with
+	 */
+	private static void replace(Path file, String target, String replacement) throws IOException {
+		String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+		Files.write(file, text.replace(target, replacement).getBytes(StandardCharsets.UTF_8));
+	}
+
+	/*
+	 * Finds the snapshot of a copy of data
+	 *
+	 * @param directory the directory holding the copy
+	 *
+	 * @return the snapshot file
+	 */
+	private static File snapshot(File directory) {
+		return new File(directory, "data/bookingInfo/snapshot.bin");
+	}
+}
@@ -0,0 +1,421 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A class to hold the checked out hotel stays that are too old to be worth keeping in memory. Each room booking of an
+ * archived stay is packed into a fixed width row of a memory mapped file, with its room referred to by an id, and is
+ * read back through a Cursor which reads the rows in place rather than creating a HotelStay for each. The rest of each
+ * stay, such as the guest's name and bills, is appended to a csv history in the same form as stays.csv, which is never
+ * read back by the system. The last row of each stay is marked, so the rows of a stay cut short by a crash are
+ * dropped when the archive is next opened and the stay, still in the csv files, is archived again
+ */
+public class StayArchive {
+	private static final int MAGIC = 0x4C345341; //"L4SA"
+	private static final int VERSION = 2; //1 had no end of stay marks
+	private static final int HEADER_BYTES = 16;
+	private static final int ROW_BYTES = 24; //number, room, check-in, nights, adults, children, breakfast, stay end, padding
+	private static final int STAY_END = 21; //The offset in a row of the byte marking the last row of a stay
+
+	private File rowsFile;
+	private File roomsFile;
+	private File historyFile;
+	private FileChannel channel;
+	private volatile int rowCount; //The number of complete rows in the file, set after the rows are written
+	private ArrayList<Room> rooms; //rooms.get(id) = the room with that archive id, null if it isn't in the catalog any more
+	private ArrayList<String> hotels; //hotels.get(id) = the hotel of the room with that archive id
+	private int[] roomIds; //roomIds[catalog id] = the archive id of the room, -1 if none of its bookings are archived yet
+	private BitSet numbers; //The reservation numbers of every archived stay
+
+	/**
+	 * A cursor over the archived room bookings of a hotel which have at least one night in a period. Call next to move
+	 * to each room booking in turn before reading it
+	 */
+	public static class Cursor {
+		private ByteBuffer rows;
+		private boolean[] inHotel; //inHotel[archive id] = true if the room belongs to the hotel being read
+		private ArrayList<Room> rooms;
+		private long from;
+		private long to;
+		private int position = -ROW_BYTES;
+
+		/*
+		 * @param rows the rows to read
+		 *
+		 * @param inHotel which archive ids belong to the hotel
+		 *
+		 * @param rooms the room of each archive id
+		 *
+		 * @param from the epoch day of the first night of the period
+		 *
+		 * @param to the epoch day the period ends at (not included)
+		 */
+		private Cursor(ByteBuffer rows, boolean[] inHotel, ArrayList<Room> rooms, long from, long to) {
+			this.rows = rows;
+			this.inHotel = inHotel;
+			this.rooms = rooms;
+			this.from = from;
+			this.to = to;
+		}
+
+		/**
+		 * Moves to the next room booking in the period
+		 * @return true if there is one, false if every room booking has been read
+		 */
+		public boolean next() {
+			while ((this.position += ROW_BYTES) + ROW_BYTES <= this.rows.limit()) {
+				int room = this.rows.getInt(this.position + 4);
+				long checkin = this.getCheckinDay();
+				if (room < this.inHotel.length && this.inHotel[room] && checkin < this.to
+						&& checkin + this.getNights() > this.from) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Returns the reservation number of the current room booking
+		 * @return the number
+		 */
+		public int getNumber() {
+			return this.rows.getInt(this.position);
+		}
+
+		/**
+		 * Returns the room of the current room booking
+		 * @return the room
+		 */
+		public Room getRoom() {
+			return this.rooms.get(this.rows.getInt(this.position + 4));
+		}
+
+		/**
+		 * Returns the check-in date of the current room booking
+		 * @return the epoch day of the first night
+		 */
+		public long getCheckinDay() {
+			return this.rows.getInt(this.position + 8);
+		}
+
+		/**
+		 * Returns the number of nights of the current room booking
+		 * @return the number of nights
+		 */
+		public int getNights() {
+			return this.rows.getInt(this.position + 12);
+		}
+
+		/**
+		 * Returns the number of adults in the current room booking
+		 * @return the number of adults
+		 */
+		public int getAdults() {
+			return this.rows.getShort(this.position + 16);
+		}
+
+		/**
+		 * Returns the number of children in the current room booking
+		 * @return the number of children
+		 */
+		public int getChildren() {
+			return this.rows.getShort(this.position + 18);
+		}
+
+		/**
+		 * Checks if breakfast was included with the current room booking
+		 * @return true if breakfast was included
+		 */
+		public boolean isBreakfastIncluded() {
+			return this.rows.get(this.position + 20) != 0;
+		}
+	}
+
+	/**
+	 * Opens the archive in the given directory, creating it if it doesn't exist. Rows after the last whole stay, left
+	 * by a crash while they were being written, are dropped. An archive of version 1 is marked and upgraded
+	 * @param directory the directory holding stayArchive.bin, stayArchiveRooms.csv and archivedStays.csv
+	 * @param catalog the rooms of every hotel
+	 * @throws IOException if the archive could not be opened or isn't an archive
+	 */
+	public StayArchive(String directory, RoomCatalog catalog) throws IOException {
+		this.rowsFile = new File(directory, "stayArchive.bin");
+		this.roomsFile = new File(directory, "stayArchiveRooms.csv");
+		this.historyFile = new File(directory, "archivedStays.csv");
+		this.rooms = new ArrayList<Room>();
+		this.hotels = new ArrayList<String>();
+		this.roomIds = new int[catalog.size()];
+		Arrays.fill(this.roomIds, -1);
+		CsvReader.read(this.roomsFile.getPath(), values -> {
+			Room room = catalog.getRoom(values[1], values[2]);
+			this.rooms.add(room);
+			this.hotels.add(values[1]);
+			if (room != null) {
+				this.roomIds[room.getId()] = Integer.parseInt(values[0]);
+			}
+		});
+		this.channel = FileChannel.open(this.rowsFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		if (this.channel.size() < HEADER_BYTES) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			header.putInt(MAGIC).putInt(VERSION).flip();
+			this.channel.truncate(0);
+			this.channel.write(header, 0);
+			this.channel.force(true);
+		} else {
+			ByteBuffer header = ByteBuffer.allocate(8);
+			this.channel.read(header, 0);
+			if (header.getInt(0) != MAGIC || (header.getInt(4) != VERSION && header.getInt(4) != 1)) {
+				this.channel.close();
+				throw new IOException(this.rowsFile + " is not a stay archive of this version");
+			}
+			this.rowCount = (int) ((this.channel.size() - HEADER_BYTES) / ROW_BYTES);
+			if (header.getInt(4) == 1) {
+				this.markStayEnds();
+			}
+		}
+		this.rowCount = this.wholeStayRows();
+		this.channel.truncate(HEADER_BYTES + (long) this.rowCount * ROW_BYTES);
+		this.channel.force(true);
+		this.numbers = new BitSet();
+		ByteBuffer rows = this.map();
+		int lastNumber = Reservation.getLastBookingNumber();
+		for (int position = 0; position < rows.limit(); position += ROW_BYTES) {
+			int number = rows.getInt(position);
+			this.numbers.set(number);
+			lastNumber = Math.max(lastNumber, number);
+		}
+		Reservation.setLastBookingNumber(lastNumber); // archived numbers are never given out again
+	}
+
+	/*
+	 * Counts the rows of the file up to the end of the last stay whose rows were all written, stopping at the first
+	 * row that isn't part of a stay, as a crash can leave a block of zeros before rows that did reach the disk
+	 *
+	 * @return the number of rows to keep
+	 */
+	private int wholeStayRows() throws IOException {
+		ByteBuffer rows = this.map();
+		int whole = 0;
+		int stay = -1; //The number of the stay being read, -1 between stays
+		for (int row = 0; row < this.rowCount; row++) {
+			int number = rows.getInt(row * ROW_BYTES);
+			if (number <= 0 || (stay != -1 && number != stay)) {
+				break;
+			}
+			if (rows.get(row * ROW_BYTES + STAY_END) != 0) {
+				whole = row + 1;
+				stay = -1;
+			} else {
+				stay = number;
+			}
+		}
+		return whole;
+	}
+
+	/*
+	 * Upgrades an archive of version 1 by marking the last row of each run of rows with the same number as the end of
+	 * a stay. Whether the last stay was whole can't be told, so it is kept as version 1 would have kept it
+	 */
+	private void markStayEnds() throws IOException {
+		ByteBuffer rows = this.channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES, (long) this.rowCount * ROW_BYTES);
+		for (int row = 0; row < this.rowCount; row++) {
+			boolean last = row + 1 == this.rowCount || rows.getInt((row + 1) * ROW_BYTES) != rows.getInt(row * ROW_BYTES);
+			rows.put(row * ROW_BYTES + STAY_END, (byte) (last ? 1 : 0));
+		}
+		ByteBuffer version = ByteBuffer.allocate(4);
+		version.putInt(VERSION).flip();
+		this.channel.write(version, 4);
+		this.channel.force(true);
+	}
+
+	/*
+	 * Maps the complete rows of the file
+	 *
+	 * @return the rows, read only
+	 */
+	private ByteBuffer map() throws IOException {
+		return this.channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, (long) this.rowCount * ROW_BYTES);
+	}
+
+	/**
+	 * Checks if the stay of a reservation has been archived
+	 * @param number the reservation number
+	 * @return true if it has been archived
+	 */
+	public synchronized boolean contains(int number) {
+		return this.numbers.get(number);
+	}
+
+	/**
+	 * Returns the number of archived room bookings
+	 * @return the number of rows
+	 */
+	public int size() {
+		return this.rowCount;
+	}
+
+	/*
+	 * Returns the archive id of a room, giving it the next id if it doesn't have one yet
+	 *
+	 * @param hotelName the hotel of the room
+	 *
+	 * @param room the room
+	 *
+	 * @param newRooms the lines of the rooms file for rooms given an id, to be appended to it
+	 *
+	 * @return the archive id
+	 */
+	private int idOf(String hotelName, Room room, List<String> newRooms) {
+		if (this.roomIds[room.getId()] == -1) {
+			this.roomIds[room.getId()] = this.rooms.size();
+			newRooms.add(this.rooms.size() + "," + hotelName + "," + room.getType());
+			this.rooms.add(room);
+			this.hotels.add(hotelName);
+		}
+		return this.roomIds[room.getId()];
+	}
+
+	/**
+	 * Appends stays of a hotel to the archive, their rows first to the csv history and then to the packed rows, and
+	 * forces both to disk before returning
+	 * @param hotelName the name of the hotel
+	 * @param stays the stays to archive
+	 * @param history the row of each stay as it is written to stays.csv
+	 * @return true if every stay was archived, false if they could not be written
+	 */
+	public synchronized boolean append(String hotelName, List<HotelStay> stays, List<String[]> history) {
+		ArrayList<String> newRooms = new ArrayList<String>();
+		int bookings = 0;
+		for (HotelStay stay : stays) {
+			bookings += stay.getReservation().getRooms().size();
+		}
+		ByteBuffer rows = ByteBuffer.allocate(bookings * ROW_BYTES);
+		for (HotelStay stay : stays) {
+			Reservation r = stay.getReservation();
+			int left = r.getRooms().size();
+			for (RoomBooking rb : r.getRooms()) {
+				rows.putInt(r.getNumber());
+				rows.putInt(this.idOf(hotelName, rb.getRoom(), newRooms));
+				rows.putInt((int) r.getCheckinDate().toEpochDay());
+				rows.putInt(r.getNumberOfNights());
+				rows.putShort((short) rb.getOccupancy()[0]);
+				rows.putShort((short) rb.getOccupancy()[1]);
+				rows.put((byte) (rb.isBreakfastIncluded() ? 1 : 0));
+				rows.put((byte) (--left == 0 ? 1 : 0)); // marks the stay as whole once its last row is on disk
+				rows.put(new byte[2]);
+			}
+		}
+		rows.flip();
+		ArrayList<String> lines = new ArrayList<String>(history.size());
+		for (String[] row : history) {
+			lines.add(String.join(",", row));
+		}
+		try {
+			appendLines(this.roomsFile, newRooms);
+		} catch (IOException e) {
+			e.printStackTrace();
+			for (int i = 0; i < newRooms.size(); i++) { // the new ids were never saved, so they are given out again next time
+				Room room = this.rooms.remove(this.rooms.size() - 1);
+				this.hotels.remove(this.hotels.size() - 1);
+				this.roomIds[room.getId()] = -1;
+			}
+			return false;
+		}
+		try {
+			appendLines(this.historyFile, lines);
+			long position = HEADER_BYTES + (long) this.rowCount * ROW_BYTES;
+			while (rows.hasRemaining()) {
+				position += this.channel.write(rows, position);
+			}
+			this.channel.force(false);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		this.rowCount += bookings;
+		for (HotelStay stay : stays) {
+			this.numbers.set(stay.getReservation().getNumber());
+		}
+		return true;
+	}
+
+	/*
+	 * Appends lines to a text file and forces them to disk
+	 *
+	 * @param file the file
+	 *
+	 * @param lines the lines to append
+	 */
+	private static void appendLines(File file, List<String> lines) throws IOException {
+		if (lines.isEmpty()) {
+			return;
+		}
+		StringBuilder text = new StringBuilder();
+		for (String line : lines) {
+			text.append(line).append(System.lineSeparator());
+		}
+		try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND)) {
+			ByteBuffer bytes = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+			while (bytes.hasRemaining()) {
+				out.write(bytes);
+			}
+			out.force(false);
+		}
+	}
+
+	/**
+	 * Returns a cursor over the archived room bookings of a hotel which have at least one night between from and to
+	 * @param hotelName the name of the hotel
+	 * @param from the first night of the period
+	 * @param to the date the period ends at (not included)
+	 * @return the cursor, which only sees the rows archived before it was created
+	 */
+	public Cursor cursor(String hotelName, LocalDate from, LocalDate to) {
+		boolean[] inHotel;
+		ArrayList<Room> rooms;
+		ByteBuffer rows;
+		synchronized (this) {
+			inHotel = new boolean[this.hotels.size()];
+			for (int id = 0; id < inHotel.length; id++) {
+				inHotel[id] = this.rooms.get(id) != null && this.hotels.get(id).equals(hotelName);
+			}
+			rooms = new ArrayList<Room>(this.rooms);
+			try {
+				rows = this.map();
+			} catch (IOException e) {
+				e.printStackTrace();
+				rows = ByteBuffer.allocate(0);
+			}
+		}
+		return new Cursor(rows, inHotel, rooms, from.toEpochDay(), to.toEpochDay());
+	}
+
+	/**
+	 * Returns the file holding the packed rows, whose size and last modified time change whenever stays are archived
+	 * @return the file
+	 */
+	public File getFile() {
+		return this.rowsFile;
+	}
+
+	/**
+	 * Closes the archive
+	 */
+	public void close() {
+		try {
+			this.channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
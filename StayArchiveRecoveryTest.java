@@ -0,0 +1,179 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A test of the recovery of the StayArchive. Stays of one and of several rooms are checked out and archived, and the
+ * archive is then left as a crash while archiving them could leave it: the stays still in the csv files and the rows
+ * of the last stay of several rooms cut short or lost in a block of zeros. Starting the system again must archive
+ * every stay with all of its rooms, as when nothing went wrong. Run with "java StayArchiveRecoveryTest" from the
+ * folder holding data
+ */
+public class StayArchiveRecoveryTest {
+	private static final int HORIZON = -30; //Days after checking out a stay is kept in memory, so today's are archived
+	private static final String[] CSV_FILES = { "reservations.csv", "cancellations.csv", "stays.csv" };
+
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0) {
+			checkOutStays();
+			return;
+		}
+		File copy = TestSupport.copyOfData();
+		TestSupport.check(TestSupport.runJava(copy, "StayArchiveRecoveryTest", "stays") == 0,
+				"the stays are checked out and closed");
+		File bookingInfo = new File(copy, "data/bookingInfo");
+		byte[][] csvFiles = new byte[CSV_FILES.length][];
+		for (int i = 0; i < CSV_FILES.length; i++) {
+			csvFiles[i] = Files.readAllBytes(new File(bookingInfo, CSV_FILES[i]).toPath());
+		}
+		BookingSystem system = new BookingSystem(copy.getPath());
+		TestSupport.check(system.archiveStays(HORIZON) == 4, "the four stays checked out are archived");
+		List<String> expectedRows = archivedRows(system);
+		String expected = TestSupport.stateOf(system);
+		system.close();
+		byte[] archive = Files.readAllBytes(archive(copy).toPath());
+		int cut = lastStayOfRooms(archive);
+		TestSupport.check(cut > 0 && expectedRows.size() == (archive.length - 16) / 24, "the archive holds "
+				+ expectedRows.size() + " rows, the last stay of several rooms starting at row " + cut);
+
+		byte[] cutShort = Arrays.copyOf(archive, 16 + (cut + 1) * 24);
+		checkRecovery(copy, csvFiles, cutShort, cut, expectedRows, expected, "cut short after the first row of a stay");
+		byte[] zeroed = archive.clone();
+		Arrays.fill(zeroed, 16 + (cut + 1) * 24, 16 + (cut + 2) * 24, (byte) 0);
+		checkRecovery(copy, csvFiles, zeroed, cut, expectedRows, expected, "with a block of zeros in place of a stay's row");
+
+		byte[] version1 = archive.clone();
+		ByteBuffer rows = ByteBuffer.wrap(version1);
+		rows.putInt(4, 1);
+		for (int position = 16; position < version1.length; position += 24) {
+			rows.put(position + 21, (byte) 0); // version 1 had no end of stay marks
+		}
+		Files.write(archive(copy).toPath(), version1);
+		system = new BookingSystem(copy.getPath());
+		TestSupport.check(archivedRows(system).equals(expectedRows), "an archive of version 1 keeps every row");
+		system.close();
+		TestSupport.check(Arrays.equals(Files.readAllBytes(archive(copy).toPath()), archive),
+				"an archive of version 1 is marked and upgraded in place");
+		TestSupport.delete(copy);
+		TestSupport.finish();
+	}
+
+	/*
+	 * Makes the changes in the copy of data the JVM was started in, checks in and out the reservations of one and of
+	 * several rooms that are left and closes the system
+	 */
+	private static void checkOutStays() {
+		BookingSystem system = new BookingSystem();
+		TestSupport.makeChanges(system);
+		for (String name : new String[] { "Ann Test", "Di Test", "Ed Test" }) {
+			Reservation r = system.findReservations("5-star", name).get(0);
+			system.checkIn("5-star", r);
+			system.checkOut("5-star", r);
+		}
+		system.close();
+	}
+
+	/*
+	 * Puts the csv files back as they were before the stays were archived and replaces the archive with a damaged
+	 * one, as if the system stopped while archiving, then checks starting the system archives every stay whole
+	 *
+	 * @param copy the directory holding the copy of data
+	 *
+	 * @param csvFiles the csv files before the stays were archived
+	 *
+	 * @param damaged the damaged archive
+	 *
+	 * @param cut the first row of the stay damaged
+	 *
+	 * @param expectedRows the rows archived when nothing went wrong
+	 *
+	 * @param expected the bookings left once the stays were archived
+	 *
+	 * @param damage how the archive was damaged
+	 */
+	private static void checkRecovery(File copy, byte[][] csvFiles, byte[] damaged, int cut, List<String> expectedRows,
+			String expected, String damage) throws IOException {
+		File bookingInfo = new File(copy, "data/bookingInfo");
+		for (int i = 0; i < CSV_FILES.length; i++) {
+			Files.write(new File(bookingInfo, CSV_FILES[i]).toPath(), csvFiles[i]);
+		}
+		for (String stale : new String[] { "journal.log", "snapshot.bin", "revenue.bin" }) {
+			new File(bookingInfo, stale).delete();
+		}
+		Files.write(archive(copy).toPath(), damaged);
+		BookingSystem system = new BookingSystem(copy.getPath());
+		try {
+			int number = ByteBuffer.wrap(damaged).getInt(16 + cut * 24);
+			boolean loaded = false;
+			for (ArrayList<HotelStay> hotelStays : system.getHotelStays().values()) {
+				for (HotelStay stay : hotelStays) {
+					loaded |= stay.getReservation().getNumber() == number;
+				}
+			}
+			TestSupport.check(archivedRows(system).size() < expectedRows.size() && loaded,
+					"an archive " + damage + " drops the rows of the stay, which is loaded from the csv files");
+			system.archiveStays(HORIZON);
+			TestSupport.check(archivedRows(system).equals(expectedRows) && TestSupport.stateOf(system).equals(expected),
+					"archiving again after an archive " + damage + " archives every stay whole");
+		} finally {
+			system.close();
+		}
+	}
+
+	/*
+	 * Finds the first row of the last stay with more than one row in the archive
+	 *
+	 * @param archive the bytes of the archive
+	 *
+	 * @return the index of the row, or -1 if every stay has one row
+	 */
+	private static int lastStayOfRooms(byte[] archive) {
+		ByteBuffer rows = ByteBuffer.wrap(archive);
+		int last = -1;
+		for (int row = 1; 16 + (row + 1) * 24 <= archive.length; row++) {
+			int number = rows.getInt(16 + row * 24);
+			if (number == rows.getInt(16 + (row - 1) * 24) && (row < 2 || number != rows.getInt(16 + (row - 2) * 24))) {
+				last = row - 1;
+			}
+		}
+		return last;
+	}
+
+	/*
+	 * Describes every room booking in the archive of the system, in order
+	 *
+	 * @param system the system
+	 *
+	 * @return one description per row
+	 */
+	private static List<String> archivedRows(BookingSystem system) {
+		ArrayList<String> rows = new ArrayList<String>();
+		for (String hotelName : system.getAllRooms().keySet()) {
+			StayArchive.Cursor cursor = system.getArchivedStays(hotelName, LocalDate.MIN, LocalDate.MAX);
+			while (cursor != null && cursor.next()) {
+				rows.add(String.format("%s %d %s %d %d %d %d %b", hotelName, cursor.getNumber(), cursor.getRoom().getType(),
+						cursor.getCheckinDay(), cursor.getNights(), cursor.getAdults(), cursor.getChildren(),
+						cursor.isBreakfastIncluded()));
+			}
+		}
+		Collections.sort(rows);
+		return rows;
+	}
+
+	/*
+	 * Finds the archive of a copy of data
+	 *
+	 * @param directory the directory holding the copy
+	 *
+	 * @return the file of archived rows
+	 */
+	private static File archive(File directory) {
+		return new File(directory, "data/bookingInfo/stayArchive.bin");
+	}
+}
@@ -0,0 +1,71 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A class to index the stays of a single hotel by reservation number, keeping the stays whose guests are checked in
+ * apart from the stays that have checked out, so that a stay is found without looking at any other stay and the
+ * checked out stays can be gone through without the ones still in the hotel
+ */
+public class StayIndex {
+	private HashMap<Integer, HotelStay> active; //Maps each reservation number to its stay while the guests are checked in
+	private HashMap<Integer, HotelStay> history; //Maps each reservation number to its stay once the guests have checked out
+
+	/**
+	 * Creates an empty StayIndex
+	 */
+	public StayIndex() {
+		this.active = new HashMap<Integer, HotelStay>();
+		this.history = new HashMap<Integer, HotelStay>();
+	}
+
+	/**
+	 * Adds a stay, as checked in or checked out depending on its guests
+	 * @param stay the stay
+	 */
+	public void add(HotelStay stay) {
+		int number = stay.getReservation().getNumber();
+		if (stay.isCheckedIn()) {
+			this.history.remove(number);
+			this.active.put(number, stay);
+		} else {
+			this.active.remove(number);
+			this.history.put(number, stay);
+		}
+	}
+
+	/**
+	 * Moves a stay whose guests have checked in or out since it was added to the right set
+	 * @param stay the stay
+	 */
+	public void update(HotelStay stay) {
+		this.add(stay);
+	}
+
+	/**
+	 * Removes a stay
+	 * @param stay the stay
+	 */
+	public void remove(HotelStay stay) {
+		int number = stay.getReservation().getNumber();
+		this.active.remove(number);
+		this.history.remove(number);
+	}
+
+	/**
+	 * Returns the stay of a reservation, whether its guests are checked in or have checked out
+	 * @param number the reservation number
+	 * @return the stay, or null if the reservation has no stay
+	 */
+	public HotelStay get(int number) {
+		HotelStay stay = this.active.get(number);
+		return stay != null ? stay : this.history.get(number);
+	}
+
+	/**
+	 * Returns every stay whose guests have checked out
+	 * @return a new list of the stays, in no particular order
+	 */
+	public ArrayList<HotelStay> checkedOut() {
+		return new ArrayList<HotelStay>(this.history.values());
+	}
+}
@@ -1,4 +1,5 @@
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.TreeMap;
 
 /**
@@ -15,7 +16,7 @@ public class Supervisor extends DeskClerk {
 	 */
 	public Supervisor(String hotelName, BookingSystem system) {
 		super(hotelName, system);
-		this.analyzer = new DataAnalysis(this.hotelName, this.system.getHotelStays().get(this.hotelName));
+		this.analyzer = new DataAnalysis(this.hotelName, this.system);
 	}
 
 	/**
@@ -28,17 +29,7 @@ public class Supervisor extends DeskClerk {
 	 */
 	public boolean applyDiscount(double discount, int reservationNumber) {
 		discount = discount > 1 ? discount / 100 : discount;
-		Reservation r = this.system.getReservation(hotelName, reservationNumber);
-		if (r == null) {
-			return false;
-		}
-		if (r.getTotalCost().getAmountDue() != 0.00) { // discounts can only be applied on checkin so if it's not 0 they have checked in and the desk clerk has calculated their bill
-			r.getTotalCost().setAmountDue(r.getTotalCost().getAmountDue() * (1 - discount));
-			this.system.updateFiles("Reservations");
-			this.system.updateFiles("Stays");
-			return true;
-		}
-		return false;
+		return this.system.applyDiscount(this.hotelName, reservationNumber, discount);
 	}
 
 	/**
@@ -100,4 +91,30 @@ public class Supervisor extends DeskClerk {
 			boolean occupantNumbers, java.util.ArrayList<LocalDate> days) {
 		return analyzer.requestOccupantInformation(start, end, days, hotelRooms, occupantNumbers);
 	}
+
+	/**
+	 * Requests the room income information of every hotel in the chain for all the
+	 * dates in the date range, with the hotels analysed in parallel
+	 * 
+	 * @param start the start date of the period
+	 * @param end   the end date of the period
+	 * @return the filenames at which the analysis of each hotel was stored
+	 */
+	public ArrayList<String> requestChainIncomeInformation(LocalDate start, LocalDate end) {
+		return new ChainAnalysis(this.system).requestIncomeInformation(start, end);
+	}
+
+	/**
+	 * Requests the room occupancy information of every hotel in the chain for all
+	 * the dates in the date range, with the hotels analysed in parallel
+	 * 
+	 * @param start           the start date of the period
+	 * @param end             the end date of the period
+	 * @param occupantNumbers true if you want to retrieve occupant numbers, false
+	 *                        if you want to retrieve room numbers
+	 * @return the filenames at which the analysis of each hotel was stored
+	 */
+	public ArrayList<String> requestChainOccupantsInformation(LocalDate start, LocalDate end, boolean occupantNumbers) {
+		return new ChainAnalysis(this.system).requestOccupantInformation(start, end, occupantNumbers);
+	}
 }
@@ -0,0 +1,205 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * A class holding what the tests share. The tests are run as programs from the folder holding data, e.g.
+ * "java ShardRouterTest", and each works on a copy of the data folder in a temporary directory so the files in data
+ * are never touched. Every check is printed as it is made and the test exits with 1 if any of them failed
+ */
+public class TestSupport {
+	private static int failures; //The number of checks that have failed so far
+
+	/**
+	 * Copies the data folder of the current user.dir into a new temporary directory
+	 * @return the temporary directory, holding the copy of data
+	 * @throws IOException if the copy could not be made
+	 */
+	public static File copyOfData() throws IOException {
+		File directory = Files.createTempDirectory("l4-test").toFile();
+		Path from = new File(System.getProperty("user.dir"), "data").toPath();
+		Path to = new File(directory, "data").toPath();
+		try (Stream<Path> files = Files.walk(from)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				Files.copy(file, to.resolve(from.relativize(file).toString()), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		return directory;
+	}
+
+	/**
+	 * Runs the main method of a class in a new JVM on the same class path as this one, so that it can be stopped dead
+	 * with Runtime.halt without stopping the test. Only what it prints to System.err is shown
+	 * @param directory the directory to run it in
+	 * @param mainClass the name of the class
+	 * @param args the arguments of its main method
+	 * @return the exit status of the JVM
+	 * @throws IOException if the JVM could not be started
+	 * @throws InterruptedException if interrupted while waiting for it
+	 */
+	public static int runJava(File directory, String mainClass, String... args) throws IOException, InterruptedException {
+		ArrayList<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(mainClass);
+		command.addAll(Arrays.asList(args));
+		return new ProcessBuilder(command).directory(directory).redirectOutput(ProcessBuilder.Redirect.DISCARD)
+				.redirectError(ProcessBuilder.Redirect.INHERIT).start().waitFor(); // only errors, not the bills it prints
+	}
+
+	/**
+	 * Makes the same changes to the system every time: reservations booked singly and in a batch in two hotels, one of
+	 * them checked in, discounted and checked out and another cancelled. Every booking checks in 10 days from today
+	 * @param system the system to change, loaded from a copy of data
+	 */
+	public static void makeChanges(BookingSystem system) {
+		makeChanges(system, 10);
+	}
+
+	/**
+	 * Makes the same changes to the system as makeChanges(system), checking in the given number of days from today
+	 * so that they can be made again without clashing with the bookings already made. They last at most 3 nights
+	 * @param system the system to change, loaded from a copy of data
+	 * @param daysAhead how many days from today the bookings check in
+	 */
+	public static void makeChanges(BookingSystem system, int daysAhead) {
+		LocalDate checkin = LocalDate.now().plusDays(daysAhead);
+		system.addReservation("5-star", reservation(system, "5-star", "Ann Test", checkin, "Deluxe Double", "Deluxe Twin"));
+		Reservation billed = system.addReservation("3-star", reservation(system, "3-star", "Bob Test", checkin, "Classic Twin"));
+		Reservation cancelled = system.addReservation("3-star", reservation(system, "3-star", "Cy Test", checkin, "Classic Single"));
+		system.addReservations("5-star", Arrays.asList(reservation(system, "5-star", "Di Test", checkin, "Deluxe Single"),
+				reservation(system, "5-star", "Ed Test", checkin.plusDays(1), "Penthouse", "Deluxe Family")));
+		system.checkIn("3-star", billed);
+		system.applyDiscount("3-star", billed.getNumber(), 0.1);
+		system.checkOut("3-star", billed);
+		system.cancelReservation("3-star", cancelled);
+	}
+
+	/**
+	 * Creates a two night reservation of one adult in each of the rooms
+	 * @param system the system holding the rooms
+	 * @param hotelName the name of the hotel
+	 * @param name the name of the guest
+	 * @param checkin the check-in date
+	 * @param roomTypes the type of each room
+	 * @return the reservation, not yet added to the system
+	 */
+	public static Reservation reservation(BookingSystem system, String hotelName, String name, LocalDate checkin,
+			String... roomTypes) {
+		ArrayList<RoomBooking> rooms = new ArrayList<RoomBooking>();
+		for (String type : roomTypes) {
+			rooms.add(new RoomBooking(system.getRoom(hotelName, type), 1, 0));
+		}
+		return new Reservation(name, "S", checkin, 2, rooms.size(), rooms.size(), rooms);
+	}
+
+	/**
+	 * Describes every reservation, cancellation and stay of the system in order of hotel and number, and the rooms
+	 * free on each of the next 20 nights, so that two systems hold the same bookings if their descriptions are equal
+	 * @param system the system
+	 * @return the description, one line per booking
+	 */
+	public static String stateOf(BookingSystem system) {
+		TreeMap<String, String> lines = new TreeMap<String, String>(); // sorted so the order bookings were added in doesn't matter
+		describe(lines, "Reservation", system.getReservations());
+		describe(lines, "Cancellation", system.getCancellations());
+		for (Map.Entry<String, ArrayList<HotelStay>> e : system.getHotelStays().entrySet()) {
+			for (HotelStay stay : e.getValue()) {
+				Reservation r = stay.getReservation();
+				lines.put(String.format("Stay %s %06d", e.getKey(), r.getNumber()), String.format("%b %s %s %s %s", stay.isCheckedIn(),
+						stay.getStayStart(), stay.getStayEnd(), r.getTotalCost().getBilledDate(), r.format().replace('\n', ' ')));
+			}
+		}
+		LocalDate today = LocalDate.now();
+		for (String hotelName : system.getAllRooms().keySet()) {
+			for (int night = 0; night < 20; night++) { // every booking made by makeChanges, made twice
+				lines.put(String.format("Rooms %s %s", hotelName, today.plusDays(night)),
+						system.getCurrentRooms(hotelName, today.plusDays(night), today.plusDays(night + 1)).toString());
+			}
+		}
+		StringBuilder state = new StringBuilder();
+		for (Map.Entry<String, String> line : lines.entrySet()) {
+			state.append(line.getKey()).append(' ').append(line.getValue()).append('\n');
+		}
+		return state.toString();
+	}
+
+	/*
+	 * Describes each reservation of each hotel
+	 *
+	 * @param lines the descriptions to add to, keyed by what they describe
+	 *
+	 * @param table Reservation or Cancellation
+	 *
+	 * @param reservations the reservations of each hotel
+	 */
+	private static void describe(TreeMap<String, String> lines, String table,
+			TreeMap<String, LinkedHashMap<Integer, Reservation>> reservations) {
+		for (Map.Entry<String, LinkedHashMap<Integer, Reservation>> e : reservations.entrySet()) {
+			for (Reservation r : e.getValue().values()) {
+				lines.put(String.format("%s %s %06d", table, e.getKey(), r.getNumber()), r.format().replace('\n', ' '));
+			}
+		}
+	}
+
+	/**
+	 * Loads a system from the csv files and journal of a directory alone, deleting the snapshot and the revenue totals
+	 * first so that neither is loaded in their place, and describes it
+	 * @param directory the directory holding the data folder
+	 * @return the description of the system loaded
+	 */
+	public static String csvStateOf(File directory) {
+		new File(directory, "data/bookingInfo/snapshot.bin").delete();
+		new File(directory, "data/bookingInfo/revenue.bin").delete();
+		BookingSystem system = new BookingSystem(directory.getPath());
+		try {
+			return stateOf(system);
+		} finally {
+			system.close();
+		}
+	}
+
+	/**
+	 * Deletes the file, or the folder and everything in it
+	 * @param file the file or folder to delete
+	 */
+	public static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 * Prints the result of a check and counts it if it failed
+	 * @param passed true if the check passed
+	 * @param description what was checked
+	 */
+	public static void check(boolean passed, String description) {
+		System.out.println((passed ? "PASS " : "FAIL ") + description);
+		if (!passed) {
+			failures++;
+		}
+	}
+
+	/**
+	 * Prints how many checks failed and exits, with 1 if any of them did
+	 */
+	public static void finish() {
+		System.out.println(failures == 0 ? "All checks passed" : failures + " checks failed");
+		System.exit(failures == 0 ? 0 : 1);
+	}
+}
@@ -187,34 +187,15 @@ public class TextUI {
 		return rooms;
 	}
 
-	// Calculates the total cost of the proposed reservation
-	private double totalCost(ArrayList<RoomBooking> rooms, LocalDate checkin, LocalDate checkout) {
-		double totalCost = 0;
-		double breakfastCost = 14.00;
-		double calculatedBreakfast = 0;
-		for (RoomBooking rb : rooms) {
-			Room r = rb.getRoom();
-			for (LocalDate date = checkin; !date.equals(checkout); date = date.plusDays(1)) {
-				if (rb.isBreakfastIncluded()) {
-					calculatedBreakfast += breakfastCost * (rb.getOccupancy()[0] + rb.getOccupancy()[1]);
-				}
-				int dayOfWeek = date.getDayOfWeek().getValue() - 1;
-				totalCost += r.getRate(dayOfWeek);
-			}
-		}
-		totalCost += calculatedBreakfast;
-		return totalCost + 75.00;
-	}
-
 	private boolean confirmBooking(String hotelName, String name, String type, LocalDate checkinDate,
 			int numberOfNights, int numberOfPeople, int numberOfRooms, ArrayList<RoomBooking> rooms) {
+		long totalCost = Reservation.quote(rooms, type, checkinDate, numberOfNights, Reservation.DEPOSIT);
 		type = type.equals("S") ? "Standard Booking" : "Advanced Purchase";
 		System.out.println("Please confirm your reservation below: ");
 		System.out.println("Hotel: L4-Hotels " + hotelName + "\nName: " + name + "\nType: " + type + "\nCheck-in Date: "
 				+ checkinDate.toString() + "\nNumber of Nights: " + numberOfNights + "\nNumber of People: "
 				+ numberOfPeople + "\nNumber of Rooms: " + numberOfRooms + "\nRooms: " + roomsAsString(rooms)
-				+ "\nTotal Cost (incl. deposit): " + String.format("$%.02f",
-						this.totalCost(rooms, checkinDate, checkinDate.plusDays(numberOfNights))));
+				+ "\nTotal Cost (incl. deposit): " + Money.format(totalCost));
 		while (true) {
 			System.out.println("Would you like to create your reservation or cancel it? (Create/Cancel)");
 			String choice = in.nextLine().toUpperCase();
@@ -440,7 +421,7 @@ public class TextUI {
 	 */
 	private void dataAnalyticsServices() {
 		Supervisor temp = (Supervisor) this.user;
-		System.out.println("Would you like to \n1)access billing analysis" + "\n2)access occupancy analysis");
+		System.out.println("Would you like to \n1)access billing analysis" + "\n2)access occupancy analysis" + "\n3)access chain-wide analysis");
 		String input = in.nextLine();
 		while (input.equals("") || input.equals(" ")) {
 			System.out.println("Please enter your choice: ");
@@ -500,6 +481,27 @@ public class TextUI {
 			} else {
 				System.out.println("Input not recognised, analysis not saved to file");
 			}
+		} else if (analysisType == '3') {
+			LocalDate[] dates = this.getDatesForDataAnalysis();
+			System.out.println("Would you like A)billing, B)occupant numbers or C)room count information for every hotel?");
+			input = in.nextLine();
+			while (input.equals("") || input.equals(" ")) {
+				System.out.println("Please enter your choice: ");
+				input = in.nextLine();
+			}
+			char choice = input.toUpperCase().charAt(0);
+			ArrayList<String> fileNames;
+			if (choice == 'A') {
+				fileNames = temp.requestChainIncomeInformation(dates[0], dates[1]);
+			} else if (choice == 'B' || choice == 'C') {
+				fileNames = temp.requestChainOccupantsInformation(dates[0], dates[1], choice == 'B');
+			} else {
+				System.out.println("Input not recognised, analysis not saved to file");
+				return;
+			}
+			for (String fileName : fileNames) {
+				System.out.println("Information saved to: " + fileName);
+			}
 		}
 	}
 
@@ -695,6 +697,7 @@ public class TextUI {
 				run = false;
 			}
 		}
+		system.close(); // writes the changes made this session to the csv files
 	}
 
 	/*
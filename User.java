@@ -1,5 +1,6 @@
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
 * A class representing the user of the system
@@ -35,6 +36,17 @@ public class User  {
 		return this.system.addReservation(hotelName, new Reservation(name, type, checkinDate, numberOfNights, numberOfPeople, numberOfRooms, rooms));
 	}
 	
+	/**
+	 * Notifies the BookingSystem to add a batch of reservations to the system, such as a group or tour booking. Either
+	 * all of them are booked or none are
+	 * @param hotelName the name of the hotel the bookings are for
+	 * @param reservations the reservations to book
+	 * @return the reservations booked or null if there weren't enough rooms for all of them
+	 */
+	public ArrayList<Reservation> createReservations(String hotelName, List<Reservation> reservations) {
+		return this.system.addReservations(hotelName, reservations);
+	}
+	
 	/**
 	 * Notifies the booking system that the reservation was cancelled and to remove it from the system
 	 * @param hotelName the name of the hotel